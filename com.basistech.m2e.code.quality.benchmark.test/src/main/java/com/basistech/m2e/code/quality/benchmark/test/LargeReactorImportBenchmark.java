@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.benchmark.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.m2e.core.project.ResolverConfiguration;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.basistech.m2e.code.quality.shared.test.AbstractMavenProjectConfiguratorTestCase;
+import com.basistech.m2e.code.quality.shared.test.SyntheticReactor;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Imports generated reactors of growing size, see {@link SyntheticReactor}, and
+ * compares wall time, time spent in the configurators and peak heap with
+ * {@code baseline.properties}.
+ * <p>
+ * The configurator time is the sum of the
+ * {@code com.basistech.m2e.codequality.ProjectConfiguration} JFR events. The
+ * measurements are appended to {@code target/import-benchmark.properties},
+ * which has the format of the baseline. A baseline can be overridden with the
+ * {@code benchmark.baseline} system property. A measurement that exceeds its
+ * baseline fails the benchmark, as does one that could not be taken. Without
+ * any baseline for a reactor size there is nothing to compare with, and the
+ * benchmark of that size is skipped.
+ * </p>
+ */
+public class LargeReactorImportBenchmark extends AbstractMavenProjectConfiguratorTestCase {
+
+	private static final Logger LOG = LoggerFactory.getLogger(LargeReactorImportBenchmark.class);
+
+	private static final String CONFIGURATION_EVENT = "com.basistech.m2e.codequality.ProjectConfiguration";
+	private static final File RESULTS = new File("target/import-benchmark.properties");
+
+	@Test
+	public void testImport10Modules() throws Exception {
+		benchmark(10, 1);
+	}
+
+	@Test
+	public void testImport100Modules() throws Exception {
+		benchmark(100, 2);
+	}
+
+	@Test
+	public void testImport1000Modules() throws Exception {
+		benchmark(1000, 3);
+	}
+
+	private void benchmark(final int modules, final int depth) throws Exception {
+		// let class loading, plugin resolution and JIT happen before the measurement
+		deleteProjects(importReactor(new SyntheticReactor(5), "warm-up-" + modules));
+
+		final SyntheticReactor reactor = new SyntheticReactor(modules).depth(depth);
+		resetPeakHeap();
+		final long start = System.nanoTime();
+		final IProject[] projects;
+		final long configuratorMillis;
+		try (Recording recording = startRecording()) {
+			projects = importReactor(reactor, "synthetic-reactor-" + modules);
+			configuratorMillis = getConfiguratorMillis(recording);
+		}
+		final long wallMillis = (System.nanoTime() - start) / 1_000_000L;
+		final long peakHeapMb = getPeakHeap() / (1024L * 1024L);
+
+		final Map<String, Long> measurements = new LinkedHashMap<>();
+		measurements.put("wallMillis", wallMillis);
+		measurements.put("configuratorMillis", configuratorMillis);
+		measurements.put("peakHeapMb", peakHeapMb);
+		LOG.info("Imported {} projects of a reactor of {} modules: {}", projects.length, modules, measurements);
+		writeResults(modules, measurements);
+		assertWithinBaseline(modules, measurements);
+	}
+
+	private IProject[] importReactor(final SyntheticReactor reactor, final String name) throws Exception {
+		final File directory = new File("target", name);
+		final List<String> poms = reactor.generate(directory);
+		final IProject[] projects = importProjects(directory.getAbsolutePath(), poms.toArray(new String[poms.size()]),
+				new ResolverConfiguration());
+		waitForConfigurationJobsToComplete();
+		assertEquals(poms.size(), projects.length);
+		return projects;
+	}
+
+	private void deleteProjects(final IProject[] projects) throws Exception {
+		for (final IProject project : projects) {
+			project.delete(true, true, monitor);
+		}
+		waitForConfigurationJobsToComplete();
+	}
+
+	private static Recording startRecording() {
+		final Recording recording = new Recording();
+		recording.enable(CONFIGURATION_EVENT).withoutThreshold();
+		recording.start();
+		return recording;
+	}
+
+	/**
+	 * @return the time spent in the configurators, or {@code -1} if the events
+	 *         could not be read.
+	 */
+	private static long getConfiguratorMillis(final Recording recording) throws IOException {
+		recording.stop();
+		final Path dump = Files.createTempFile("import-benchmark", ".jfr");
+		try {
+			recording.dump(dump);
+			Duration total = Duration.ZERO;
+			for (final RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+				if (CONFIGURATION_EVENT.equals(event.getEventType().getName())) {
+					total = total.plus(event.getDuration());
+				}
+			}
+			return total.toMillis();
+		} catch (final IOException e) {
+			LOG.warn("Could not read the configuration events", e);
+			return -1L;
+		} finally {
+			Files.deleteIfExists(dump);
+		}
+	}
+
+	private static void resetPeakHeap() {
+		System.gc();
+		for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * @return the sum of the peak usages of the heap pools, in bytes. The pools
+	 *         peak at different times, so this is an upper bound.
+	 */
+	private static long getPeakHeap() {
+		long peak = 0L;
+		for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	private static synchronized void writeResults(final int modules, final Map<String, Long> measurements)
+			throws IOException {
+		final Properties results = new Properties();
+		if (RESULTS.isFile()) {
+			try (InputStream in = new FileInputStream(RESULTS)) {
+				results.load(in);
+			}
+		}
+		for (final Map.Entry<String, Long> measurement : measurements.entrySet()) {
+			results.setProperty(key(modules, measurement.getKey()), String.valueOf(measurement.getValue()));
+		}
+		RESULTS.getParentFile().mkdirs();
+		try (OutputStream out = new FileOutputStream(RESULTS)) {
+			results.store(out, "LargeReactorImportBenchmark");
+		}
+	}
+
+	private void assertWithinBaseline(final int modules, final Map<String, Long> measurements) throws IOException {
+		final Properties baseline = loadBaseline();
+		final double tolerance = Double.parseDouble(baseline.getProperty("tolerance", "0.2"));
+		final List<String> regressions = new ArrayList<>();
+		final List<String> missing = new ArrayList<>();
+		for (final Map.Entry<String, Long> measurement : measurements.entrySet()) {
+			final String value = baseline.getProperty(key(modules, measurement.getKey()), "").trim();
+			if (value.isEmpty()) {
+				missing.add(measurement.getKey());
+				continue;
+			}
+			if (measurement.getValue() < 0) {
+				regressions.add(String.format("%s: could not be measured, baseline %s", measurement.getKey(), value));
+				continue;
+			}
+			final long limit = (long) (Long.parseLong(value) * (1.0 + tolerance));
+			if (measurement.getValue() > limit) {
+				regressions.add(String.format("%s: %d, baseline %s, limit %d", measurement.getKey(),
+						measurement.getValue(), value, limit));
+			}
+		}
+		if (!regressions.isEmpty()) {
+			fail("Regression importing " + modules + " modules: " + regressions);
+		}
+		if (!missing.isEmpty()) {
+			LOG.warn("No baseline for {} importing {} modules, copy it from {}", missing, modules, RESULTS);
+		}
+		assumeTrue(String.format("No baseline for importing %d modules, copy it from %s", modules, RESULTS),
+				missing.size() < measurements.size());
+	}
+
+	private Properties loadBaseline() throws IOException {
+		final Properties baseline = new Properties();
+		final String override = System.getProperty("benchmark.baseline");
+		try (InputStream in = override != null ? new FileInputStream(override)
+				: getClass().getResourceAsStream("/baseline.properties")) {
+			if (in != null) {
+				baseline.load(in);
+			}
+		}
+		return baseline;
+	}
+
+	private static String key(final int modules, final String measurement) {
+		return "modules." + modules + "." + measurement;
+	}
+}
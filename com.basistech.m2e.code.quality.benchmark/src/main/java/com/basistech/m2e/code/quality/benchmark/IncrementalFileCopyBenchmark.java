@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.benchmark;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.basistech.m2e.code.quality.shared.IncrementalFileCopy;
+
+/**
+ * Copying of configuration files into the project, what
+ * {@code AbstractMavenPluginConfigurationTranslator.copyIfChanged} does for
+ * every header, suppressions and ruleset file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IncrementalFileCopyBenchmark {
+
+	@Param({ "1024", "65536", "1048576" })
+	public int size;
+
+	/**
+	 * whether the source differs from the file on every copy; the sources differ
+	 * in their last byte, so the whole file is compared first
+	 */
+	@Param({ "false", "true" })
+	public boolean changed;
+
+	/** whether sidecar digests are kept, the default in the workbench */
+	@Param({ "true", "false" })
+	public boolean digests;
+
+	private Path directory;
+	private URL source;
+	private URL otherSource;
+	private Path output;
+	private IncrementalFileCopy copy;
+
+	@Setup
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("copy-benchmark");
+		final byte[] content = new byte[size];
+		new Random(size).nextBytes(content);
+		source = write(directory.resolve("source"), content);
+		content[size - 1]++;
+		otherSource = write(directory.resolve("other-source"), content);
+		output = directory.resolve("output");
+		copy = new IncrementalFileCopy(digests ? directory.resolve("digests") : null);
+		copy.copyIfChanged(source, output);
+	}
+
+	private static URL write(final Path path, final byte[] content) throws IOException {
+		Files.write(path, content);
+		return path.toUri().toURL();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public void copyIfChanged() throws IOException {
+		if (changed) {
+			final URL next = otherSource;
+			otherSource = source;
+			source = next;
+		}
+		copy.copyIfChanged(source, output);
+	}
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.basistech.m2e.code.quality.checkstyle.CheckstyleUtil;
+import com.basistech.m2e.code.quality.pmd.PmdUtil;
+import com.basistech.m2e.code.quality.shared.PatternCache;
+
+/**
+ * Conversion of the maven includes/excludes patterns, done for every pattern
+ * of every execution on each configuration, directly and through the shared
+ * {@link PatternCache}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PatternConversionBenchmark {
+
+	@Param({ "**/*.java", "com/foo/", "src/main/java//com/foo/**/generated/**/*Test.java" })
+	public String pattern;
+
+	@Benchmark
+	public String checkstyle() {
+		return CheckstyleUtil.convertAntStylePatternToCheckstylePattern(pattern);
+	}
+
+	@Benchmark
+	public String pmd() {
+		return PmdUtil.convertAntStylePatternToPmdPattern(pattern);
+	}
+
+	@Benchmark
+	public String cachedCheckstyle() {
+		return PatternCache.getInstance().translate("checkstyle", pattern,
+				CheckstyleUtil::convertAntStylePatternToCheckstylePattern);
+	}
+}
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import org.codehaus.plexus.classworlds.ClassWorld;
+import org.codehaus.plexus.classworlds.realm.ClassRealm;
+import org.codehaus.plexus.classworlds.realm.DuplicateRealmException;
+import org.eclipse.core.runtime.IPath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.basistech.m2e.code.quality.shared.ResourceResolver;
+
+/**
+ * Resolution of the resource locations of a plugin configuration, for each
+ * kind of location {@link ResourceResolver#resolveLocation(String)} supports.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResourceResolutionBenchmark {
+
+	public enum LocationType {
+		/** relative to the project */
+		PROJECT,
+		/** in a dependency of the plugin */
+		PLUGIN_REALM,
+		/** a (file) URL */
+		URL,
+		/** an absolute path */
+		FILE_SYSTEM,
+		/** nowhere to be found, every lookup is tried */
+		MISSING
+	}
+
+	@Param
+	public LocationType locationType;
+
+	/** whether the resolution cache is used, or cleared before every resolution */
+	@Param({ "true", "false" })
+	public boolean cached;
+
+	private Path directory;
+	private ClassWorld classWorld;
+	private ResourceResolver resolver;
+	private String location;
+
+	@Setup
+	public void setUp() throws IOException, DuplicateRealmException {
+		directory = Files.createTempDirectory("resolution-benchmark");
+		final Path project = Files.createDirectories(directory.resolve("project"));
+		final Path config = Files.createDirectories(project.resolve("config"));
+		Files.write(config.resolve("checkstyle.xml"), "<module name=\"Checker\"/>".getBytes(StandardCharsets.UTF_8));
+		final Path outside = Files.write(directory.resolve("checkstyle.xml"),
+				"<module name=\"Checker\"/>".getBytes(StandardCharsets.UTF_8));
+		final Path jar = directory.resolve("rules.jar");
+		try (OutputStream out = Files.newOutputStream(jar); JarOutputStream jarOut = new JarOutputStream(out)) {
+			jarOut.putNextEntry(new JarEntry("rules/checkstyle.xml"));
+			jarOut.write("<module name=\"Checker\"/>".getBytes(StandardCharsets.UTF_8));
+			jarOut.closeEntry();
+		}
+
+		classWorld = new ClassWorld();
+		final ClassRealm pluginRealm = classWorld.newRealm("benchmark", null);
+		pluginRealm.addURL(jar.toUri().toURL());
+		final IPath projectLocation = IPath.fromOSString(project.toString());
+		resolver = new ResourceResolver(pluginRealm, projectLocation, Collections.singletonList(projectLocation));
+
+		switch (locationType) {
+		case PROJECT:
+			location = "config/checkstyle.xml";
+			break;
+		case PLUGIN_REALM:
+			location = "rules/checkstyle.xml";
+			break;
+		case URL:
+			location = outside.toUri().toURL().toExternalForm();
+			break;
+		case FILE_SYSTEM:
+			location = outside.toString();
+			break;
+		case MISSING:
+		default:
+			location = "config/missing.xml";
+			break;
+		}
+		if (resolver.resolveLocation(location) == null && locationType != LocationType.MISSING) {
+			throw new IllegalStateException("Could not resolve " + location);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		ResourceResolver.getResolutionCache().clear();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public URL resolveLocation() {
+		if (!cached) {
+			ResourceResolver.getResolutionCache().clear();
+		}
+		return resolver.resolveLocation(location);
+	}
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.basistech.m2e.code.quality.pmd.PmdUtil;
+
+/**
+ * Reading of a PMD ruleset into a string, including the detection of its
+ * encoding, done for every ruleset of the execution.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuleSetLoadingBenchmark {
+
+	/** UTF-16 is written with a byte order mark */
+	@Param({ "UTF-8", "UTF-16", "ISO-8859-1" })
+	public String encoding;
+
+	@Param({ "10", "100", "1000" })
+	public int rules;
+
+	private byte[] ruleset;
+
+	@Setup
+	public void setUp() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("<?xml version=\"1.0\" encoding=\"").append(encoding).append("\"?>\n");
+		sb.append("<ruleset name=\"benchmark\" xmlns=\"http://pmd.sourceforge.net/ruleset/2.0.0\">\n");
+		sb.append("  <description>R\u00e8gles de r\u00e9f\u00e9rence</description>\n");
+		for (int i = 0; i < rules; i++) {
+			sb.append("  <rule ref=\"category/java/bestpractices.xml/Rule").append(i).append("\">\n");
+			sb.append("    <priority>3</priority>\n");
+			sb.append("  </rule>\n");
+		}
+		sb.append("</ruleset>\n");
+		ruleset = sb.toString().getBytes(Charset.forName(encoding));
+	}
+
+	@Benchmark
+	public String loadXmlStreamIntoString() throws IOException {
+		return PmdUtil.loadXmlStreamIntoString(new ByteArrayInputStream(ruleset));
+	}
+}
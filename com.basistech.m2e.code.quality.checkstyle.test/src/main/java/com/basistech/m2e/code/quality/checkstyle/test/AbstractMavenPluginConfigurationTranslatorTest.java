@@ -0,0 +1,177 @@
+package com.basistech.m2e.code.quality.checkstyle.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.model.ConfigurationContainer;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.descriptor.MojoDescriptor;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.m2e.core.embedder.IMaven;
+import org.eclipse.m2e.core.embedder.IMavenExecutionContext;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.basistech.m2e.code.quality.shared.AbstractMavenPluginConfigurationTranslator;
+
+public class AbstractMavenPluginConfigurationTranslatorTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private TestTranslator translator;
+
+	@Before
+	public void createTranslator() throws Exception {
+		final Map<String, Object> values = new HashMap<>();
+		values.put("configLocation", "config/checkstyle.xml");
+		values.put("maxAllowedViolations", Integer.valueOf(0));
+		translator = new TestTranslator(mojoExecution(new Xpp3Dom("configuration")),
+				project(temporaryFolder.newFolder("project").getAbsolutePath()), values, new HashMap<>());
+	}
+
+	@Test
+	public void testNullValueIsEvaluatedOnce() throws Exception {
+		assertNull(translator.getParameterValue("headerLocation", String.class));
+		assertNull(translator.getParameterValue("headerLocation", String.class));
+		assertEquals("default", translator.getParameterValue("headerLocation", String.class, "default"));
+
+		assertEquals(1, translator.getEvaluations("headerLocation"));
+		assertEquals(2, translator.getParameterCacheHitCount());
+	}
+
+	@Test
+	public void testValueIsEvaluatedOnce() throws Exception {
+		assertEquals("config/checkstyle.xml", translator.getParameterValue("configLocation", String.class));
+		assertEquals("config/checkstyle.xml",
+				translator.getParameterValue("configLocation", String.class, "default"));
+
+		assertEquals(1, translator.getEvaluations("configLocation"));
+		assertEquals(1, translator.getParameterCacheHitCount());
+	}
+
+	@Test
+	public void testEachTypeIsEvaluatedSeparately() throws Exception {
+		assertEquals(Integer.valueOf(0), translator.getParameterValue("maxAllowedViolations", Integer.class));
+		assertEquals(Integer.valueOf(0), translator.getParameterValue("maxAllowedViolations", Integer.class));
+		assertEquals("0", translator.getParameterValue("maxAllowedViolations", String.class));
+
+		assertEquals(2, translator.getEvaluations("maxAllowedViolations"));
+		assertEquals(1, translator.getParameterCacheHitCount());
+	}
+
+	@Test
+	public void testHitsAreCountedForAllTranslators() throws Exception {
+		final long totalHits = AbstractMavenPluginConfigurationTranslator.getTotalParameterCacheHitCount();
+		translator.getParameterValue("configLocation", String.class);
+		translator.getParameterValue("configLocation", String.class);
+		translator.getParameterValue("configLocation", String.class);
+
+		assertEquals(totalHits + 2, AbstractMavenPluginConfigurationTranslator.getTotalParameterCacheHitCount());
+		assertTrue(translator.getSavedEvaluationNanos() >= 0);
+	}
+
+	static MojoExecution mojoExecution(final Xpp3Dom configuration) {
+		final PluginDescriptor pluginDescriptor = new PluginDescriptor();
+		pluginDescriptor.setGroupId("org.apache.maven.plugins");
+		pluginDescriptor.setArtifactId("maven-checkstyle-plugin");
+		pluginDescriptor.setVersion("3.1.0");
+		final MojoDescriptor mojoDescriptor = new MojoDescriptor();
+		mojoDescriptor.setPluginDescriptor(pluginDescriptor);
+		mojoDescriptor.setGoal("check");
+		final Plugin plugin = new Plugin();
+		plugin.setGroupId(pluginDescriptor.getGroupId());
+		plugin.setArtifactId(pluginDescriptor.getArtifactId());
+		plugin.setVersion(pluginDescriptor.getVersion());
+		pluginDescriptor.setPlugin(plugin);
+		final MojoExecution mojoExecution = new MojoExecution(plugin, "check", "default");
+		mojoExecution.setMojoDescriptor(mojoDescriptor);
+		mojoExecution.setConfiguration(configuration);
+		return mojoExecution;
+	}
+
+	static IProject project(final String location) {
+		return (IProject) Proxy.newProxyInstance(AbstractMavenPluginConfigurationTranslatorTest.class.getClassLoader(),
+				new Class<?>[] { IProject.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getName":
+					case "toString":
+						return "translator-test";
+					case "getLocation":
+						return new Path(location);
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	/** a maven without plugin realms, the translators tested do not resolve resources */
+	private static IMaven maven() {
+		final IMavenExecutionContext context = (IMavenExecutionContext) Proxy.newProxyInstance(
+				AbstractMavenPluginConfigurationTranslatorTest.class.getClassLoader(),
+				new Class<?>[] { IMavenExecutionContext.class }, (proxy, method, args) -> null);
+		return (IMaven) Proxy.newProxyInstance(AbstractMavenPluginConfigurationTranslatorTest.class.getClassLoader(),
+				new Class<?>[] { IMaven.class }, (proxy, method, args) -> {
+					if ("createExecutionContext".equals(method.getName())) {
+						return context;
+					}
+					throw new UnsupportedOperationException(method.getName());
+				});
+	}
+
+	/**
+	 * Evaluates parameters from a map, counting the evaluations of each
+	 * parameter. A value of another type than requested is converted with
+	 * {@code toString()}.
+	 */
+	static final class TestTranslator extends AbstractMavenPluginConfigurationTranslator {
+
+		private final Map<String, Object> values;
+		private final Map<String, Class<?>> declaredParameters;
+		private final Map<String, Integer> evaluations = new HashMap<>();
+
+		TestTranslator(final MojoExecution mojoExecution, final IProject project, final Map<String, Object> values,
+				final Map<String, Class<?>> declaredParameters) throws CoreException {
+			super(maven(), new MavenProject(), mojoExecution, project, null);
+			this.values = values;
+			this.declaredParameters = declaredParameters;
+		}
+
+		@Override
+		protected Map<String, Class<?>> getDeclaredParameters() {
+			return declaredParameters;
+		}
+
+		@Override
+		protected <T> T getParameterValue(final MojoExecution execution,
+				final ConfigurationContainer configurationContainer, final String parameter, final Class<T> asType) {
+			evaluations.merge(parameter, 1, Integer::sum);
+			final Object value = values.get(parameter);
+			if (value == null || asType.isInstance(value)) {
+				return asType.cast(value);
+			}
+			return asType.cast(value.toString());
+		}
+
+		int getEvaluations(final String parameter) {
+			return evaluations.getOrDefault(parameter, 0);
+		}
+	}
+}
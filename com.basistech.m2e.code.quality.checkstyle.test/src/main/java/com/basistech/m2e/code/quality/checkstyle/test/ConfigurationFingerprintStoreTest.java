@@ -0,0 +1,74 @@
+package com.basistech.m2e.code.quality.checkstyle.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.eclipse.core.resources.IProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.basistech.m2e.code.quality.shared.ConfigurationFingerprintStore;
+
+public class ConfigurationFingerprintStoreTest {
+
+	private static final String ANALYZER = "org.apache.maven.plugins:maven-checkstyle-plugin";
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final IProject project = ConfigurationFingerprintTest.project("store");
+
+	@Test
+	public void testFingerprintAndResourcesSurviveRestart() throws Exception {
+		final Path directory = temporaryFolder.getRoot().toPath();
+		final URL resource = new URL("file:/checkstyle.xml");
+		final ConfigurationFingerprintStore store = new ConfigurationFingerprintStore(directory);
+		store.startConfiguration(project, ANALYZER);
+		store.recordResource(project, ANALYZER, resource);
+		store.putFingerprint(project, ANALYZER, "abc");
+
+		final ConfigurationFingerprintStore restarted = new ConfigurationFingerprintStore(directory);
+		assertEquals("abc", restarted.getFingerprint(project, ANALYZER));
+		assertEquals(Collections.singleton(resource.toExternalForm()), restarted.getResources(project, ANALYZER));
+		assertNull(restarted.getFingerprint(project, "org.apache.maven.plugins:maven-pmd-plugin"));
+	}
+
+	@Test
+	public void testStartConfigurationForgetsPrevious() throws Exception {
+		final Path directory = temporaryFolder.getRoot().toPath();
+		final ConfigurationFingerprintStore store = new ConfigurationFingerprintStore(directory);
+		store.recordResource(project, ANALYZER, new URL("file:/checkstyle.xml"));
+		store.putFingerprint(project, ANALYZER, "abc");
+
+		store.startConfiguration(project, ANALYZER);
+		assertNull(store.getFingerprint(project, ANALYZER));
+		assertTrue(store.getResources(project, ANALYZER).isEmpty());
+		assertNull(new ConfigurationFingerprintStore(directory).getFingerprint(project, ANALYZER));
+	}
+
+	@Test
+	public void testRemove() throws Exception {
+		final Path directory = temporaryFolder.getRoot().toPath();
+		final ConfigurationFingerprintStore store = new ConfigurationFingerprintStore(directory);
+		store.putFingerprint(project, ANALYZER, "abc");
+
+		store.remove(project, ANALYZER);
+		assertNull(store.getFingerprint(project, ANALYZER));
+		assertNull(new ConfigurationFingerprintStore(directory).getFingerprint(project, ANALYZER));
+	}
+
+	@Test
+	public void testInMemoryOnly() {
+		final ConfigurationFingerprintStore store = new ConfigurationFingerprintStore(null);
+		store.putFingerprint(project, ANALYZER, "abc");
+
+		assertEquals("abc", store.getFingerprint(project, ANALYZER));
+		assertNull(new ConfigurationFingerprintStore(null).getFingerprint(project, ANALYZER));
+	}
+}
@@ -0,0 +1,128 @@
+package com.basistech.m2e.code.quality.checkstyle.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.project.MavenProject;
+import org.eclipse.core.resources.IProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.basistech.m2e.code.quality.shared.ConfigurationFingerprint;
+import com.basistech.m2e.code.quality.shared.RemoteResourceCache;
+import com.sun.net.httpserver.HttpServer;
+
+public class ConfigurationFingerprintTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testResourceContentIsFingerprinted() throws Exception {
+		final Path file = temporaryFolder.newFile("checkstyle.xml").toPath();
+		Files.write(file, "<module name=\"Checker\"/>".getBytes(StandardCharsets.UTF_8));
+		final Collection<String> resources = Collections.singleton(file.toUri().toURL().toExternalForm());
+
+		final String first = compute(resources, Collections.<String, String>emptyMap());
+		assertEquals(first, compute(resources, Collections.<String, String>emptyMap()));
+
+		Files.write(file, "<module name=\"TreeWalker\"/>".getBytes(StandardCharsets.UTF_8));
+		assertNotEquals(first, compute(resources, Collections.<String, String>emptyMap()));
+	}
+
+	@Test
+	public void testUnreadableResourceIsStable() throws Exception {
+		final Collection<String> resources = Collections
+				.singleton(temporaryFolder.getRoot().toPath().resolve("missing.xml").toUri().toURL().toExternalForm());
+
+		assertEquals(compute(resources, Collections.<String, String>emptyMap()),
+				compute(resources, Collections.<String, String>emptyMap()));
+	}
+
+	@Test
+	public void testInputsAreFingerprinted() throws Exception {
+		final Collection<String> resources = Collections.<String>emptySet();
+
+		assertNotEquals(compute(resources, Collections.singletonMap("preference", "true")),
+				compute(resources, Collections.singletonMap("preference", "false")));
+	}
+
+	@Test
+	public void testRemoteResourceIsNotFetched() throws Exception {
+		final AtomicInteger requests = new AtomicInteger();
+		final HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/checkstyle.xml", exchange -> {
+			requests.incrementAndGet();
+			final byte[] body = "<module name=\"Checker\"/>".getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+			exchange.close();
+		});
+		server.start();
+		try {
+			final URL url = new URL("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+					+ server.getAddress().getPort() + "/checkstyle.xml");
+			final Collection<String> resources = Collections.singleton(url.toExternalForm());
+			final RemoteResourceCache cache = new RemoteResourceCache(temporaryFolder.newFolder().toPath(), 60_000L,
+					false);
+
+			final String uncached = compute(resources, cache, Collections.<String, String>emptyMap());
+			assertEquals(uncached, compute(resources, cache, Collections.<String, String>emptyMap()));
+			assertEquals(0, requests.get());
+
+			cache.getLocalCopy(url);
+			final String cached = compute(resources, cache, Collections.<String, String>emptyMap());
+			assertNotEquals(uncached, cached);
+			assertEquals(cached, compute(resources, cache, Collections.<String, String>emptyMap()));
+			assertEquals(1, requests.get());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	private String compute(final Collection<String> resources, final Map<String, String> inputs) throws Exception {
+		return compute(resources, new RemoteResourceCache(temporaryFolder.getRoot().toPath(), 0L, true), inputs);
+	}
+
+	private static String compute(final Collection<String> resources, final RemoteResourceCache cache,
+			final Map<String, String> inputs) throws Exception {
+		return ConfigurationFingerprint.compute(new MavenProject(), Collections.emptyList(), resources, cache, inputs,
+				project("fingerprint"), "nature");
+	}
+
+	/** a project without any nature, enough for a fingerprint without output files */
+	static IProject project(final String name) {
+		return (IProject) Proxy.newProxyInstance(ConfigurationFingerprintTest.class.getClassLoader(),
+				new Class<?>[] { IProject.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getName":
+					case "toString":
+						return name;
+					case "hasNature":
+						return Boolean.FALSE;
+					case "hashCode":
+						return name.hashCode();
+					case "equals":
+						return proxy == args[0];
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+}
@@ -10,22 +10,35 @@ package com.basistech.m2e.code.quality.checkstyle.test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jface.preference.IPreferenceStore;
 import org.junit.Test;
 
+import com.basistech.m2e.code.quality.checkstyle.Activator;
+import com.basistech.m2e.code.quality.checkstyle.CheckstyleEclipseConstants;
+import com.basistech.m2e.code.quality.checkstyle.SharedCheckConfigurations;
+import com.basistech.m2e.code.quality.shared.CodeQualityPreferences;
 import com.basistech.m2e.code.quality.shared.test.AbstractMavenProjectConfiguratorTestCase;
 
 import net.sf.eclipsecs.core.builder.CheckstyleBuilder;
 import net.sf.eclipsecs.core.builder.CheckstyleMarker;
+import net.sf.eclipsecs.core.config.CheckConfigurationFactory;
+import net.sf.eclipsecs.core.config.ICheckConfiguration;
+import net.sf.eclipsecs.core.config.ResolvableProperty;
 import net.sf.eclipsecs.core.jobs.RunCheckstyleOnFilesJob;
 import net.sf.eclipsecs.core.nature.CheckstyleNature;
 import net.sf.eclipsecs.core.projectconfig.IProjectConfiguration;
@@ -117,6 +130,48 @@ public class EclipseCheckstyleProjectConfigurationTest extends AbstractMavenProj
 		assertTrue(hasBuilder(p, BUILDER_ID));
 	}
 
+	@Test
+	public void testCheckstyleParallelConfiguration() throws Exception {
+		setCodeQualityPreference(CodeQualityPreferences.PARALLEL_CONFIGURATION_ENABLED, "true");
+		try {
+			final IProject p = importProject("projects/checkstyle-check/pom.xml");
+
+			// the natures are changed after the job, under the workspace root rule
+			assertTrue(p.hasNature(NATURE_ID));
+			assertTrue(hasBuilder(p, BUILDER_ID));
+
+			refreshProjectWithProfiles(p, "skip");
+			assertFalse(p.hasNature(NATURE_ID));
+			assertFalse(hasBuilder(p, BUILDER_ID));
+
+			refreshProjectWithProfiles(p, "");
+			assertTrue(p.hasNature(NATURE_ID));
+			assertTrue(hasBuilder(p, BUILDER_ID));
+		} finally {
+			setCodeQualityPreference(CodeQualityPreferences.PARALLEL_CONFIGURATION_ENABLED, null);
+		}
+	}
+
+	@Test
+	public void testCheckstyleEventCoalescing() throws Exception {
+		setCodeQualityPreference(CodeQualityPreferences.EVENT_COALESCING_WINDOW_MILLIS, "200");
+		try {
+			final IProject p = importProject("projects/checkstyle-check/pom.xml");
+			assertTrue(p.hasNature(NATURE_ID));
+
+			// the coalescing job holds only the project rule
+			refreshProjectWithProfiles(p, "skip");
+			assertFalse(p.hasNature(NATURE_ID));
+			assertFalse(hasBuilder(p, BUILDER_ID));
+
+			refreshProjectWithProfiles(p, "");
+			assertTrue(p.hasNature(NATURE_ID));
+			assertTrue(hasBuilder(p, BUILDER_ID));
+		} finally {
+			setCodeQualityPreference(CodeQualityPreferences.EVENT_COALESCING_WINDOW_MILLIS, null);
+		}
+	}
+
 	@Test
 	public void testCheckstyleMultipleExecutions() throws Exception {
 		final IProject p = importProject("projects/checkstyle-multi-check/pom.xml");
@@ -126,8 +181,71 @@ public class EclipseCheckstyleProjectConfigurationTest extends AbstractMavenProj
 		assertTrue(p.hasNature(NATURE_ID));
 		assertTrue(hasBuilder(p, BUILDER_ID));
 
+		// both executions check the same files with the same rules, they are merged
+		IProjectConfiguration configuration = ProjectConfigurationFactory.getConfiguration(p);
+		assertEquals(1, configuration.getLocalCheckConfigurations().size());
+		assertEquals(1, configuration.getFileSets().size());
+	}
+
+	@Test
+	public void testCheckstyleMultipleExecutionsCacheFiles() throws Exception {
+		final IProject p = importProject("projects/checkstyle-multi-check/pom.xml");
+
+		// one cache file per configured execution
+		assertEquals(1, getCacheFiles(p).size());
+	}
+
+	@Test
+	public void testCheckstyleDistinctExecutions() throws Exception {
+		final IProject p = importProject("projects/checkstyle-distinct-executions/pom.xml");
+		assertTrue(p.hasNature(NATURE_ID));
+
+		// different rules, each execution is configured
 		IProjectConfiguration configuration = ProjectConfigurationFactory.getConfiguration(p);
 		assertEquals(2, configuration.getLocalCheckConfigurations().size());
+		assertEquals(2, configuration.getFileSets().size());
+		assertEquals(2, getCacheFiles(p).size());
+	}
+
+	@Test
+	public void testCheckstyleMavenCacheFileSharedByExecutions() throws Exception {
+		final IPreferenceStore preferences = Activator.getDefault().getPreferenceStore();
+		preferences.setValue(CheckstyleEclipseConstants.ECLIPSE_CS_USE_MAVEN_CACHE_FILE, true);
+		try {
+			final IProject p = importProject("projects/checkstyle-distinct-executions/pom.xml");
+
+			// both executions have the default cacheFile of the plugin, it is not shared between them
+			final Set<String> cacheFiles = getCacheFiles(p);
+			assertEquals(2, cacheFiles.size());
+			assertTrue(cacheFiles.contains("${project_loc}/target/checkstyle-cachefile-default"));
+			assertTrue(cacheFiles.contains("${project_loc}/target/checkstyle-cachefile-second"));
+		} finally {
+			preferences.setToDefault(CheckstyleEclipseConstants.ECLIPSE_CS_USE_MAVEN_CACHE_FILE);
+		}
+	}
+
+	private static Set<String> getCacheFiles(final IProject project) throws Exception {
+		final Set<String> cacheFiles = new HashSet<>();
+		for (final ICheckConfiguration checkConfig : ProjectConfigurationFactory.getConfiguration(project)
+				.getLocalCheckConfigurations()) {
+			for (final ResolvableProperty property : checkConfig.getResolvableProperties()) {
+				if (CheckstyleEclipseConstants.ECLIPSE_CS_CACHE_FILE_PROPERTY.equals(property.getPropertyName())) {
+					cacheFiles.add(property.getValue());
+				}
+			}
+		}
+		return cacheFiles;
+	}
+
+	@Test
+	public void testCheckstyleEquivalentExecutionsMerged() throws Exception {
+		final IProject p = importProject("projects/checkstyle-merged-executions/pom.xml");
+		assertTrue(p.hasNature(NATURE_ID));
+
+		// check and checkstyle goals with the same configuration, checked once
+		IProjectConfiguration configuration = ProjectConfigurationFactory.getConfiguration(p);
+		assertEquals(1, configuration.getLocalCheckConfigurations().size());
+		assertEquals(1, configuration.getFileSets().size());
 	}
 
 	@Test
@@ -139,9 +257,9 @@ public class EclipseCheckstyleProjectConfigurationTest extends AbstractMavenProj
 		assertTrue(p.hasNature(NATURE_ID));
 		assertTrue(hasBuilder(p, BUILDER_ID));
 
-		// still both configurations present
+		// the skipped execution is merged into the equivalent one
 		IProjectConfiguration configuration = ProjectConfigurationFactory.getConfiguration(p);
-		assertEquals(2, configuration.getLocalCheckConfigurations().size());
+		assertEquals(1, configuration.getLocalCheckConfigurations().size());
 	}
 
 	@Test
@@ -153,9 +271,9 @@ public class EclipseCheckstyleProjectConfigurationTest extends AbstractMavenProj
 		assertFalse(p.hasNature(NATURE_ID));
 		assertFalse(hasBuilder(p, BUILDER_ID));
 
-		// still both configurations present
+		// still a configuration present, the executions are merged
 		IProjectConfiguration configuration = ProjectConfigurationFactory.getConfiguration(p);
-		assertEquals(2, configuration.getLocalCheckConfigurations().size());
+		assertEquals(1, configuration.getLocalCheckConfigurations().size());
 	}
 
 	@Test
@@ -168,6 +286,63 @@ public class EclipseCheckstyleProjectConfigurationTest extends AbstractMavenProj
 		assertMarkers(module1, MARKER_ID, 1);
 	}
 
+	@Test
+	public void testCheckstyleInlineRulesShared() throws Exception {
+		importProject("projects/checkstyle-inline-rules/pom.xml");
+		final IProject module1 = importProject("projects/checkstyle-inline-rules/module1/pom.xml");
+		final String location = getCheckConfigurationLocation(module1);
+		final File rules = new File(new URL(location).toURI());
+		final long lastModified = rules.lastModified();
+
+		// same rules, same file, and it is not rewritten
+		final IProject module2 = importProject("projects/checkstyle-inline-rules/module2/pom.xml");
+		assertEquals(location, getCheckConfigurationLocation(module2));
+		assertEquals(lastModified, rules.lastModified());
+	}
+
+	@Test
+	public void testCheckstyleSharedGlobalConfiguration() throws Exception {
+		final IPreferenceStore preferences = Activator.getDefault().getPreferenceStore();
+		preferences.setValue(CheckstyleEclipseConstants.ECLIPSE_CS_SHARE_GLOBAL_CONFIGURATIONS, true);
+		final List<IProject> modules = new ArrayList<>();
+		final ICheckConfiguration checkConfig1;
+		try {
+			importProject("projects/checkstyle-inline-rules/pom.xml");
+			modules.add(importProject("projects/checkstyle-inline-rules/module1/pom.xml"));
+			modules.add(importProject("projects/checkstyle-inline-rules/module2/pom.xml"));
+
+			checkConfig1 = getFileSetCheckConfiguration(modules.get(0));
+			final ICheckConfiguration checkConfig2 = getFileSetCheckConfiguration(modules.get(1));
+			assertTrue(checkConfig1.isGlobal());
+			assertEquals(checkConfig1.getName(), checkConfig2.getName());
+			assertTrue(ProjectConfigurationFactory.getConfiguration(modules.get(0)).getLocalCheckConfigurations()
+					.isEmpty());
+		} finally {
+			preferences.setToDefault(CheckstyleEclipseConstants.ECLIPSE_CS_SHARE_GLOBAL_CONFIGURATIONS);
+			// back to local configurations, the shared one is no longer used
+			for (final IProject module : modules) {
+				refreshProjectWithProfiles(module, "");
+			}
+			SharedCheckConfigurations.removeUnused(0, null);
+		}
+		for (final IProject module : modules) {
+			assertFalse(getFileSetCheckConfiguration(module).isGlobal());
+		}
+		assertNull(CheckConfigurationFactory.getCheckConfiguration(checkConfig1.getName()));
+	}
+
+	private static ICheckConfiguration getFileSetCheckConfiguration(final IProject project) throws Exception {
+		final IProjectConfiguration configuration = ProjectConfigurationFactory.getConfiguration(project);
+		assertEquals(1, configuration.getFileSets().size());
+		return configuration.getFileSets().get(0).getCheckConfig();
+	}
+
+	private static String getCheckConfigurationLocation(final IProject project) throws Exception {
+		final IProjectConfiguration configuration = ProjectConfigurationFactory.getConfiguration(project);
+		assertEquals(1, configuration.getLocalCheckConfigurations().size());
+		return configuration.getLocalCheckConfigurations().get(0).getLocation();
+	}
+
 	private final class TriggerCheckstyleExplicitly implements ProjectCallable {
 
 		@Override
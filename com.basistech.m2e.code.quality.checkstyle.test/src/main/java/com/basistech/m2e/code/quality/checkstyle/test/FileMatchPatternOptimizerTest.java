@@ -0,0 +1,82 @@
+package com.basistech.m2e.code.quality.checkstyle.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.basistech.m2e.code.quality.checkstyle.FileMatchPatternOptimizer;
+
+import net.sf.eclipsecs.core.projectconfig.FileMatchPattern;
+
+public class FileMatchPatternOptimizerTest {
+
+	private static final List<String> FILES = Arrays.asList("src/main/java/A.java", "src/main/java/com/foo/B.java",
+			"src/main/java/com/foo/B.properties", "src/test/java/ATest.java", "src/main/resources/a.properties",
+			"src/main/resources/b.xml", "target/generated-sources/C.java", "src/main/javax/D.java", "pom.xml");
+
+	@Test
+	public void testRunsOfIncludesAndExcludesAreMerged() throws Exception {
+		final List<FileMatchPattern> patterns = patterns("+^src/main/java/.*\\.java", "+^src/test/java/.*\\.java",
+				"+^src/main/java/.*\\.properties", "-^src/main/java/com/foo.*", "-^src/test/java/.*Test\\.java",
+				"+^src/main/resources/.*\\.properties");
+		final List<FileMatchPattern> optimized = FileMatchPatternOptimizer.optimize(patterns);
+
+		assertEquals(3, optimized.size());
+		assertEquals("^src/main/java/(?:.*\\.java|.*\\.properties)|^src/test/java/.*\\.java",
+				optimized.get(0).getMatchPattern());
+		assertSameFiles(patterns, optimized);
+	}
+
+	@Test
+	public void testSubsumedPatternsAreRemoved() throws Exception {
+		final List<FileMatchPattern> patterns = patterns("-^target/.*", "+^src/main/java/com/.*\\.java",
+				"+^src/main/java", "-^src/main/java/com/foo/.*", "-^src/main/java/com/foo/.*",
+				"+^src/main/java/com/x?");
+		final List<FileMatchPattern> optimized = FileMatchPatternOptimizer.optimize(patterns);
+
+		assertEquals(3, optimized.size());
+		assertEquals("^src/main/java", optimized.get(0).getMatchPattern());
+		assertEquals("^src/main/java/com/foo/.*", optimized.get(1).getMatchPattern());
+		assertSameFiles(patterns, optimized);
+	}
+
+	@Test
+	public void testBackReferencesAreNotMerged() throws Exception {
+		final List<FileMatchPattern> patterns = patterns("+^(src)/main/\\1.*", "+^src/main/java");
+		final List<FileMatchPattern> optimized = FileMatchPatternOptimizer.optimize(patterns);
+
+		assertEquals(2, optimized.size());
+		assertSameFiles(patterns, optimized);
+	}
+
+	private static List<FileMatchPattern> patterns(final String... patterns) throws Exception {
+		final List<FileMatchPattern> fileMatchPatterns = new ArrayList<>();
+		for (final String pattern : patterns) {
+			final FileMatchPattern fileMatchPattern = new FileMatchPattern(pattern.substring(1));
+			fileMatchPattern.setIsIncludePattern(pattern.charAt(0) == '+');
+			fileMatchPatterns.add(fileMatchPattern);
+		}
+		return fileMatchPatterns;
+	}
+
+	private static void assertSameFiles(final List<FileMatchPattern> expected, final List<FileMatchPattern> actual) {
+		for (final String file : FILES) {
+			assertEquals(file, includes(expected, file), includes(actual, file));
+		}
+	}
+
+	/** the last matching pattern decides, as in {@code FileSet} */
+	private static boolean includes(final List<FileMatchPattern> patterns, final String file) {
+		boolean included = false;
+		for (final FileMatchPattern pattern : patterns) {
+			if (pattern.isMatch(file)) {
+				included = pattern.isIncludePattern();
+			}
+		}
+		return included;
+	}
+}
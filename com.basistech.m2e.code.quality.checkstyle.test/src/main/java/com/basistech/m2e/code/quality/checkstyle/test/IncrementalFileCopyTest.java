@@ -0,0 +1,161 @@
+package com.basistech.m2e.code.quality.checkstyle.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.basistech.m2e.code.quality.shared.IncrementalFileCopy;
+
+public class IncrementalFileCopyTest {
+
+	/** more than two chunks */
+	private static final int SIZE = 20_000;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final IncrementalFileCopy copy = new IncrementalFileCopy(null);
+
+	@Test
+	public void testUnchangedFileIsNotWritten() throws Exception {
+		final Path output = write("output.xml", content(SIZE, 0));
+		final FileTime lastModified = setLastModified(output, 1_000_000_000L);
+
+		copy.copyIfChanged(new ByteArrayInputStream(content(SIZE, 0)), output);
+		assertEquals(lastModified, Files.getLastModifiedTime(output));
+	}
+
+	@Test
+	public void testChangeInTheMiddleIsWritten() throws Exception {
+		final Path output = write("output.xml", content(SIZE, 0));
+		final byte[] source = content(SIZE, 0);
+		source[SIZE / 2] ^= 1;
+
+		copy.copyIfChanged(new ByteArrayInputStream(source), output);
+		assertArrayEquals(source, Files.readAllBytes(output));
+	}
+
+	@Test
+	public void testShorterSourceTruncatesFile() throws Exception {
+		final Path output = write("output.xml", content(SIZE, 0));
+		final byte[] source = Arrays.copyOf(content(SIZE, 0), SIZE - 100);
+
+		copy.copyIfChanged(new ByteArrayInputStream(source), output);
+		assertArrayEquals(source, Files.readAllBytes(output));
+	}
+
+	@Test
+	public void testLongerSourceExtendsFile() throws Exception {
+		final Path output = write("output.xml", content(SIZE, 0));
+		final byte[] source = content(SIZE + 100, 0);
+
+		copy.copyIfChanged(new ByteArrayInputStream(source), output);
+		assertArrayEquals(source, Files.readAllBytes(output));
+	}
+
+	@Test
+	public void testSidecarDigestIsTrustedUntilFileIsModified() throws Exception {
+		final IncrementalFileCopy digestingCopy = new IncrementalFileCopy(
+				temporaryFolder.newFolder("digests").toPath());
+		final Path source = write("source.xml", content(SIZE, 0));
+		final Path output = temporaryFolder.getRoot().toPath().resolve("output.xml");
+		digestingCopy.copyIfChanged(source.toUri().toURL(), output);
+		assertArrayEquals(content(SIZE, 0), Files.readAllBytes(output));
+
+		// same size and timestamp: the digest is compared, not the file
+		final FileTime lastModified = Files.getLastModifiedTime(output);
+		Files.write(output, content(SIZE, 1));
+		Files.setLastModifiedTime(output, lastModified);
+		digestingCopy.copyIfChanged(source.toUri().toURL(), output);
+		assertArrayEquals(content(SIZE, 1), Files.readAllBytes(output));
+
+		// another timestamp: the file is compared and rewritten
+		setLastModified(output, lastModified.toMillis() + 2000);
+		digestingCopy.copyIfChanged(source.toUri().toURL(), output);
+		assertArrayEquals(content(SIZE, 0), Files.readAllBytes(output));
+	}
+
+	@Test
+	public void testFailedCopyKeepsFile() throws Exception {
+		final Path output = write("output.xml", content(SIZE, 0));
+		final byte[] source = content(SIZE, 1);
+		final InputStream failing = new SequenceInputStream(new ByteArrayInputStream(source), new InputStream() {
+
+			@Override
+			public int read() throws IOException {
+				throw new IOException("connection reset");
+			}
+		});
+
+		try {
+			copy.copyIfChanged(failing, output);
+			fail("the copy should have failed");
+		} catch (final IOException expected) {
+			// expected
+		}
+		assertArrayEquals(content(SIZE, 0), Files.readAllBytes(output));
+		try (Stream<Path> files = Files.list(temporaryFolder.getRoot().toPath())) {
+			assertEquals(1, files.count());
+		}
+	}
+
+	@Test
+	public void testDigestsOfDeletedFilesAreRemoved() throws Exception {
+		final Path digests = temporaryFolder.newFolder("digests").toPath();
+		final IncrementalFileCopy digestingCopy = new IncrementalFileCopy(digests);
+		final Path kept = temporaryFolder.getRoot().toPath().resolve("kept.xml");
+		final Path deleted = temporaryFolder.getRoot().toPath().resolve("deleted.xml");
+		final Path forgotten = temporaryFolder.getRoot().toPath().resolve("forgotten.xml");
+		for (final Path output : new Path[] { kept, deleted, forgotten }) {
+			digestingCopy.copyIfChanged(new ByteArrayInputStream(content(100, 0)), output);
+		}
+		assertEquals(3, count(digests));
+
+		digestingCopy.forget(forgotten);
+		assertEquals(2, count(digests));
+
+		Files.delete(deleted);
+		assertEquals(1, digestingCopy.removeOrphanedDigests());
+		assertEquals(1, count(digests));
+	}
+
+	private static long count(final Path directory) throws Exception {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.count();
+		}
+	}
+
+	private Path write(final String name, final byte[] content) throws Exception {
+		final Path file = temporaryFolder.getRoot().toPath().resolve(name);
+		Files.write(file, content);
+		return file;
+	}
+
+	private static FileTime setLastModified(final Path file, final long millis) throws Exception {
+		final FileTime lastModified = FileTime.fromMillis(millis);
+		Files.setLastModifiedTime(file, lastModified);
+		return lastModified;
+	}
+
+	private static byte[] content(final int size, final int seed) {
+		final byte[] content = new byte[size];
+		for (int i = 0; i < size; ++i) {
+			content[i] = (byte) (i * 31 + seed);
+		}
+		return content;
+	}
+}
@@ -0,0 +1,83 @@
+package com.basistech.m2e.code.quality.checkstyle.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.MojoExecution;
+import org.eclipse.m2e.core.project.IMavenProjectFacade;
+import org.junit.Test;
+
+import com.basistech.m2e.code.quality.shared.MavenPluginWrapper;
+
+public class MavenPluginWrapperTest {
+
+	private static final String GROUP_ID = "org.apache.maven.plugins";
+	private static final String ARTIFACT_ID = "maven-checkstyle-plugin";
+
+	private final MojoExecution check = mojoExecution("check");
+	private final MojoExecution checkstyle = mojoExecution("checkstyle");
+	private final AtomicInteger lookups = new AtomicInteger();
+
+	@Test
+	public void testExecutionsAreLookedUpOncePerFacadeAndGoals() throws Exception {
+		final IMavenProjectFacade facade = facade();
+		final List<MojoExecution> executions = getMojoExecutions(facade, "check");
+		assertEquals(Arrays.asList(check), executions);
+
+		assertSame(executions, getMojoExecutions(facade, "check"));
+		assertEquals(1, lookups.get());
+
+		assertEquals(Arrays.asList(check, checkstyle), getMojoExecutions(facade, "check", "checkstyle"));
+		assertEquals(Arrays.asList(check, checkstyle), getMojoExecutions(facade, (String[]) null));
+		assertEquals(3, lookups.get());
+	}
+
+	@Test
+	public void testNewFacadeIsLookedUpAgain() throws Exception {
+		getMojoExecutions(facade(), "check");
+		getMojoExecutions(facade(), "check");
+
+		assertEquals(2, lookups.get());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testCachedExecutionsAreUnmodifiable() throws Exception {
+		getMojoExecutions(facade(), "check").clear();
+	}
+
+	private static List<MojoExecution> getMojoExecutions(final IMavenProjectFacade facade, final String... goals)
+			throws Exception {
+		return MavenPluginWrapper.newInstance(null, GROUP_ID, ARTIFACT_ID, goals, facade).getMojoExecutions();
+	}
+
+	/** a facade with a check and a checkstyle execution, counting the lookups */
+	private IMavenProjectFacade facade() {
+		return (IMavenProjectFacade) Proxy.newProxyInstance(MavenPluginWrapperTest.class.getClassLoader(),
+				new Class<?>[] { IMavenProjectFacade.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getMojoExecutions":
+						lookups.incrementAndGet();
+						return Arrays.asList(check, checkstyle);
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					case "toString":
+						return "facade";
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	private static MojoExecution mojoExecution(final String goal) {
+		final MojoExecution mojoExecution = AbstractMavenPluginConfigurationTranslatorTest.mojoExecution(null);
+		mojoExecution.getMojoDescriptor().setGoal(goal);
+		return mojoExecution;
+	}
+}
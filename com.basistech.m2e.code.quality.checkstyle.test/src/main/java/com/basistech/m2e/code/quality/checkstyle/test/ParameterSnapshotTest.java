@@ -0,0 +1,86 @@
+package com.basistech.m2e.code.quality.checkstyle.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.basistech.m2e.code.quality.checkstyle.test.AbstractMavenPluginConfigurationTranslatorTest.TestTranslator;
+import com.basistech.m2e.code.quality.shared.ParameterSnapshot;
+
+public class ParameterSnapshotTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private TestTranslator translator;
+	private ParameterSnapshot snapshot;
+
+	@Before
+	public void createSnapshot() throws Exception {
+		final Xpp3Dom configuration = new Xpp3Dom("configuration");
+		for (final String parameter : new String[] { "configLocation", "excludes", "skip" }) {
+			configuration.addChild(new Xpp3Dom(parameter));
+		}
+		final Map<String, Object> values = new HashMap<>();
+		values.put("configLocation", "config/checkstyle.xml");
+		values.put("excludes", new String[] { "**/generated/**" });
+		values.put("skip", Boolean.TRUE);
+		final Map<String, Class<?>> declaredParameters = new HashMap<>();
+		declaredParameters.put("configLocation", String.class);
+		declaredParameters.put("excludes", String[].class);
+		declaredParameters.put("headerLocation", String.class);
+		translator = new TestTranslator(AbstractMavenPluginConfigurationTranslatorTest.mojoExecution(configuration),
+				AbstractMavenPluginConfigurationTranslatorTest.project(
+						temporaryFolder.newFolder("project").getAbsolutePath()),
+				values, declaredParameters);
+		snapshot = translator.getParameterSnapshot();
+	}
+
+	@Test
+	public void testOnlyDeclaredParametersAreEvaluated() throws Exception {
+		assertEquals("config/checkstyle.xml", snapshot.get("configLocation", String.class));
+		assertFalse(snapshot.contains("skip"));
+		assertEquals(0, translator.getEvaluations("skip"));
+		// not in the configuration, so it has no value
+		assertNull(snapshot.get("headerLocation", String.class));
+		assertEquals("default", snapshot.get("headerLocation", String.class, "default"));
+		assertEquals(0, translator.getEvaluations("headerLocation"));
+
+		assertSame(snapshot, translator.getParameterSnapshot());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testGetWithOtherTypeFails() {
+		snapshot.get("configLocation", Object.class);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testGetWithOtherTypeAndDefaultFails() {
+		snapshot.get("headerLocation", Integer.class, Integer.valueOf(0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testGetUndeclaredParameterFails() {
+		snapshot.get("skip", Boolean.class);
+	}
+
+	@Test
+	public void testArraysAreCopied() {
+		final String[] excludes = snapshot.get("excludes", String[].class);
+		assertArrayEquals(new String[] { "**/generated/**" }, excludes);
+
+		excludes[0] = "**/*.java";
+		assertArrayEquals(new String[] { "**/generated/**" }, snapshot.get("excludes", String[].class));
+	}
+}
@@ -0,0 +1,79 @@
+package com.basistech.m2e.code.quality.checkstyle.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import com.basistech.m2e.code.quality.checkstyle.CheckstyleUtil;
+import com.basistech.m2e.code.quality.shared.PatternCache;
+
+public class PatternCacheTest {
+
+	private final PatternCache cache = new PatternCache(2);
+
+	private final AtomicInteger translations = new AtomicInteger();
+
+	private final Function<String, String> translation = p -> {
+		translations.incrementAndGet();
+		return CheckstyleUtil.convertAntStylePatternToCheckstylePattern(p);
+	};
+
+	@Test
+	public void testTranslationIsCachedPerDialect() {
+		final String first = cache.translate("checkstyle", "com/foo/**/*.java", translation);
+		final String second = cache.translate("checkstyle", "com/foo/**/*.java", translation);
+		assertEquals(first, second);
+		assertEquals(1, translations.get());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+
+		// another dialect has its own translation
+		assertNotEquals(first, cache.translate("other", "com/foo/**/*.java", p -> p));
+		assertEquals(2, cache.getTranslationCount());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedTranslationIsEvicted() {
+		cache.translate("checkstyle", "a/**", translation);
+		cache.translate("checkstyle", "b/**", translation);
+		// a is used more recently than b now
+		cache.translate("checkstyle", "a/**", translation);
+		cache.translate("checkstyle", "c/**", translation);
+		assertEquals(2, cache.getTranslationCount());
+		assertEquals(3, translations.get());
+
+		cache.translate("checkstyle", "a/**", translation);
+		assertEquals(3, translations.get());
+		cache.translate("checkstyle", "b/**", translation);
+		assertEquals(4, translations.get());
+		assertEquals(2, cache.getTranslationCount());
+	}
+
+	@Test
+	public void testCompiledPatternIsShared() {
+		assertSame(cache.compile(".*/src/main/java/.*"), cache.compile(".*/src/main/java/.*"));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedPatternIsEvicted() {
+		final Pattern a = cache.compile("a.*");
+		cache.compile("b.*");
+		// a is used more recently than b now
+		assertSame(a, cache.compile("a.*"));
+		cache.compile("c.*");
+		assertEquals(2, cache.getCompiledCount());
+		assertEquals(3, cache.getMissCount());
+
+		assertSame(a, cache.compile("a.*"));
+		assertEquals(3, cache.getMissCount());
+		cache.compile("b.*");
+		assertEquals(4, cache.getMissCount());
+		assertEquals(2, cache.getCompiledCount());
+	}
+}
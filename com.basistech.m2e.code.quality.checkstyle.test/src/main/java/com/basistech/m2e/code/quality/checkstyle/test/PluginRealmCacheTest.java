@@ -0,0 +1,34 @@
+package com.basistech.m2e.code.quality.checkstyle.test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.codehaus.plexus.classworlds.ClassWorld;
+import org.codehaus.plexus.classworlds.realm.ClassRealm;
+import org.junit.Test;
+
+import com.basistech.m2e.code.quality.shared.PluginRealmCache;
+
+public class PluginRealmCacheTest {
+
+	private final ClassWorld world = new ClassWorld();
+
+	@Test
+	public void testRealmIsAliveUntilDisposed() throws Exception {
+		final ClassRealm realm = world.newRealm("plugin>maven-checkstyle-plugin", null);
+		assertTrue(PluginRealmCache.isAlive(realm));
+
+		world.disposeRealm(realm.getId());
+		assertFalse(PluginRealmCache.isAlive(realm));
+	}
+
+	@Test
+	public void testReplacedRealmIsNotAlive() throws Exception {
+		final ClassRealm realm = world.newRealm("plugin>maven-pmd-plugin", null);
+		world.disposeRealm(realm.getId());
+		final ClassRealm replacement = world.newRealm(realm.getId(), null);
+
+		assertFalse(PluginRealmCache.isAlive(realm));
+		assertTrue(PluginRealmCache.isAlive(replacement));
+	}
+}
@@ -0,0 +1,78 @@
+package com.basistech.m2e.code.quality.checkstyle.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.codehaus.plexus.classworlds.ClassWorld;
+import org.codehaus.plexus.classworlds.realm.ClassRealm;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.basistech.m2e.code.quality.shared.PluginRealmResourceIndex;
+
+public class PluginRealmResourceIndexTest {
+
+	private static final String RULES = "config/rules.xml";
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final ClassWorld world = new ClassWorld();
+
+	@After
+	public void clearIndexes() {
+		PluginRealmResourceIndex.clear();
+	}
+
+	@Test
+	public void testResourcesInClassPathOrder() throws Exception {
+		final File folder = temporaryFolder.newFolder("classes");
+		Files.createDirectories(folder.toPath().resolve("config"));
+		Files.write(folder.toPath().resolve(RULES), "<folder/>".getBytes(StandardCharsets.UTF_8));
+		final ClassRealm realm = world.newRealm("plugin", null);
+		realm.addURL(jar("first.jar", RULES).toURI().toURL());
+		realm.addURL(jar("other.jar", "config/other.xml").toURI().toURL());
+		realm.addURL(folder.toURI().toURL());
+		realm.addURL(jar("second.jar", RULES).toURI().toURL());
+
+		final PluginRealmResourceIndex index = PluginRealmResourceIndex.forRealm(realm);
+		assertEquals(Collections.list(realm.getResources(RULES)), index.getResources(realm, RULES));
+		assertEquals(3, index.getResources(realm, RULES).size());
+		assertTrue(index.getResources(realm, "config/missing.xml").isEmpty());
+	}
+
+	@Test
+	public void testIndexIsBuiltOncePerRealm() throws Exception {
+		final ClassRealm realm = world.newRealm("plugin", null);
+		realm.addURL(jar("first.jar", RULES).toURI().toURL());
+
+		final PluginRealmResourceIndex index = PluginRealmResourceIndex.forRealm(realm);
+		assertSame(index, PluginRealmResourceIndex.forRealm(realm));
+		assertNotSame(index, PluginRealmResourceIndex.forRealm(world.newRealm("other", null)));
+
+		PluginRealmResourceIndex.invalidate(realm);
+		assertNotSame(index, PluginRealmResourceIndex.forRealm(realm));
+	}
+
+	private File jar(final String name, final String entry) throws IOException {
+		final File jar = temporaryFolder.newFile(name);
+		try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+			out.putNextEntry(new JarEntry(entry));
+			out.write(("<" + name + "/>").getBytes(StandardCharsets.UTF_8));
+			out.closeEntry();
+		}
+		return jar;
+	}
+}
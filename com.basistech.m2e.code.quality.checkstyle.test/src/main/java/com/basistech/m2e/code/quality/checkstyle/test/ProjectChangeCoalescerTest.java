@@ -0,0 +1,46 @@
+package com.basistech.m2e.code.quality.checkstyle.test;
+
+import static org.eclipse.m2e.core.project.MavenProjectChangedEvent.KIND_ADDED;
+import static org.eclipse.m2e.core.project.MavenProjectChangedEvent.KIND_CHANGED;
+import static org.eclipse.m2e.core.project.MavenProjectChangedEvent.KIND_REMOVED;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.basistech.m2e.code.quality.shared.ProjectChangeCoalescer;
+
+public class ProjectChangeCoalescerTest {
+
+	@Test
+	public void testChangesOfAnExistingProject() {
+		assertEquals(KIND_CHANGED, ProjectChangeCoalescer.merge(KIND_CHANGED, KIND_CHANGED));
+		assertEquals(KIND_REMOVED, ProjectChangeCoalescer.merge(KIND_CHANGED, KIND_REMOVED));
+	}
+
+	@Test
+	public void testAddedProjectStaysNew() {
+		assertEquals(KIND_ADDED, ProjectChangeCoalescer.merge(KIND_ADDED, KIND_CHANGED));
+		assertEquals(KIND_ADDED, ProjectChangeCoalescer.merge(KIND_ADDED, KIND_ADDED));
+		assertEquals(KIND_REMOVED, ProjectChangeCoalescer.merge(KIND_ADDED, KIND_REMOVED));
+	}
+
+	@Test
+	public void testRemovedProjectComesBackAsNew() {
+		assertEquals(KIND_ADDED, ProjectChangeCoalescer.merge(KIND_REMOVED, KIND_ADDED));
+		assertEquals(KIND_ADDED, ProjectChangeCoalescer.merge(KIND_REMOVED, KIND_CHANGED));
+		assertEquals(KIND_REMOVED, ProjectChangeCoalescer.merge(KIND_REMOVED, KIND_REMOVED));
+	}
+
+	@Test
+	public void testMergingIsAssociative() {
+		final int[] kinds = { KIND_ADDED, KIND_CHANGED, KIND_REMOVED };
+		for (final int a : kinds) {
+			for (final int b : kinds) {
+				for (final int c : kinds) {
+					assertEquals(ProjectChangeCoalescer.merge(ProjectChangeCoalescer.merge(a, b), c),
+							ProjectChangeCoalescer.merge(a, ProjectChangeCoalescer.merge(b, c)));
+				}
+			}
+		}
+	}
+}
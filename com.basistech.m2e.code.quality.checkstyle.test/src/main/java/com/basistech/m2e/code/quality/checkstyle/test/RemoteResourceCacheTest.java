@@ -0,0 +1,121 @@
+package com.basistech.m2e.code.quality.checkstyle.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.basistech.m2e.code.quality.shared.RemoteResourceCache;
+import com.sun.net.httpserver.HttpServer;
+
+public class RemoteResourceCacheTest {
+
+	private static final String CONTENT = "<module name=\"Checker\"/>";
+	private static final String ETAG = "\"v1\"";
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private HttpServer server;
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger notModified = new AtomicInteger();
+	private URL url;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/checkstyle.xml", exchange -> {
+			requests.incrementAndGet();
+			if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				notModified.incrementAndGet();
+				exchange.sendResponseHeaders(304, -1);
+			} else {
+				final byte[] body = CONTENT.getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("ETag", ETAG);
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+			exchange.close();
+		});
+		server.start();
+		url = new URL("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+				+ server.getAddress().getPort() + "/checkstyle.xml");
+	}
+
+	@After
+	public void stopServer() {
+		if (server != null) {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testDownloadOnceWithinTtl() throws Exception {
+		final RemoteResourceCache cache = new RemoteResourceCache(temporaryFolder.getRoot().toPath(), 60_000L, false);
+		final URL first = cache.getLocalCopy(url);
+		final URL second = cache.getLocalCopy(url);
+
+		assertEquals("file", first.getProtocol());
+		assertEquals(first, second);
+		assertEquals(CONTENT, read(first));
+		assertEquals(1, requests.get());
+	}
+
+	@Test
+	public void testRevalidateWithEtag() throws Exception {
+		final RemoteResourceCache cache = new RemoteResourceCache(temporaryFolder.getRoot().toPath(), 0L, false);
+		cache.getLocalCopy(url);
+		final URL revalidated = cache.getLocalCopy(url);
+
+		assertEquals(2, requests.get());
+		assertEquals(1, notModified.get());
+		assertEquals(CONTENT, read(revalidated));
+	}
+
+	@Test
+	public void testOffline() throws Exception {
+		final RemoteResourceCache offlineCache = new RemoteResourceCache(temporaryFolder.getRoot().toPath(), 0L,
+				true);
+		assertNull(offlineCache.getLocalCopy(url));
+		assertEquals(0, requests.get());
+
+		new RemoteResourceCache(temporaryFolder.getRoot().toPath(), 0L, false).getLocalCopy(url);
+		final URL cached = offlineCache.getLocalCopy(url);
+		assertEquals(CONTENT, read(cached));
+		assertEquals(1, requests.get());
+	}
+
+	@Test
+	public void testStaleCopyWhenServerIsDown() throws Exception {
+		final RemoteResourceCache cache = new RemoteResourceCache(temporaryFolder.getRoot().toPath(), 0L, false);
+		cache.getLocalCopy(url);
+		server.stop(0);
+		server = null;
+
+		final URL stale = cache.getLocalCopy(url);
+		assertTrue(stale.getProtocol().equals("file"));
+		assertEquals(CONTENT, read(stale));
+	}
+
+	private static String read(final URL url) throws IOException {
+		try (InputStream in = url.openStream()) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+}
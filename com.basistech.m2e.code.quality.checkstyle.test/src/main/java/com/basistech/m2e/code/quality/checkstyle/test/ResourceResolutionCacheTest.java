@@ -0,0 +1,64 @@
+package com.basistech.m2e.code.quality.checkstyle.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.eclipse.core.runtime.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.basistech.m2e.code.quality.shared.ResourceResolver;
+
+public class ResourceResolutionCacheTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private File directory;
+	private ResourceResolver resolver;
+
+	@Before
+	public void createResolver() throws Exception {
+		directory = temporaryFolder.newFolder("project");
+		final Path location = new Path(directory.getAbsolutePath());
+		resolver = new ResourceResolver(null, location, Collections.singletonList(location));
+	}
+
+	@Test
+	public void testMissingFileIsResolvedOnceItsDirectoryChanges() throws Exception {
+		assertNull(resolver.resolveLocation("resolution-cache-test.xml"));
+
+		// the cached result is used as long as the directory has the same timestamp
+		final long lastModified = directory.lastModified();
+		final File file = new File(directory, "resolution-cache-test.xml");
+		Files.write(file.toPath(), new byte[] { 1 });
+		assertTrue(directory.setLastModified(lastModified));
+		assertNull(resolver.resolveLocation("resolution-cache-test.xml"));
+
+		assertTrue(directory.setLastModified(lastModified + 2000));
+		assertEquals(file.toURI().toURL(), resolver.resolveLocation("resolution-cache-test.xml"));
+	}
+
+	@Test
+	public void testDeletedFileIsNoLongerResolved() throws Exception {
+		final File file = new File(directory, "resolution-cache-test.xml");
+		Files.write(file.toPath(), new byte[] { 1 });
+		final URL url = file.toURI().toURL();
+		assertEquals(url, resolver.resolveLocation("resolution-cache-test.xml"));
+
+		// a changed file still resolves to itself
+		assertTrue(file.setLastModified(file.lastModified() + 2000));
+		assertEquals(url, resolver.resolveLocation("resolution-cache-test.xml"));
+
+		assertTrue(file.delete());
+		assertNull(resolver.resolveLocation("resolution-cache-test.xml"));
+	}
+}
@@ -24,7 +24,11 @@ public final class CheckstyleEclipseConstants {
 	public static final String ECLIPSE_CS_PREFS_FILE = ".checkstyle";
 	public static final String ECLIPSE_CS_PREFS_CONFIG_NAME = "maven-checkstyle-plugin";
 	public static final String ECLIPSE_CS_CACHE_FILENAME = "${project_loc}/target/checkstyle-cachefile";
+	public static final String ECLIPSE_CS_CACHE_FILE_PROPERTY = "checkstyle.cache.file";
+	public static final String ECLIPSE_CS_FILE_SET_PREFIX = "java-sources-";
 	public static final String ECLIPSE_CS_GENERATE_FORMATTER_SETTINGS = "eclipseCheckstyleGenerateFormatterSettings";
+	public static final String ECLIPSE_CS_SHARE_GLOBAL_CONFIGURATIONS = "eclipseCheckstyleShareGlobalConfigurations";
+	public static final String ECLIPSE_CS_USE_MAVEN_CACHE_FILE = "eclipseCheckstyleUseMavenCacheFile";
 
 	private CheckstyleEclipseConstants() {
 		// no instantiation.
@@ -16,25 +16,33 @@
  ******************************************************************************/
 package com.basistech.m2e.code.quality.checkstyle;
 
-import static com.basistech.m2e.code.quality.checkstyle.CheckstyleEclipseConstants.ECLIPSE_CS_CACHE_FILENAME;
+import static com.basistech.m2e.code.quality.checkstyle.CheckstyleEclipseConstants.ECLIPSE_CS_CACHE_FILE_PROPERTY;
+import static com.basistech.m2e.code.quality.checkstyle.CheckstyleEclipseConstants.ECLIPSE_CS_FILE_SET_PREFIX;
 import static com.basistech.m2e.code.quality.checkstyle.CheckstyleEclipseConstants.ECLIPSE_CS_PREFS_CONFIG_NAME;
 import static com.basistech.m2e.code.quality.checkstyle.CheckstyleEclipseConstants.ECLIPSE_CS_PREFS_FILE;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.m2e.core.project.IMavenProjectFacade;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.basistech.m2e.code.quality.shared.AbstractMavenPluginProjectConfigurator;
+import com.basistech.m2e.code.quality.shared.ConfigurationScope;
 import com.basistech.m2e.code.quality.shared.MavenPluginWrapper;
+import com.google.common.collect.Maps;
 import net.sf.eclipsecs.core.builder.CheckstyleMarker;
+import net.sf.eclipsecs.core.config.CheckConfigurationFactory;
 import net.sf.eclipsecs.core.config.CheckConfigurationWorkingCopy;
 import net.sf.eclipsecs.core.config.ICheckConfiguration;
 import net.sf.eclipsecs.core.config.ICheckConfigurationWorkingSet;
@@ -42,6 +50,8 @@ import net.sf.eclipsecs.core.config.ResolvableProperty;
 import net.sf.eclipsecs.core.config.configtypes.ConfigurationTypes;
 import net.sf.eclipsecs.core.config.configtypes.IConfigurationType;
 import net.sf.eclipsecs.core.nature.CheckstyleNature;
+import net.sf.eclipsecs.core.projectconfig.FileMatchPattern;
+import net.sf.eclipsecs.core.projectconfig.FileSet;
 import net.sf.eclipsecs.core.projectconfig.ProjectConfigurationFactory;
 import net.sf.eclipsecs.core.projectconfig.ProjectConfigurationWorkingCopy;
 import net.sf.eclipsecs.core.util.CheckstylePluginException;
@@ -54,8 +64,99 @@ public class EclipseCheckstyleProjectConfigurator extends AbstractMavenPluginPro
 
 	private static final IConfigurationType REMOTE_CONFIGURATION_TYPE = ConfigurationTypes.getByInternalName("remote");
 
+	private static final String PROJECT_LOC = "${project_loc}/";
+
 	public EclipseCheckstyleProjectConfigurator() {
-		super(CheckstyleNature.NATURE_ID, CheckstyleMarker.MARKER_ID, ECLIPSE_CS_PREFS_FILE, ECLIPSE_CS_CACHE_FILENAME);
+		// the cache files are deleted by deleteEclipseFiles, they are rewritten by every build
+		super(CheckstyleNature.NATURE_ID, CheckstyleMarker.MARKER_ID, ECLIPSE_CS_PREFS_FILE);
+	}
+
+	@Override
+	protected void deleteEclipseFiles(final IProject project, final IProgressMonitor monitor) throws CoreException {
+		// read the cache files of the executions before .checkstyle is deleted
+		for (final String cacheFile : getExecutionCacheFiles(project)) {
+			deleteFile(project, cacheFile, monitor);
+		}
+		super.deleteEclipseFiles(project, monitor);
+		SharedCheckConfigurations.scheduleCleanup();
+	}
+
+	/**
+	 * @return the cache files inside the project that have been created for an
+	 *         execution, relative to the project. A {@code cacheFile} of the
+	 *         maven-checkstyle-plugin used as is belongs to the command line
+	 *         build and is kept.
+	 */
+	private static List<String> getExecutionCacheFiles(final IProject project) {
+		final List<String> cacheFiles = new ArrayList<>();
+		try {
+			for (final FileSet fileSet : ProjectConfigurationFactory.getConfiguration(project).getFileSets()) {
+				final ICheckConfiguration checkCfg = fileSet.getCheckConfig();
+				if (checkCfg == null || fileSet.getName() == null
+						|| !fileSet.getName().startsWith(ECLIPSE_CS_FILE_SET_PREFIX)) {
+					continue;
+				}
+				final String suffix = "-" + fileSet.getName().substring(ECLIPSE_CS_FILE_SET_PREFIX.length());
+				for (final ResolvableProperty property : checkCfg.getResolvableProperties()) {
+					final String value = property.getValue();
+					if (ECLIPSE_CS_CACHE_FILE_PROPERTY.equals(property.getPropertyName()) && value != null
+							&& value.startsWith(PROJECT_LOC) && value.endsWith(suffix)) {
+						cacheFiles.add(value.substring(PROJECT_LOC.length()));
+					}
+				}
+			}
+		} catch (final CheckstylePluginException ex) {
+			LOG.debug("Could not read the cache files of {}", project.getName(), ex);
+		}
+		return cacheFiles;
+	}
+
+	@Override
+	protected Map<String, String> getFingerprintInputs(final IProject project) throws CoreException {
+		final Map<String, String> inputs = new HashMap<>();
+		final IPreferenceStore preferences = Activator.getDefault().getPreferenceStore();
+		for (final String preference : new String[] { CheckstyleEclipseConstants.ECLIPSE_CS_GENERATE_FORMATTER_SETTINGS,
+				CheckstyleEclipseConstants.ECLIPSE_CS_SHARE_GLOBAL_CONFIGURATIONS,
+				CheckstyleEclipseConstants.ECLIPSE_CS_USE_MAVEN_CACHE_FILE }) {
+			inputs.put(preference, Boolean.toString(preferences.getBoolean(preference)));
+		}
+		// global check configurations can be deleted in the Checkstyle preferences
+		try {
+			for (final FileSet fileSet : ProjectConfigurationFactory.getConfiguration(project).getFileSets()) {
+				final ICheckConfiguration checkCfg = fileSet.getCheckConfig();
+				if (checkCfg == null) {
+					inputs.put("fileSet " + fileSet.getName(), "missing");
+				} else if (checkCfg.isGlobal()) {
+					final boolean exists = CheckConfigurationFactory.getCheckConfiguration(checkCfg.getName()) != null;
+					inputs.put("globalCheckConfiguration " + checkCfg.getName(), Boolean.toString(exists));
+					putProjectFileInputs(project, checkCfg, inputs);
+				}
+			}
+		} catch (final CheckstylePluginException ex) {
+			inputs.put("projectConfiguration", "unreadable");
+		}
+		return inputs;
+	}
+
+	/**
+	 * The copies of the header and suppressions files a global check
+	 * configuration refers to are in the build directory, see
+	 * {@link MavenPluginConfigurationTranslator#newInstance}, and are gone after
+	 * a {@code mvn clean}. Their existence is an input, so that the next
+	 * configuration copies them again.
+	 */
+	private static void putProjectFileInputs(final IProject project, final ICheckConfiguration checkCfg,
+			final Map<String, String> inputs) {
+		for (final ResolvableProperty property : checkCfg.getResolvableProperties()) {
+			final String value = property.getValue();
+			// the cache file is written by the build
+			if (!ECLIPSE_CS_CACHE_FILE_PROPERTY.equals(property.getPropertyName()) && value != null
+					&& value.startsWith(PROJECT_LOC)) {
+				final boolean exists = project.getLocation().append(value.substring(PROJECT_LOC.length())).toFile()
+						.isFile();
+				inputs.put("projectFile " + value, Boolean.toString(exists));
+			}
+		}
 	}
 
 	@Override
@@ -78,9 +179,11 @@ public class EclipseCheckstyleProjectConfigurator extends AbstractMavenPluginPro
 			final IProject project, final MavenPluginWrapper mavenPluginWrapper, final IProgressMonitor monitor)
 			throws CoreException {
 
-		final List<MavenPluginConfigurationTranslator> mavenCheckstyleConfigs = MavenPluginConfigurationTranslator
-				.newInstance(maven, this, mavenProjectFacade.getMavenProject(monitor), mavenPluginWrapper, project,
-						monitor);
+		final List<MavenPluginConfigurationTranslator> mavenCheckstyleConfigs;
+		try (ConfigurationScope scope = ConfigurationScope.phase("translator construction")) {
+			mavenCheckstyleConfigs = MavenPluginConfigurationTranslator.newInstance(maven, this,
+					mavenProjectFacade.getMavenProject(monitor), mavenPluginWrapper, project, monitor);
+		}
 
 		try {
 			// construct a new working copy
@@ -93,8 +196,12 @@ public class EclipseCheckstyleProjectConfigurator extends AbstractMavenPluginPro
 
 			// use all non-skipped executions (or first skipped execution otherwise)
 			boolean nonSkippedConfigFound = false;
+			// equivalence key to the execution that has been configured for it
+			final Map<String, String> configuredExecutions = new HashMap<>();
+			final Map<String, String> cacheFiles = getCacheFiles(mavenCheckstyleConfigs);
 			for (final MavenPluginConfigurationTranslator mavenCheckstyleConfig : mavenCheckstyleConfigs) {
-				buildCheckstyleConfiguration(pcWorkingCopy, mavenCheckstyleConfig);
+				buildCheckstyleConfiguration(project, pcWorkingCopy, mavenCheckstyleConfig,
+						cacheFiles.get(mavenCheckstyleConfig.getExecutionId()), configuredExecutions);
 				if (!mavenCheckstyleConfig.isSkip()) {
 					// found a non-skipped config
 					nonSkippedConfigFound = true;
@@ -104,7 +211,12 @@ public class EclipseCheckstyleProjectConfigurator extends AbstractMavenPluginPro
 
 			// persist the checkconfig
 			if (pcWorkingCopy.isDirty()) {
-				pcWorkingCopy.store();
+				try (ConfigurationScope scope = ConfigurationScope.settingsWrite(null,
+						"checkstyle project configuration")) {
+					pcWorkingCopy.store();
+				}
+				// the project may no longer refer to a shared configuration
+				SharedCheckConfigurations.scheduleCleanup();
 			}
 
 		} catch (final CheckstylePluginException ex) {
@@ -112,16 +224,41 @@ public class EclipseCheckstyleProjectConfigurator extends AbstractMavenPluginPro
 		}
 	}
 
-	private void buildCheckstyleConfiguration(final ProjectConfigurationWorkingCopy pcWorkingCopy,
-			final MavenPluginConfigurationTranslator cfgTranslator) throws CheckstylePluginException, CoreException {
+	/**
+	 * @return the cache file of each execution, by execution id. The
+	 *         {@code cacheFile} of the maven-checkstyle-plugin is only used as is
+	 *         if no other execution has the same, like its default in the build
+	 *         directory.
+	 */
+	private static Map<String, String> getCacheFiles(final List<MavenPluginConfigurationTranslator> translators)
+			throws CoreException {
+		final boolean useMavenCacheFile = Activator.getDefault().getPreferenceStore()
+				.getBoolean(CheckstyleEclipseConstants.ECLIPSE_CS_USE_MAVEN_CACHE_FILE);
+		final Map<String, String> mavenCacheFiles = new HashMap<>();
+		final Map<String, Integer> executionsByMavenCacheFile = new HashMap<>();
+		for (final MavenPluginConfigurationTranslator translator : translators) {
+			final String mavenCacheFile = useMavenCacheFile ? translator.getMavenCacheFile() : null;
+			if (mavenCacheFile != null) {
+				mavenCacheFiles.put(translator.getExecutionId(), mavenCacheFile);
+				executionsByMavenCacheFile.merge(mavenCacheFile, 1, Integer::sum);
+			}
+		}
+		final Map<String, String> cacheFiles = new HashMap<>();
+		for (final MavenPluginConfigurationTranslator translator : translators) {
+			final String mavenCacheFile = mavenCacheFiles.get(translator.getExecutionId());
+			final boolean shared = mavenCacheFile != null && executionsByMavenCacheFile.get(mavenCacheFile) > 1;
+			cacheFiles.put(translator.getExecutionId(), translator.getCacheFile(mavenCacheFile, shared));
+		}
+		return cacheFiles;
+	}
+
+	private void buildCheckstyleConfiguration(final IProject project,
+			final ProjectConfigurationWorkingCopy pcWorkingCopy, final MavenPluginConfigurationTranslator cfgTranslator,
+			final String cacheFile, final Map<String, String> configuredExecutions)
+			throws CheckstylePluginException, CoreException {
 		// get the ruleset from configLocation
 		final URL ruleset = cfgTranslator.getRuleset();
-		// build or get the checkconfig
-		final ICheckConfiguration checkCfg = this.createOrGetCheckstyleConfig(pcWorkingCopy, ruleset,
-				cfgTranslator.getExecutionId());
-		// update filesets (include and exclude patterns)
-		cfgTranslator.updateCheckConfigWithIncludeExcludePatterns(pcWorkingCopy, checkCfg);
-		// 2. Load all properties
+		// 1. Load all properties
 		// get Properties from propertiesLocation
 		final Properties props = cfgTranslator.getConfiguredProperties();
 		cfgTranslator.updatePropertiesWithPropertyExpansion(props);
@@ -136,14 +273,83 @@ public class EclipseCheckstyleProjectConfigurator extends AbstractMavenPluginPro
 			props.setProperty(cfgTranslator.getSuppressionsFileExpression(), suppressionsFile);
 		}
 		// add the cache file location to the props.
-		props.setProperty("checkstyle.cache.file", ECLIPSE_CS_CACHE_FILENAME);
-		// Load all properties in the checkConfig
-		final List<ResolvableProperty> csProps = checkCfg.getResolvableProperties();
-		csProps.clear();
-		for (final Map.Entry<Object, Object> entry : props.entrySet()) {
-			csProps.add(new ResolvableProperty((String) entry.getKey(), (String) entry.getValue()));
+		props.setProperty(ECLIPSE_CS_CACHE_FILE_PROPERTY, cacheFile);
+		final List<FileMatchPattern> fileMatchPatterns = cfgTranslator.getFileMatchPatterns();
+		// 2. skip executions that check the same files with the same rules as an earlier one, e.g. both
+		// checkstyle:check and checkstyle:checkstyle, eclipse-cs would run checkstyle twice on each file
+		final String executionId = cfgTranslator.getExecutionId();
+		final Properties keyProps = new Properties();
+		keyProps.putAll(props);
+		// different for every execution, compare what they are made of
+		keyProps.remove(ECLIPSE_CS_CACHE_FILE_PROPERTY);
+		if (headerFile != null) {
+			keyProps.setProperty("checkstyle.header.file", cfgTranslator.getHeaderLocation().toExternalForm());
+		}
+		if (suppressionsFile != null) {
+			keyProps.setProperty(cfgTranslator.getSuppressionsFileExpression(),
+					cfgTranslator.getSuppressionsLocation().toExternalForm());
 		}
+		final String equivalentExecution = configuredExecutions
+				.putIfAbsent(getEquivalenceKey(ruleset, keyProps, fileMatchPatterns), executionId);
+		if (equivalentExecution != null) {
+			LOG.info("{}: merged checkstyle execution {} into execution {}, same rules, properties and files",
+					project.getName(), executionId, equivalentExecution);
+			removeLocalCheckstyleConfig(pcWorkingCopy, executionId);
+			return;
+		}
+		// 3. build or get the checkconfig
+		final ICheckConfiguration checkCfg;
+		if (Activator.getDefault().getPreferenceStore()
+				.getBoolean(CheckstyleEclipseConstants.ECLIPSE_CS_SHARE_GLOBAL_CONFIGURATIONS)) {
+			removeLocalCheckstyleConfig(pcWorkingCopy, executionId);
+			checkCfg = SharedCheckConfigurations.getOrCreate(ruleset, props, project);
+		} else {
+			checkCfg = this.createOrGetCheckstyleConfig(pcWorkingCopy, ruleset, executionId);
+			// Load all properties in the checkConfig
+			final List<ResolvableProperty> csProps = checkCfg.getResolvableProperties();
+			csProps.clear();
+			for (final Map.Entry<Object, Object> entry : props.entrySet()) {
+				csProps.add(new ResolvableProperty((String) entry.getKey(), (String) entry.getValue()));
+			}
+		}
+		// 4. update filesets (include and exclude patterns)
+		cfgTranslator.updateCheckConfigWithIncludeExcludePatterns(pcWorkingCopy, checkCfg, fileMatchPatterns);
+	}
 
+	/**
+	 * Executions with the same key check the same files in the same way.
+	 */
+	private static String getEquivalenceKey(final URL ruleset, final Properties props,
+			final List<FileMatchPattern> fileMatchPatterns) {
+		final StringBuilder sb = new StringBuilder(ruleset.toExternalForm()).append('\n');
+		for (final Map.Entry<String, String> entry : new TreeMap<>(Maps.fromProperties(props)).entrySet()) {
+			sb.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+		}
+		// the last matching pattern decides, so the order matters
+		for (final FileMatchPattern pattern : fileMatchPatterns) {
+			sb.append(pattern.isIncludePattern() ? '+' : '-').append(pattern.getMatchPattern()).append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Remove the LocalCheckConfiguration of an execution, if any, when the
+	 * execution uses a shared global configuration instead, or has been merged
+	 * into another execution.
+	 */
+	private static void removeLocalCheckstyleConfig(final ProjectConfigurationWorkingCopy pcWorkingCopy,
+			final String executionId) {
+		final String configName = ECLIPSE_CS_PREFS_CONFIG_NAME + " " + executionId;
+		final ICheckConfigurationWorkingSet workingSet = pcWorkingCopy.getLocalCheckConfigWorkingSet();
+		final CheckConfigurationWorkingCopy[] workingCopies = workingSet.getWorkingCopies();
+		if (workingCopies == null) {
+			return;
+		}
+		for (final CheckConfigurationWorkingCopy copy : workingCopies) {
+			if (configName.equals(copy.getName()) && REMOTE_CONFIGURATION_TYPE.equals(copy.getType())) {
+				workingSet.removeCheckConfiguration(copy);
+			}
+		}
 	}
 
 	/**
@@ -33,6 +33,13 @@ public class EclipseCheckstylereferencePage extends FieldEditorPreferencePage im
 		addField(new BooleanFieldEditor(CheckstyleEclipseConstants.ECLIPSE_CS_GENERATE_FORMATTER_SETTINGS, text,
 				parent));
 
+		text = Messages.EclipseCheckstylereferencePage_1;
+		addField(new BooleanFieldEditor(CheckstyleEclipseConstants.ECLIPSE_CS_SHARE_GLOBAL_CONFIGURATIONS, text,
+				parent));
+
+		text = Messages.EclipseCheckstylereferencePage_2;
+		addField(new BooleanFieldEditor(CheckstyleEclipseConstants.ECLIPSE_CS_USE_MAVEN_CACHE_FILE, text, parent));
+
 	}
 
 }
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.checkstyle;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Preconditions;
+
+import net.sf.eclipsecs.core.projectconfig.FileMatchPattern;
+import net.sf.eclipsecs.core.util.CheckstylePluginException;
+
+/**
+ * Compacts the include/exclude patterns of a Checkstyle for Eclipse file set,
+ * so that it matches the same files with fewer regular expressions.
+ * <p>
+ * A file set includes a file if the last pattern finding a match in its project
+ * relative path is an include pattern. Hence a pattern can be dropped if a later
+ * pattern matches every path it matches, or if it is an exclude pattern with no
+ * include pattern before it. Adjacent patterns of the same kind are merged into
+ * one alternation, with the patterns anchored at the same folder grouped below
+ * that folder, e.g. {@code ^src/main/java/(?:.*\.java|.*\.properties)}.
+ * </p>
+ * <p>
+ * Patterns with back references or named groups are left alone, as their group
+ * numbers and names would clash in an alternation.
+ * </p>
+ */
+public final class FileMatchPatternOptimizer {
+
+	private static final String ANCHOR = "^";
+	private static final String ANY = ".*";
+	private static final String METACHARACTERS = ".[]{}()\\*+?^$|";
+	private static final String QUANTIFIERS = "*+?{";
+	private static final Pattern NOT_MERGEABLE = Pattern.compile("\\\\[1-9]|\\\\k<|\\(\\?<");
+	/** inline flags and lookarounds, which must not leak into other alternatives */
+	private static final Pattern SPECIAL_GROUP = Pattern.compile("\\(\\?[^:]");
+
+	private FileMatchPatternOptimizer() {
+		// no instantiation.
+	}
+
+	/**
+	 * @param patterns the include/exclude patterns, in the order of the file set.
+	 * @return patterns matching the same files, may be {@code patterns} itself.
+	 * @throws CheckstylePluginException if a merged pattern is invalid.
+	 */
+	public static List<FileMatchPattern> optimize(final List<FileMatchPattern> patterns)
+			throws CheckstylePluginException {
+		Preconditions.checkNotNull(patterns, "patterns cannot be null");
+		if (patterns.size() < 2) {
+			return patterns;
+		}
+
+		final List<FileMatchPattern> optimized = new ArrayList<>();
+		final List<FileMatchPattern> run = new ArrayList<>();
+		for (final FileMatchPattern pattern : removeRedundant(patterns)) {
+			if (NOT_MERGEABLE.matcher(pattern.getMatchPattern()).find()) {
+				flush(run, optimized);
+				optimized.add(pattern);
+				continue;
+			}
+			if (!run.isEmpty() && run.get(0).isIncludePattern() != pattern.isIncludePattern()) {
+				flush(run, optimized);
+			}
+			run.add(pattern);
+		}
+		flush(run, optimized);
+		return optimized;
+	}
+
+	private static List<FileMatchPattern> removeRedundant(final List<FileMatchPattern> patterns) {
+		final List<FileMatchPattern> remaining = new ArrayList<>();
+		for (int i = 0; i < patterns.size(); ++i) {
+			final FileMatchPattern pattern = patterns.get(i);
+			if (remaining.isEmpty() && !pattern.isIncludePattern()) {
+				// nothing to exclude from yet
+				continue;
+			}
+			boolean subsumed = false;
+			for (int j = i + 1; j < patterns.size() && !subsumed; ++j) {
+				subsumed = subsumes(patterns.get(j).getMatchPattern(), pattern.getMatchPattern());
+			}
+			if (!subsumed) {
+				remaining.add(pattern);
+			}
+		}
+		return remaining;
+	}
+
+	private static void flush(final List<FileMatchPattern> run, final List<FileMatchPattern> optimized)
+			throws CheckstylePluginException {
+		if (run.size() == 1) {
+			optimized.add(run.get(0));
+		} else if (!run.isEmpty()) {
+			final FileMatchPattern merged = new FileMatchPattern(merge(run));
+			merged.setIsIncludePattern(run.get(0).isIncludePattern());
+			optimized.add(merged);
+		}
+		run.clear();
+	}
+
+	private static String merge(final List<FileMatchPattern> run) {
+		// within a run the order does not matter, any match decides
+		final List<String> regexes = new ArrayList<>();
+		for (int i = 0; i < run.size(); ++i) {
+			final String regex = run.get(i).getMatchPattern();
+			boolean subsumed = false;
+			for (int j = 0; j < run.size() && !subsumed; ++j) {
+				final String other = run.get(j).getMatchPattern();
+				subsumed = j != i && subsumes(other, regex) && (j < i || !subsumes(regex, other));
+			}
+			if (!subsumed) {
+				regexes.add(regex);
+			}
+		}
+		if (regexes.size() == 1) {
+			return regexes.get(0);
+		}
+
+		final Map<String, List<String>> byFolder = new LinkedHashMap<>();
+		final List<String> alternatives = new ArrayList<>();
+		for (final String regex : regexes) {
+			final String literal = getLiteralPrefix(regex);
+			if (literal == null) {
+				alternatives.add("(?:" + regex + ")");
+				continue;
+			}
+			final String folder = literal.substring(0, literal.lastIndexOf('/') + 1);
+			byFolder.computeIfAbsent(folder, f -> new ArrayList<>())
+					.add(regex.substring(ANCHOR.length() + folder.length()));
+		}
+		for (final Map.Entry<String, List<String>> entry : byFolder.entrySet()) {
+			final List<String> suffixes = entry.getValue();
+			final String suffix = suffixes.size() == 1 ? suffixes.get(0) : "(?:" + String.join("|", suffixes) + ")";
+			alternatives.add(ANCHOR + entry.getKey() + suffix);
+		}
+		return String.join("|", alternatives);
+	}
+
+	/**
+	 * @return whether every path {@code regex} finds a match in is also matched
+	 *         by {@code other}.
+	 */
+	private static boolean subsumes(final String other, final String regex) {
+		if (other.equals(regex)) {
+			return true;
+		}
+		final String otherPrefix = getPrefixOnly(other);
+		final String literal = getLiteralPrefix(regex);
+		return otherPrefix != null && literal != null && literal.startsWith(otherPrefix);
+	}
+
+	/**
+	 * @return the literal of a pattern of the form {@code ^literal} or
+	 *         {@code ^literal.*}, which matches every path starting with the
+	 *         literal, or {@code null}.
+	 */
+	private static String getPrefixOnly(final String regex) {
+		if (!regex.startsWith(ANCHOR)) {
+			return null;
+		}
+		String literal = regex.substring(ANCHOR.length());
+		if (literal.endsWith(ANY)) {
+			literal = literal.substring(0, literal.length() - ANY.length());
+		}
+		for (int i = 0; i < literal.length(); ++i) {
+			if (METACHARACTERS.indexOf(literal.charAt(i)) >= 0) {
+				return null;
+			}
+		}
+		return literal;
+	}
+
+	/**
+	 * @return the literal every path matched by an anchored pattern starts with,
+	 *         or {@code null} if the pattern is not anchored or has alternatives
+	 *         or special groups.
+	 */
+	private static String getLiteralPrefix(final String regex) {
+		if (!regex.startsWith(ANCHOR) || regex.indexOf('|') >= 0 || SPECIAL_GROUP.matcher(regex).find()) {
+			return null;
+		}
+		int end = ANCHOR.length();
+		while (end < regex.length() && METACHARACTERS.indexOf(regex.charAt(end)) < 0) {
+			++end;
+		}
+		if (end > ANCHOR.length() && end < regex.length() && QUANTIFIERS.indexOf(regex.charAt(end)) >= 0) {
+			// the quantified character is optional or repeated
+			--end;
+		}
+		return regex.substring(ANCHOR.length(), end);
+	}
+}
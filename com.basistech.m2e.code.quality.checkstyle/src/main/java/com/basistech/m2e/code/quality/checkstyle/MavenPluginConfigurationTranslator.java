@@ -17,22 +17,25 @@
 package com.basistech.m2e.code.quality.checkstyle;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.StringReader;
-import java.io.Writer;
 import java.net.URI;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.maven.model.Resource;
@@ -43,7 +46,6 @@ import org.codehaus.plexus.configuration.xml.XmlPlexusConfiguration;
 import org.codehaus.plexus.util.StringUtils;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.m2e.core.embedder.IMaven;
 import org.slf4j.Logger;
@@ -51,7 +53,10 @@ import org.slf4j.LoggerFactory;
 
 import com.basistech.m2e.code.quality.shared.AbstractMavenPluginConfigurationTranslator;
 import com.basistech.m2e.code.quality.shared.AbstractMavenPluginProjectConfigurator;
+import com.basistech.m2e.code.quality.shared.Digests;
 import com.basistech.m2e.code.quality.shared.MavenPluginWrapper;
+import com.basistech.m2e.code.quality.shared.PatternCache;
+import com.google.common.collect.ImmutableMap;
 import net.sf.eclipsecs.core.config.ICheckConfiguration;
 import net.sf.eclipsecs.core.projectconfig.FileMatchPattern;
 import net.sf.eclipsecs.core.projectconfig.FileSet;
@@ -65,13 +70,42 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 
 	private static final Logger LOG = LoggerFactory.getLogger(MavenPluginConfigurationTranslator.class);
 
+	private static final Map<String, Class<?>> PARAMETERS = ImmutableMap.<String, Class<?>>builder()
+			.put("skip", Boolean.class)
+			.put("configLocation", String.class)
+			.put("checkstyleRules", XmlPlexusConfiguration.class)
+			.put("checkstyleRulesHeader", String.class)
+			.put("headerLocation", String.class)
+			.put("suppressionsLocation", String.class)
+			.put("suppressionsFile", String.class)
+			.put("suppressionsFileExpression", String.class)
+			.put("propertiesLocation", String.class)
+			.put("propertyExpansion", String.class)
+			.put("sourceDirectory", String.class)
+			.put("testSourceDirectory", String.class)
+			.put("includeTestSourceDirectory", Boolean.class)
+			.put("includeResources", Boolean.class)
+			.put("includeTestResources", Boolean.class)
+			.put("includes", String.class)
+			.put("excludes", String.class)
+			.put("resourceIncludes", String.class)
+			.put("resourceExcludes", String.class)
+			.put("cacheFile", String.class)
+			.build();
+
 	private static final String CHECKSTYLE_DEFAULT_CONFIG_FILE_NAME = "sun_checks.xml";
 	private static final String CHECKSTYLE_DEFAULT_CONFIG_LOCATION = "config/" + CHECKSTYLE_DEFAULT_CONFIG_FILE_NAME;
-	/** checkstyle maven plugin artifactId */
-	private static final Map<String, String> PATTERNS_CACHE = new HashMap<>();
+	/** the dialect of the include/exclude patterns in the {@link PatternCache} */
+	private static final String PATTERN_DIALECT = "checkstyle";
 	private static final String CHECKSTYLE_DEFAULT_CONFIG_FILE_HEADER = "<?xml version=\"1.0\"?>\n"
 			+ "<!DOCTYPE module PUBLIC \"-//Checkstyle//DTD Checkstyle Configuration 1.3//EN\" "
 			+ "\"https://checkstyle.org/dtds/configuration_1_3.dtd\">";
+	/** directory of the inline rules in the state location of the bundle */
+	private static final String INLINE_RULES_DIRECTORY = "inline-rules";
+	private static final String INLINE_RULES_PREFIX = "inline_checkstyle_";
+
+	/** the last time each inline rules file has been handed out, in milliseconds */
+	private static final Map<Path, Long> INLINE_RULES_HANDED_OUT = new ConcurrentHashMap<>();
 
 	private final URI basedirUri;
 	private final Path workingDirectory;
@@ -86,8 +120,13 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 		this.basedirUri = basedirUri;
 	}
 
+	@Override
+	protected Map<String, Class<?>> getDeclaredParameters() {
+		return PARAMETERS;
+	}
+
 	public boolean isSkip() throws CoreException {
-		return getParameterValue("skip", Boolean.class, Boolean.FALSE);
+		return getParameterSnapshot().get("skip", Boolean.class, Boolean.FALSE);
 	}
 
 	public URL getRuleset() throws CheckstylePluginException, CoreException {
@@ -110,7 +149,7 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 	}
 
 	private URL getInlineRules() throws CoreException, CheckstylePluginException {
-		PlexusConfiguration config = getParameterValue("checkstyleRules", XmlPlexusConfiguration.class);
+		PlexusConfiguration config = getParameterSnapshot().get("checkstyleRules", XmlPlexusConfiguration.class);
 		if (config == null) {
 			return null;
 		}
@@ -120,24 +159,87 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 		if ((config = config.getChild(0)) == null) {
 			return null;
 		}
-		String configFileHeader = getParameterValue("checkstyleRulesHeader", String.class);
+		String configFileHeader = getParameterSnapshot().get("checkstyleRulesHeader", String.class);
 		if (configFileHeader == null) {
 			configFileHeader = CHECKSTYLE_DEFAULT_CONFIG_FILE_HEADER;
 		}
 
-		IPath stateLocation = Activator.getDefault().getStateLocation();
-		File dir = stateLocation.toFile();
-		File checkstyleFile = new File(dir, projectName + "_inline_checkstyle.xml");
-		try (Writer writer = new FileWriter(checkstyleFile)) {
-			writer.write(configFileHeader);
-			writer.write(config.toString());
-			return checkstyleFile.toURI().toURL();
+		final Path stateLocation = Activator.getDefault().getStateLocation().toFile().toPath();
+		try {
+			// written by earlier versions, one per project
+			Files.deleteIfExists(stateLocation.resolve(projectName + "_inline_checkstyle.xml"));
+			return writeInlineRules(stateLocation.resolve(INLINE_RULES_DIRECTORY), configFileHeader + config)
+					.toUri().toURL();
 		} catch (IOException e) {
 			CheckstylePluginException.rethrow(e, "Error while extracting inline rules.");
 			return null;
 		}
 	}
 
+	/**
+	 * Store inline rules under a name derived from their content. The file is
+	 * only written if it is missing, so projects with the same rules share one
+	 * file, and its timestamp does not change as long as the rules do not.
+	 * Checkstyle for Eclipse then keeps its cached checker.
+	 *
+	 * @return the file with the rules.
+	 */
+	private static Path writeInlineRules(final Path directory, final String rules) throws IOException {
+		final byte[] content = rules.getBytes(StandardCharsets.UTF_8);
+		final Path file = directory.resolve(INLINE_RULES_PREFIX + Digests.sha256(content) + ".xml");
+		INLINE_RULES_HANDED_OUT.put(file, System.currentTimeMillis());
+		if (Files.isRegularFile(file)) {
+			return file;
+		}
+		Files.createDirectories(directory);
+		final Path tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try {
+			Files.write(tempFile, content);
+			try {
+				Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (final AtomicMoveNotSupportedException e) {
+				Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+		return file;
+	}
+
+	/**
+	 * Delete the inline rules files that no check configuration refers to.
+	 *
+	 * @param referencedLocations the locations of all check configurations.
+	 * @param handedOutBefore     only files last handed out before this time,
+	 *                            in milliseconds, are deleted; the
+	 *                            configuration of their project may not have
+	 *                            been stored yet.
+	 * @return the number of files deleted.
+	 */
+	static int removeUnusedInlineRules(final Set<String> referencedLocations, final long handedOutBefore) {
+		final Path directory = Activator.getDefault().getStateLocation().toFile().toPath()
+				.resolve(INLINE_RULES_DIRECTORY);
+		if (!Files.isDirectory(directory)) {
+			return 0;
+		}
+		int removed = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, INLINE_RULES_PREFIX + "*.xml")) {
+			for (final Path file : files) {
+				final Long handedOut = INLINE_RULES_HANDED_OUT.get(file);
+				if (referencedLocations.contains(file.toUri().toURL().toExternalForm())
+						|| handedOut != null && handedOut >= handedOutBefore) {
+					continue;
+				}
+				Files.deleteIfExists(file);
+				INLINE_RULES_HANDED_OUT.remove(file);
+				++removed;
+			}
+		} catch (final IOException e) {
+			LOG.debug("Could not remove unused inline rules in {}", directory, e);
+		}
+		return removed;
+	}
+
 	public String getHeaderFile() throws CheckstylePluginException, CoreException {
 		final URL headerLocation = getHeaderLocation();
 		if (headerLocation == null) {
@@ -145,8 +247,9 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 		}
 		final Path headerFile = workingDirectory
 				.resolve("checkstyle-header-" + sanitizeFilename(getExecutionId()) + ".txt");
-		try (InputStream inputStream = headerLocation.openStream()) {
-			copyIfChanged(inputStream, headerFile);
+		try {
+			Files.createDirectories(workingDirectory);
+			copyIfChanged(headerLocation, headerFile);
 		} catch (final IOException e) {
 			LOG.error("Could not copy header file {}", headerLocation, e);
 			throw new CheckstylePluginException(
@@ -163,8 +266,9 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 
 		final Path suppressionsFile = workingDirectory
 				.resolve("checkstyle-suppressions-" + sanitizeFilename(getExecutionId()) + ".xml");
-		try (InputStream inputStream = suppressionsLocation.openStream()) {
-			copyIfChanged(inputStream, suppressionsFile);
+		try {
+			Files.createDirectories(workingDirectory);
+			copyIfChanged(suppressionsLocation, suppressionsFile);
 		} catch (final IOException e) {
 			LOG.error("Could not copy suppressions file {}", suppressionsLocation, e);
 			throw new CheckstylePluginException(
@@ -173,16 +277,79 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 		return suppressionsFile.toAbsolutePath().toString();
 	}
 
+	/**
+	 * @return the {@code cacheFile} of the maven-checkstyle-plugin, relative to
+	 *         {@code ${project_loc}} if it is inside the project, or {@code null}
+	 *         if it is not set.
+	 * @throws CoreException if the parameter cannot be evaluated.
+	 */
+	public String getMavenCacheFile() throws CoreException {
+		final String cacheFile = getParameterSnapshot().get("cacheFile", String.class);
+		if (cacheFile == null || cacheFile.isEmpty()) {
+			return null;
+		}
+		final URI relative = basedirUri.relativize(new File(cacheFile).toURI());
+		// keeps the property the same for all projects, see SharedCheckConfigurations
+		return relative.isAbsolute() ? cacheFile : "${project_loc}/" + relative.getPath();
+	}
+
+	/**
+	 * Get the cache file for Checkstyle for Eclipse. Each execution has its own,
+	 * as the cache is only valid for one check configuration.
+	 *
+	 * @param mavenCacheFile the {@code cacheFile} of the maven-checkstyle-plugin
+	 *                       to share, see {@link #getMavenCacheFile()}, so files
+	 *                       checked by a command line build are not checked
+	 *                       again. Only effective if both use the same Checkstyle
+	 *                       version and configuration, Checkstyle resets the
+	 *                       cache otherwise. {@code null} to use a cache file of
+	 *                       our own.
+	 * @param sharedByExecutions whether other executions of the project have the
+	 *                       same {@code mavenCacheFile}, e.g. the default of the
+	 *                       plugin. The execution id is appended to it then.
+	 * @return the cache file, relative to {@code ${project_loc}} if it is inside
+	 *         the project.
+	 */
+	public String getCacheFile(final String mavenCacheFile, final boolean sharedByExecutions) {
+		if (mavenCacheFile != null && !sharedByExecutions) {
+			return mavenCacheFile;
+		}
+		final String cacheFile = mavenCacheFile != null ? mavenCacheFile
+				: CheckstyleEclipseConstants.ECLIPSE_CS_CACHE_FILENAME;
+		return cacheFile + "-" + sanitizeFilename(getExecutionId());
+	}
+
+	/**
+	 * @return the name of the file set of the execution.
+	 */
+	public String getFileSetName() {
+		return CheckstyleEclipseConstants.ECLIPSE_CS_FILE_SET_PREFIX + sanitizeFilename(getExecutionId());
+	}
+
 	public String getSuppressionsFileExpression() throws CoreException {
-		return getParameterValue("suppressionsFileExpression", String.class, "checkstyle.suppressions.file");
+		return getParameterSnapshot().get("suppressionsFileExpression", String.class, "checkstyle.suppressions.file");
+	}
+
+	/**
+	 * @return the include and exclude patterns of the sources checked by the
+	 *         execution, compacted by the {@link FileMatchPatternOptimizer}.
+	 * @throws CheckstylePluginException if a pattern is invalid.
+	 * @throws CoreException             if a parameter cannot be evaluated.
+	 */
+	public List<FileMatchPattern> getFileMatchPatterns() throws CheckstylePluginException, CoreException {
+		final List<FileMatchPattern> patterns = getIncludesExcludesFileMatchPatterns();
+		final List<FileMatchPattern> optimized = FileMatchPatternOptimizer.optimize(patterns);
+		LOG.debug("Compacted {} include/exclude patterns of execution {} to {}", patterns.size(), getExecutionId(),
+				optimized.size());
+		return optimized;
 	}
 
 	public void updateCheckConfigWithIncludeExcludePatterns(final ProjectConfigurationWorkingCopy pcWorkingCopy,
-			final ICheckConfiguration checkCfg) throws CheckstylePluginException, CoreException {
-		final FileSet fs = new FileSet("java-sources-" + sanitizeFilename(getExecutionId()), checkCfg);
+			final ICheckConfiguration checkCfg, final List<FileMatchPattern> fileMatchPatterns) {
+		final FileSet fs = new FileSet(getFileSetName(), checkCfg);
 		fs.setEnabled(true);
 		// add fileset includes/excludes
-		fs.setFileMatchPatterns(getIncludesExcludesFileMatchPatterns());
+		fs.setFileMatchPatterns(fileMatchPatterns);
 		// now add the config
 		pcWorkingCopy.getFileSets().add(fs);
 	}
@@ -195,7 +362,7 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 	 * @throws CoreException if an error occurs
 	 */
 	private String getPropertiesLocation() throws CoreException {
-		return getParameterValue("propertiesLocation", String.class);
+		return getParameterSnapshot().get("propertiesLocation", String.class);
 	}
 
 	/**
@@ -205,7 +372,7 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 	 * @throws CoreException if an error occurs
 	 */
 	private String getPropertyExpansion() throws CoreException {
-		return getParameterValue("propertyExpansion", String.class);
+		return getParameterSnapshot().get("propertyExpansion", String.class);
 	}
 
 	/**
@@ -216,15 +383,15 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 	 * @throws CoreException if an error occurs
 	 */
 	private boolean isIncludeTestSourceDirectory() throws CoreException {
-		return getParameterValue("includeTestSourceDirectory", Boolean.class, Boolean.FALSE);
+		return getParameterSnapshot().get("includeTestSourceDirectory", Boolean.class, Boolean.FALSE);
 	}
 
 	private boolean isIncludeResources() throws CoreException {
-		return getParameterValue("includeResources", Boolean.class, Boolean.TRUE);
+		return getParameterSnapshot().get("includeResources", Boolean.class, Boolean.TRUE);
 	}
 
 	private boolean isIncludeTestResources() throws CoreException {
-		return getParameterValue("includeTestResources", Boolean.class, Boolean.TRUE);
+		return getParameterSnapshot().get("includeTestResources", Boolean.class, Boolean.TRUE);
 	}
 
 	/**
@@ -234,21 +401,21 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 	 * @throws CoreException
 	 */
 	private String getConfigLocation() throws CoreException {
-		return getParameterValue("configLocation", String.class, CHECKSTYLE_DEFAULT_CONFIG_LOCATION);
+		return getParameterSnapshot().get("configLocation", String.class, CHECKSTYLE_DEFAULT_CONFIG_LOCATION);
 	}
 
-	private URL getHeaderLocation() throws CoreException {
-		String headerLocation = getParameterValue("headerLocation", String.class, "LICENSE.txt");
+	URL getHeaderLocation() throws CoreException {
+		String headerLocation = getParameterSnapshot().get("headerLocation", String.class, "LICENSE.txt");
 		if ("config/maven_checks.xml".equals(getConfigLocation()) && "LICENSE.txt".equals(headerLocation)) {
 			headerLocation = "config/maven-header.txt";
 		}
 		return resolveLocation(headerLocation);
 	}
 
-	private URL getSuppressionsLocation() throws CoreException {
-		String suppressionsLocation = getParameterValue("suppressionsLocation", String.class);
+	URL getSuppressionsLocation() throws CoreException {
+		String suppressionsLocation = getParameterSnapshot().get("suppressionsLocation", String.class);
 		if (suppressionsLocation == null) {
-			suppressionsLocation = getParameterValue("suppressionsFile", String.class);
+			suppressionsLocation = getParameterSnapshot().get("suppressionsFile", String.class);
 		}
 		if (suppressionsLocation == null) {
 			return null;
@@ -258,7 +425,7 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 
 	private List<String> getSourceDirectories() throws CoreException {
 		final List<String> sourceDirectories = new ArrayList<>(getParameterList("sourceDirectories", String.class));
-		final String sourceDirectory = getParameterValue("sourceDirectory", String.class);
+		final String sourceDirectory = getParameterSnapshot().get("sourceDirectory", String.class);
 		if (sourceDirectory != null) {
 			sourceDirectories.add(sourceDirectory);
 		}
@@ -271,7 +438,7 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 	private List<String> getTestSourceDirectories() throws CoreException {
 		final List<String> testSourceDirectories = new ArrayList<>(
 				getParameterList("testSourceDirectories", String.class));
-		final String testSourceDirectory = getParameterValue("testSourceDirectory", String.class);
+		final String testSourceDirectory = getParameterSnapshot().get("testSourceDirectory", String.class);
 		if (testSourceDirectory != null) {
 			testSourceDirectories.add(testSourceDirectory);
 		}
@@ -434,7 +601,7 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 	 */
 	private List<String> getPatterns(final String elemName) throws CoreException {
 		final List<String> transformedPatterns = new LinkedList<>();
-		final String patternsString = getParameterValue(elemName, String.class);
+		final String patternsString = getParameterSnapshot().get(elemName, String.class);
 		if (patternsString == null || patternsString.isEmpty()) {
 			return transformedPatterns;
 		}
@@ -444,14 +611,8 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 			if (p == null || p.isEmpty()) {
 				continue;
 			}
-			String csPattern;
-			if (PATTERNS_CACHE.containsKey(p)) {
-				csPattern = PATTERNS_CACHE.get(p);
-			} else {
-				csPattern = CheckstyleUtil.convertAntStylePatternToCheckstylePattern(p);
-				PATTERNS_CACHE.put(p, csPattern);
-			}
-			transformedPatterns.add(csPattern);
+			transformedPatterns.add(PatternCache.getInstance().translate(PATTERN_DIALECT, p,
+					CheckstyleUtil::convertAntStylePatternToCheckstylePattern));
 		}
 		return transformedPatterns;
 	}
@@ -495,8 +656,13 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 			final MavenPluginWrapper mavenPlugin, final IProject project, final IProgressMonitor monitor)
 			throws CoreException {
 		final List<MavenPluginConfigurationTranslator> m2csConverters = new ArrayList<>();
+		// a global configuration refers to the copies relative to ${project_loc}, see SharedCheckConfigurations;
+		// a mvn clean deletes them, which the configuration fingerprint notices
+		final Path path = Activator.getDefault().getPreferenceStore()
+				.getBoolean(CheckstyleEclipseConstants.ECLIPSE_CS_SHARE_GLOBAL_CONFIGURATIONS)
+						? Paths.get(mavenProject.getBuild().getDirectory())
+						: project.getWorkingLocation(configurator.getId()).toFile().toPath();
 		for (final MojoExecution execution : mavenPlugin.getMojoExecutions()) {
-			final Path path = project.getWorkingLocation(configurator.getId()).toFile().toPath();
 			m2csConverters.add(new MavenPluginConfigurationTranslator(maven, mavenProject, execution, project,
 					project.getLocationURI(), path, monitor));
 		}
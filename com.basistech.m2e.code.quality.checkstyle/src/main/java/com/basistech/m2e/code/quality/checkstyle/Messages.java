@@ -6,6 +6,8 @@ public class Messages extends NLS {
 
 	private static final String BUNDLE_NAME = "com.basistech.m2e.code.quality.checkstyle.messages"; //$NON-NLS-1$
 	public static String EclipseCheckstylereferencePage_0;
+	public static String EclipseCheckstylereferencePage_1;
+	public static String EclipseCheckstylereferencePage_2;
 
 	static {
 		// initialize resource bundle
@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.checkstyle;
+
+import static com.basistech.m2e.code.quality.checkstyle.CheckstyleEclipseConstants.ECLIPSE_CS_PREFS_CONFIG_NAME;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.basistech.m2e.code.quality.shared.Digests;
+
+import net.sf.eclipsecs.core.config.CheckConfigurationFactory;
+import net.sf.eclipsecs.core.config.CheckConfigurationWorkingCopy;
+import net.sf.eclipsecs.core.config.ICheckConfiguration;
+import net.sf.eclipsecs.core.config.ICheckConfigurationWorkingSet;
+import net.sf.eclipsecs.core.config.ResolvableProperty;
+import net.sf.eclipsecs.core.config.configtypes.ConfigurationTypes;
+import net.sf.eclipsecs.core.config.configtypes.IConfigurationType;
+import net.sf.eclipsecs.core.projectconfig.FileSet;
+import net.sf.eclipsecs.core.projectconfig.ProjectConfigurationFactory;
+import net.sf.eclipsecs.core.util.CheckstylePluginException;
+
+/**
+ * Global check configurations of Checkstyle for Eclipse, one per distinct
+ * ruleset and properties, referenced by all projects that use them instead of
+ * a local check configuration per project.
+ * <p>
+ * The name of a configuration is derived from a hash of its ruleset URL and
+ * properties, so it is found again by every project with the same
+ * configuration, also in later sessions. Property values inside the project
+ * are made relative to {@code ${project_loc}} first, so modules with copies of
+ * the same header or suppressions file share a configuration.
+ * </p>
+ * <p>
+ * Configurations that no project refers to any more are removed by a cleanup
+ * job, scheduled after every project configuration, together with the inline
+ * rules files of {@link MavenPluginConfigurationTranslator} that no check
+ * configuration refers to.
+ * </p>
+ */
+public final class SharedCheckConfigurations {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SharedCheckConfigurations.class);
+
+	private static final IConfigurationType REMOTE_CONFIGURATION_TYPE = ConfigurationTypes.getByInternalName("remote");
+
+	private static final String PROJECT_LOC = "${project_loc}";
+
+	/** the names of the configurations created by {@link #getOrCreate(URL, Properties, IProject)} */
+	private static final Pattern NAME = Pattern.compile(Pattern.quote(ECLIPSE_CS_PREFS_CONFIG_NAME) + " [0-9a-f]{16}");
+
+	/** how long a configuration is kept after it has been handed out, the project may not refer to it yet */
+	private static final long GRACE_PERIOD_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+	private static final long CLEANUP_DELAY_MILLIS = 5_000;
+
+	/** the global working set is not safe for concurrent updates */
+	private static final Object LOCK = new Object();
+
+	/** the last time each configuration has been handed out, in milliseconds */
+	private static final Map<String, Long> HANDED_OUT = new ConcurrentHashMap<>();
+
+	private static final Job CLEANUP_JOB = Job.create("Removing unused Checkstyle configurations", monitor -> {
+		removeUnused(GRACE_PERIOD_MILLIS, monitor);
+		return Status.OK_STATUS;
+	});
+
+	static {
+		CLEANUP_JOB.setSystem(true);
+	}
+
+	private SharedCheckConfigurations() {
+		// no instantiation.
+	}
+
+	/**
+	 * Find the global check configuration for a ruleset and properties, or
+	 * create it.
+	 *
+	 * @param ruleset    the ruleset.
+	 * @param properties the resolved properties of the ruleset.
+	 * @param project    the project the configuration is for.
+	 * @return the global check configuration.
+	 * @throws CheckstylePluginException if the configuration cannot be stored.
+	 */
+	static ICheckConfiguration getOrCreate(final URL ruleset, final Properties properties, final IProject project)
+			throws CheckstylePluginException {
+		final String projectLocation = project.getLocation().toOSString() + File.separator;
+		final Map<String, String> sortedProperties = new TreeMap<>();
+		for (final Map.Entry<Object, Object> entry : properties.entrySet()) {
+			String value = (String) entry.getValue();
+			if (value.startsWith(projectLocation)) {
+				value = PROJECT_LOC + "/"
+						+ value.substring(projectLocation.length()).replace(File.separatorChar, '/');
+			}
+			sortedProperties.put((String) entry.getKey(), value);
+		}
+		final String name = ECLIPSE_CS_PREFS_CONFIG_NAME + " " + hash(ruleset, sortedProperties);
+		synchronized (LOCK) {
+			HANDED_OUT.put(name, System.currentTimeMillis());
+			final ICheckConfiguration existing = CheckConfigurationFactory.getCheckConfiguration(name);
+			if (existing != null) {
+				return existing;
+			}
+			LOG.debug("Creating global check configuration {} for {}", name, ruleset);
+			final ICheckConfigurationWorkingSet workingSet = CheckConfigurationFactory.newWorkingSet();
+			final CheckConfigurationWorkingCopy workingCopy = workingSet.newWorkingCopy(REMOTE_CONFIGURATION_TYPE);
+			workingCopy.setName(name);
+			workingCopy.setDescription("maven-checkstyle-plugin configuration shared by all projects using "
+					+ ruleset.toExternalForm());
+			workingCopy.setLocation(ruleset.toExternalForm());
+			for (final Map.Entry<String, String> entry : sortedProperties.entrySet()) {
+				workingCopy.getResolvableProperties().add(new ResolvableProperty(entry.getKey(), entry.getValue()));
+			}
+			workingSet.addCheckConfiguration(workingCopy);
+			workingSet.store();
+			return CheckConfigurationFactory.getCheckConfiguration(name);
+		}
+	}
+
+	/**
+	 * Schedule the removal of the configurations no project refers to, after
+	 * the current burst of project configurations.
+	 */
+	static void scheduleCleanup() {
+		CLEANUP_JOB.schedule(CLEANUP_DELAY_MILLIS);
+	}
+
+	/**
+	 * Remove the global check configurations created for projects that no
+	 * project's file sets refer to any more, and the inline rules files no
+	 * check configuration refers to. Nothing is removed while a project with a
+	 * Checkstyle configuration is closed, as its file sets cannot be read.
+	 *
+	 * @param gracePeriodMillis configurations and files handed out more
+	 *                          recently are kept, the configuration of their
+	 *                          project may not have been stored yet.
+	 * @param monitor           the progress monitor, may be {@code null}.
+	 * @return the number of configurations removed.
+	 */
+	public static int removeUnused(final long gracePeriodMillis, final IProgressMonitor monitor) {
+		final Set<String> referenced = new HashSet<>();
+		final Set<String> referencedLocations = new HashSet<>();
+		for (final IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+			if (monitor != null && monitor.isCanceled()) {
+				return 0;
+			}
+			if (!project.isAccessible()) {
+				if (project.getLocation() != null && project.getLocation()
+						.append(CheckstyleEclipseConstants.ECLIPSE_CS_PREFS_FILE).toFile().exists()) {
+					// a closed project, its file sets cannot be read until it is reopened, keep everything
+					LOG.debug("{} is closed, keeping all global check configurations", project.getName());
+					return 0;
+				}
+				continue;
+			}
+			if (!project.getFile(CheckstyleEclipseConstants.ECLIPSE_CS_PREFS_FILE).exists()) {
+				continue;
+			}
+			try {
+				for (final FileSet fileSet : ProjectConfigurationFactory.getConfiguration(project).getFileSets()) {
+					if (fileSet.getCheckConfig() != null) {
+						referenced.add(fileSet.getCheckConfig().getName());
+						referencedLocations.add(fileSet.getCheckConfig().getLocation());
+					}
+				}
+			} catch (final CheckstylePluginException e) {
+				// cannot tell what it refers to, keep everything
+				LOG.debug("Could not read the Checkstyle configuration of {}", project.getName(), e);
+				return 0;
+			}
+		}
+		final long handedOutBefore = System.currentTimeMillis() - gracePeriodMillis;
+		synchronized (LOCK) {
+			final ICheckConfigurationWorkingSet workingSet = CheckConfigurationFactory.newWorkingSet();
+			int removed = 0;
+			for (final CheckConfigurationWorkingCopy workingCopy : workingSet.getWorkingCopies()) {
+				final String name = workingCopy.getName();
+				final Long handedOut = HANDED_OUT.get(name);
+				if (!NAME.matcher(name).matches() || referenced.contains(name)
+						|| handedOut != null && handedOut > handedOutBefore) {
+					referencedLocations.add(workingCopy.getLocation());
+					continue;
+				}
+				if (workingSet.removeCheckConfiguration(workingCopy)) {
+					HANDED_OUT.remove(name);
+					++removed;
+				} else {
+					referencedLocations.add(workingCopy.getLocation());
+				}
+			}
+			if (removed > 0) {
+				try {
+					workingSet.store();
+					LOG.debug("Removed {} unused global check configurations", removed);
+				} catch (final CheckstylePluginException e) {
+					LOG.error("Could not remove unused global check configurations", e);
+					return 0;
+				}
+			}
+			final int removedInlineRules = MavenPluginConfigurationTranslator
+					.removeUnusedInlineRules(referencedLocations, handedOutBefore);
+			LOG.debug("Removed {} unused inline rules files", removedInlineRules);
+			return removed;
+		}
+	}
+
+	private static String hash(final URL ruleset, final Map<String, String> properties) {
+		final MessageDigest digest = Digests.newSha256();
+		digest.update(ruleset.toExternalForm().getBytes(StandardCharsets.UTF_8));
+		for (final Map.Entry<String, String> entry : properties.entrySet()) {
+			digest.update((byte) 0);
+			digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) '=');
+			digest.update(entry.getValue().getBytes(StandardCharsets.UTF_8));
+		}
+		// short enough to read in the preferences, long enough not to collide
+		return Digests.toHex(digest.digest()).substring(0, 16);
+	}
+}
@@ -34,6 +34,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.basistech.m2e.code.quality.shared.AbstractMavenPluginProjectConfigurator;
+import com.basistech.m2e.code.quality.shared.ConfigurationScope;
 import com.basistech.m2e.code.quality.shared.MavenPluginWrapper;
 import de.tobject.findbugs.FindbugsPlugin;
 import de.tobject.findbugs.marker.FindBugsMarker;
@@ -74,8 +75,11 @@ public class EclipseFindbugsProjectConfigurator extends AbstractMavenPluginProje
 		if (javaProject == null || !javaProject.exists() || !javaProject.getProject().isOpen()) {
 			return;
 		}
-		final MavenPluginConfigurationTranslator mavenFindbugsConfig = MavenPluginConfigurationTranslator
-				.newInstance(maven, mavenPluginWrapper, mavenProjectFacade.getMavenProject(monitor), project, monitor);
+		final MavenPluginConfigurationTranslator mavenFindbugsConfig;
+		try (ConfigurationScope scope = ConfigurationScope.phase("translator construction")) {
+			mavenFindbugsConfig = MavenPluginConfigurationTranslator.newInstance(maven, mavenPluginWrapper,
+					mavenProjectFacade.getMavenProject(monitor), project, monitor);
+		}
 		UserPreferences prefs;
 		try {
 			final List<MojoExecution> mojoExecutions = mavenPluginWrapper.getMojoExecutions();
@@ -89,8 +93,11 @@ public class EclipseFindbugsProjectConfigurator extends AbstractMavenPluginProje
 					? FindbugsPlugin.getUserPreferences(project)
 					: null;
 			if (oldPrefs == null || !oldPrefs.equals(prefs)) {
-				FindbugsPlugin.saveUserPreferences(project, prefs);
-				FindbugsPlugin.setProjectSettingsEnabled(project, null, true);
+				try (ConfigurationScope scope = ConfigurationScope.settingsWrite(mavenFindbugsConfig.getExecutionId(),
+						"findbugs user preferences")) {
+					FindbugsPlugin.saveUserPreferences(project, prefs);
+					FindbugsPlugin.setProjectSettingsEnabled(project, null, true);
+				}
 			}
 		} catch (final CoreException ex) {
 			LOG.error(ex.getLocalizedMessage(), ex);
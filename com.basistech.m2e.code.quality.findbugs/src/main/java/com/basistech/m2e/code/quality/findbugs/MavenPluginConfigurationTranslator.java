@@ -54,6 +54,7 @@ import org.slf4j.LoggerFactory;
 
 import com.basistech.m2e.code.quality.shared.AbstractMavenPluginConfigurationTranslator;
 import com.basistech.m2e.code.quality.shared.MavenPluginWrapper;
+import com.google.common.collect.ImmutableMap;
 import edu.umd.cs.findbugs.DetectorFactory;
 import edu.umd.cs.findbugs.DetectorFactoryCollection;
 import edu.umd.cs.findbugs.config.ProjectFilterSettings;
@@ -66,18 +67,37 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 
 	private static final Logger LOG = LoggerFactory.getLogger(MavenPluginConfigurationTranslator.class);
 
+	private static final Map<String, Class<?>> PARAMETERS = ImmutableMap.<String, Class<?>>builder()
+			.put(SKIP, Boolean.class)
+			.put(INCLUDE_FILTER_FILE, String.class)
+			.put(EXCLUDE_FILTER_FILE, String.class)
+			.put(BUG_CATEGORIES, String.class)
+			.put(DEBUG, Boolean.class)
+			.put(EFFORT, String.class)
+			.put(MAX_RANK, Integer.class)
+			.put(PRIORITY, String.class)
+			.put(OMIT_VISITORS, String.class)
+			.put(THRESHOLD, String.class)
+			.put(VISITORS, String.class)
+			.build();
+
 	private MavenPluginConfigurationTranslator(final IMaven maven, final MavenProject mavenProject,
 			final MojoExecution execution, final IProject project, final IProgressMonitor monitor)
 			throws CoreException {
 		super(maven, mavenProject, execution, project, monitor);
 	}
 
+	@Override
+	protected Map<String, Class<?>> getDeclaredParameters() {
+		return PARAMETERS;
+	}
+
 	public boolean isSkip() throws CoreException {
-		return getParameterValue(SKIP, Boolean.class, Boolean.FALSE);
+		return getParameterSnapshot().get(SKIP, Boolean.class, Boolean.FALSE);
 	}
 
 	public void setIncludeFilterFiles(final UserPreferences prefs) throws CoreException {
-		final String includeFilterFile = getParameterValue(INCLUDE_FILTER_FILE, String.class);
+		final String includeFilterFile = getParameterSnapshot().get(INCLUDE_FILTER_FILE, String.class);
 		// don't do anything if null
 		if (includeFilterFile == null) {
 			LOG.debug("includeFilterFile is null");
@@ -98,7 +118,7 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 
 	public void setExcludeFilterFiles(final UserPreferences prefs) throws CoreException {
 		LOG.debug("entering setExcludeFilterFiles");
-		final String excludeFilterFile = getParameterValue(EXCLUDE_FILTER_FILE, String.class);
+		final String excludeFilterFile = getParameterSnapshot().get(EXCLUDE_FILTER_FILE, String.class);
 		// don't do anything if null
 		if (excludeFilterFile == null) {
 			LOG.debug("excludeFilterFile is null");
@@ -140,7 +160,7 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 	 */
 	public void setBugCatagories(final UserPreferences prefs) throws CoreException {
 		final ProjectFilterSettings pfs = prefs.getFilterSettings();
-		final String bugCatagories = getParameterValue(BUG_CATEGORIES, String.class);
+		final String bugCatagories = getParameterSnapshot().get(BUG_CATEGORIES, String.class);
 		if (bugCatagories == null) {
 			LOG.debug("bugCatagories is null");
 			return;
@@ -168,11 +188,11 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 	}
 
 	public boolean debugEnabled() throws CoreException {
-		return getParameterValue(DEBUG, Boolean.class);
+		return getParameterSnapshot().get(DEBUG, Boolean.class);
 	}
 
 	public void setEffort(final UserPreferences prefs) throws CoreException {
-		String effort = getParameterValue(EFFORT, String.class);
+		String effort = getParameterSnapshot().get(EFFORT, String.class);
 		if (effort == null) {
 			LOG.debug("effort is null");
 			return;
@@ -188,7 +208,7 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 	}
 
 	public void setMinRank(final UserPreferences prefs) throws CoreException {
-		final Integer minRank = getParameterValue(MAX_RANK, Integer.class);
+		final Integer minRank = getParameterSnapshot().get(MAX_RANK, Integer.class);
 		if (minRank == null) {
 			LOG.debug("max rank is null");
 			return;
@@ -201,7 +221,7 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 	}
 
 	public void setPriority(final UserPreferences prefs) throws CoreException {
-		final String priority = getParameterValue(PRIORITY, String.class);
+		final String priority = getParameterSnapshot().get(PRIORITY, String.class);
 		if (priority == null) {
 			LOG.debug("priority is null");
 			return;
@@ -214,7 +234,7 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 	}
 
 	public void setOmitVisitors(final UserPreferences prefs) throws CoreException {
-		final String omitVisitors = getParameterValue(OMIT_VISITORS, String.class);
+		final String omitVisitors = getParameterSnapshot().get(OMIT_VISITORS, String.class);
 		if (omitVisitors == null) {
 			LOG.debug("omitVisitors is null");
 			return;
@@ -232,7 +252,7 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 	}
 
 	public void setThreshold(final UserPreferences prefs) throws CoreException {
-		final String threshold = getParameterValue(THRESHOLD, String.class);
+		final String threshold = getParameterSnapshot().get(THRESHOLD, String.class);
 		if (threshold == null) {
 			LOG.debug("threshold is null");
 			return;
@@ -245,7 +265,7 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 	}
 
 	public void setVisitors(final UserPreferences prefs) throws CoreException {
-		final String visitors = getParameterValue(VISITORS, String.class);
+		final String visitors = getParameterSnapshot().get(VISITORS, String.class);
 		if (visitors == null) {
 			return;
 		}
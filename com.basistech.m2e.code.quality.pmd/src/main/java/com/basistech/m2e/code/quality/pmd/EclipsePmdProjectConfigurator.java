@@ -20,7 +20,6 @@ import static com.basistech.m2e.code.quality.pmd.PmdEclipseConstants.MAVEN_PLUGI
 import static com.basistech.m2e.code.quality.pmd.PmdEclipseConstants.MAVEN_PLUGIN_GROUPID;
 import static com.basistech.m2e.code.quality.pmd.PmdEclipseConstants.PMD_RULESET_FILE;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -28,18 +27,13 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
 import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.maven.plugin.MojoExecution;
@@ -59,7 +53,6 @@ import org.slf4j.LoggerFactory;
 import net.sourceforge.pmd.PMDConfiguration;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
-import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
 import net.sourceforge.pmd.eclipse.runtime.builder.PMDNature;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectPropertiesManager;
@@ -72,18 +65,12 @@ import net.sourceforge.pmd.lang.rule.RuleSetLoadException;
 import net.sourceforge.pmd.lang.rule.RuleSetLoader;
 
 import com.basistech.m2e.code.quality.shared.AbstractMavenPluginProjectConfigurator;
+import com.basistech.m2e.code.quality.shared.ConfigurationScope;
 import com.basistech.m2e.code.quality.shared.MavenPluginWrapper;
+import com.basistech.m2e.code.quality.shared.PatternCache;
 import com.basistech.m2e.code.quality.shared.ResourceResolver;
 
 public class EclipsePmdProjectConfigurator extends AbstractMavenPluginProjectConfigurator<PMDNature> {
-	private static final Pattern XML_ENCODING_PATTERN = Pattern.compile("<\\?xml\\s+version\\s*=\\s*['\"][^'\"]+['\"]\\s+encoding\\s*=\\s*['\"]([^'\"]+)['\"]");
-	private static final byte[] UTF16BE_BOM = new byte[] { (byte) 0xfe, (byte) 0xff, 0x00, 0x3c };
-	private static final byte[] UTF16LE_BOM = new byte[] { (byte) 0xff, (byte) 0xfe, 0x3c, 0x00 };
-	private static final byte[] UTF8_BOM = new byte[] { (byte) 0xef, (byte) 0xbb, (byte) 0xbf, 0x3c };
-	private static final byte[] UTF16BE = new byte[] { 0x00, 0x3c, 0x00, 0x3f };
-	private static final byte[] UTF16LE = new byte[] { 0x3c, 0x00, 0x3f, 0x00 };
-	private static final byte[] ASCII = new byte[] { 0x3c, 0x3f, 0x78, 0x6d };
-
 	private static final Logger LOG = LoggerFactory.getLogger(EclipsePmdProjectConfigurator.class);
 
 	public EclipsePmdProjectConfigurator() {
@@ -114,8 +101,11 @@ public class EclipsePmdProjectConfigurator extends AbstractMavenPluginProjectCon
 		final MojoExecution execution = findMojoExecution(mavenPluginWrapper);
 		final MojoExecution pmdGoalExecution = findForkedExecution(execution, "org.apache.maven.plugins",
 				"maven-pmd-plugin", "pmd");
-		final MavenPluginConfigurationTranslator pluginCfgTranslator = MavenPluginConfigurationTranslator.newInstance(
-				maven, mavenProjectFacade.getMavenProject(monitor), execution, pmdGoalExecution, project, monitor);
+		final MavenPluginConfigurationTranslator pluginCfgTranslator;
+		try (ConfigurationScope scope = ConfigurationScope.phase("translator construction")) {
+			pluginCfgTranslator = MavenPluginConfigurationTranslator.newInstance(maven,
+					mavenProjectFacade.getMavenProject(monitor), execution, pmdGoalExecution, project, monitor);
+		}
 		this.createOrUpdateEclipsePmdConfiguration(mavenPluginWrapper, project, pluginCfgTranslator, monitor,
 				mavenProject);
 
@@ -162,9 +152,9 @@ public class EclipsePmdProjectConfigurator extends AbstractMavenPluginProjectCon
 				PMD_RULESET_FILE, excludePatterns, includePatterns, allRules);
 
 		// persist the ruleset to a file under the project.
-		final File rulesetFile = writeRuleSet(project.getFile(PMD_RULESET_FILE), ruleset, monitor);
-
-		try {
+		try (ConfigurationScope scope = ConfigurationScope.settingsWrite(pluginCfgTranslator.getExecutionId(),
+				PMD_RULESET_FILE)) {
+			final File rulesetFile = writeRuleSet(project.getFile(PMD_RULESET_FILE), ruleset, monitor);
 			final IProjectPropertiesManager mgr = PMDPlugin.getDefault().getPropertiesManager();
 			final IProjectProperties projectProperties = mgr.loadProjectProperties(project);
 			projectProperties.setPmdEnabled(true);
@@ -214,9 +204,11 @@ public class EclipsePmdProjectConfigurator extends AbstractMavenPluginProjectCon
 						"Failed to resolve RuleSet from location [%s],SKIPPING Eclipse PMD configuration", loc)));
 			}
 
-			try (InputStream in = resolvedLocation.openStream()) {
-				RuleSet ruleSetAtLocations = ruleSetLoader.loadFromString(loc, loadXmlStreamIntoString(in));
+			try (ConfigurationScope scope = ConfigurationScope.rulesetParse(pluginCfgTranslator.getExecutionId(), loc);
+					InputStream in = resolvedLocation.openStream()) {
+				RuleSet ruleSetAtLocations = ruleSetLoader.loadFromString(loc, PmdUtil.loadXmlStreamIntoString(in));
 				allRules.addAll(ruleSetAtLocations.getRules());
+				scope.setRules(ruleSetAtLocations.getRules().size());
 			} catch (final RuleSetLoadException e) {
 				LOG.error("Couldn't load ruleset {}", loc, e);
 			} catch (final IOException e) {
@@ -227,43 +219,6 @@ public class EclipsePmdProjectConfigurator extends AbstractMavenPluginProjectCon
 		return allRules;
 	}
 
-	private String loadXmlStreamIntoString(InputStream r) throws IOException {
-		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-		BufferedInputStream in = new BufferedInputStream(r);
-		in.transferTo(bytes);
-
-		// this is an xml stream, find the encoding in the first bytes. A well-formed xml file
-		// must begin with "<?xml version=" and we can guess the basic encoding (UTF-16 vs. UTF-8)
-		// see https://www.w3.org/TR/xml/#sec-guessing
-		byte[] byteArray = bytes.toByteArray();
-		Charset charset = Charset.defaultCharset();
-		if (Arrays.equals(byteArray, 0, 4, UTF16BE_BOM, 0, 4)) {
-			charset = StandardCharsets.UTF_16BE;
-		} else if (Arrays.equals(byteArray, 0, 4, UTF16LE_BOM, 0, 4)) {
-			charset = StandardCharsets.UTF_16LE;
-		} else if (Arrays.equals(byteArray, 0, 4, UTF8_BOM, 0, 4)) {
-			charset = StandardCharsets.UTF_8;
-		} else if (Arrays.equals(byteArray, 0, 4, UTF16BE, 0, 4)) {
-			charset = StandardCharsets.UTF_16BE;
-		} else if (Arrays.equals(byteArray, 0, 4, UTF16LE, 0, 4)) {
-			charset = StandardCharsets.UTF_16LE;
-		} else if (Arrays.equals(byteArray, 0, 4, ASCII, 0, 4)) {
-			charset = StandardCharsets.ISO_8859_1;
-		}
-		LOG.debug("Detected {} using the first 4 bytes", charset);
-
-		// <?xml version="1.0" encoding="UTF-8"?>
-		CharBuffer decoded = charset.decode(ByteBuffer.wrap(byteArray));
-		String prolog = decoded.subSequence(0, Math.min(100, decoded.length())).toString();
-		Matcher matcher = XML_ENCODING_PATTERN.matcher(prolog);
-		if (matcher.find()) {
-			LOG.debug("Found encoding {} in XML prolog", matcher.group(1));
-			charset = Charset.forName(matcher.group(1));
-			decoded = charset.decode(ByteBuffer.wrap(byteArray));
-		}
-		return decoded.toString();
-	}
-
 	/**
 	 * Serializes the ruleset for configuring eclipse PMD plugin.
 	 *
@@ -298,6 +253,7 @@ public class EclipsePmdProjectConfigurator extends AbstractMavenPluginProjectCon
 
 	private void buildAndAddPmdExcludeAndIncludePatterns(final MavenPluginConfigurationTranslator pluginCfgTranslator,
 			final Collection<Pattern> excludePatterns, final Collection<Pattern> includePatterns) {
+		final PatternCache patternCache = PatternCache.getInstance();
 		final List<String> excludeRoots = pluginCfgTranslator.getExcludeRoots();
 		final List<String> includeRoots = pluginCfgTranslator.getIncludeRoots();
 		final List<String> pluginIncludes = pluginCfgTranslator.getIncludes();
@@ -319,19 +275,19 @@ public class EclipsePmdProjectConfigurator extends AbstractMavenPluginProjectCon
 			for (final String ir : includeRoots) {
 				for (final String ep : pluginExcludes) {
 					final String fullPattern = ".*" + ir + ep;
-					excludePatterns.add(Pattern.compile(StringUtils.replace(fullPattern, ".*.*", ".*")));
+					excludePatterns.add(patternCache.compile(StringUtils.replace(fullPattern, ".*.*", ".*")));
 				}
 			}
 		}
 		// 1.) Do the excludeRoots first
 		for (final String er : excludeRootsSet) {
-			excludePatterns.add(Pattern.compile(".*" + er));
+			excludePatterns.add(patternCache.compile(".*" + er));
 		}
 		// 3.) Now all includes
 		for (final String ir : includeRoots) {
 			for (final String ip : pluginIncludes) {
 				final String fullPattern = ".*" + ir + ip;
-				includePatterns.add(Pattern.compile(StringUtils.replace(fullPattern, ".*.*", ".*")));
+				includePatterns.add(patternCache.compile(StringUtils.replace(fullPattern, ".*.*", ".*")));
 			}
 		}
 	}
@@ -350,7 +306,7 @@ public class EclipsePmdProjectConfigurator extends AbstractMavenPluginProjectCon
 	protected void removeNature(IProject project, IProgressMonitor monitor) throws CoreException {
 		super.removeNature(project, monitor);
 
-		// clean all PMD markers
-		MarkerUtil.deleteAllMarkersIn(project);
+		// clean all PMD markers, like MarkerUtil.deleteAllMarkersIn but in the background
+		deleteMarkers(project, PMDRuntimeConstants.ALL_MARKER_TYPES);
 	}
 }
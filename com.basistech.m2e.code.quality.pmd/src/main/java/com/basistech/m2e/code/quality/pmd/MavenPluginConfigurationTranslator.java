@@ -21,7 +21,6 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -37,14 +36,23 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.m2e.core.embedder.IMaven;
 
 import com.basistech.m2e.code.quality.shared.AbstractMavenPluginConfigurationTranslator;
+import com.basistech.m2e.code.quality.shared.PatternCache;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 /**
  * Utility class to get maven-pmd-plugin configuration.
  */
 public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfigurationTranslator {
 
-	private static final Map<String, String> PATTERNS_CACHE = new HashMap<>();
+	private static final String PATTERN_DIALECT = "pmd";
+	private static final Map<String, Class<?>> PARAMETERS = ImmutableMap.<String, Class<?>>builder()
+			.put("rulesets", String[].class)
+			.put("includes", String[].class)
+			.put("excludes", String[].class)
+			.put("includeTests", Boolean.class)
+			.put("excludeRoots", File[].class)
+			.build();
 
 	private final URI basedirUri;
 	private final List<String> excludeSourceRoots = new ArrayList<>();
@@ -64,8 +72,13 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 		checkConfiguration.setConfiguration(checkExecution.getConfiguration());
 	}
 
+	@Override
+	protected Map<String, Class<?>> getDeclaredParameters() {
+		return PARAMETERS;
+	}
+
 	public List<String> getRulesets() throws CoreException {
-		final String[] rulesets = getParameterValue("rulesets", String[].class);
+		final String[] rulesets = getParameterSnapshot().get("rulesets", String[].class);
 		if (rulesets == null) {
 			// no special rulesets configured - use the same defaults as the
 			// maven-pmd-plugin does
@@ -75,7 +88,7 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 	}
 
 	private List<String> getExcludePatterns() throws CoreException {
-		final String[] excludes = getParameterValue("excludes", String[].class);
+		final String[] excludes = getParameterSnapshot().get("excludes", String[].class);
 		final List<String> transformedPatterns = new LinkedList<>();
 		if (excludes != null && excludes.length > 0) {
 			for (String p : excludes) {
@@ -102,7 +115,7 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 	 * @throws CoreException
 	 */
 	private List<String> getIncludePatterns() throws CoreException {
-		final String[] includes = getParameterValue("includes", String[].class);
+		final String[] includes = getParameterSnapshot().get("includes", String[].class);
 		final List<String> transformedPatterns = new LinkedList<>();
 		if (includes != null && includes.length > 0) {
 			for (String p : includes) {
@@ -128,7 +141,7 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 	 * @throws CoreException if an error occurs
 	 */
 	public boolean getIncludeTests() throws CoreException {
-		final Boolean tests = getParameterValue("includeTests", Boolean.class);
+		final Boolean tests = getParameterSnapshot().get("includeTests", Boolean.class);
 		return tests != null && tests.booleanValue();
 	}
 
@@ -149,47 +162,8 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 	}
 
 	private String getTransformedPattern(final String antStylePattern) {
-		String newPattern;
-		if (PATTERNS_CACHE.containsKey(antStylePattern)) {
-			newPattern = PATTERNS_CACHE.get(antStylePattern);
-		} else {
-			newPattern = this.convertAntStylePatternToPmdPattern(antStylePattern);
-			PATTERNS_CACHE.put(antStylePattern, newPattern);
-		}
-		return newPattern;
-	}
-
-	/**
-	 * Helper to convert the maven-pmd-plugin includes/excludes pattern to PMD
-	 * pattern (not eclipse PMD).
-	 * 
-	 * @param pattern the maven-pmd-plugin pattern.
-	 * @return the converted PMD pattern.
-	 */
-	private String convertAntStylePatternToPmdPattern(final String pattern) {
-		if (pattern == null) {
-			throw new NullPointerException("pattern cannot be null");
-		}
-		if (pattern.length() == 0) {
-			throw new IllegalArgumentException("pattern cannot empty");
-		}
-		final StringBuilder sb = new StringBuilder();
-		for (int i = 0; i < pattern.length(); ++i) {
-			final int nextCharIndex = i + 1;
-			// mark the end so we can append the last char of string
-			char nextChar = '\0';
-			if (nextCharIndex != pattern.length()) {
-				nextChar = pattern.charAt(nextCharIndex);
-			}
-			final char curChar = pattern.charAt(i);
-			if (curChar == '*' && nextChar == '*') {
-				sb.append(".*");
-				++i;
-			} else {
-				sb.append(curChar);
-			}
-		}
-		return sb.toString();
+		return PatternCache.getInstance().translate(PATTERN_DIALECT, antStylePattern,
+				PmdUtil::convertAntStylePatternToPmdPattern);
 	}
 
 	private void buildExcludeAndIncludeSourceRoots() throws CoreException {
@@ -213,7 +187,7 @@ public class MavenPluginConfigurationTranslator extends AbstractMavenPluginConfi
 
 		// now we need to filter out any excludeRoots from plugin configurations
 		List<File> excludeRootsFromConfig;
-		final File[] excludeRootsArray = getParameterValue("excludeRoots", File[].class);
+		final File[] excludeRootsArray = getParameterSnapshot().get("excludeRoots", File[].class);
 		if (excludeRootsArray == null) {
 			excludeRootsFromConfig = Collections.emptyList();
 		} else {
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.pmd;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Helpers of the PMD configurator that do not need a running workbench.
+ */
+public final class PmdUtil {
+
+	private static final Pattern XML_ENCODING_PATTERN = Pattern.compile("<\\?xml\\s+version\\s*=\\s*['\"][^'\"]+['\"]\\s+encoding\\s*=\\s*['\"]([^'\"]+)['\"]");
+	private static final byte[] UTF16BE_BOM = new byte[] { (byte) 0xfe, (byte) 0xff, 0x00, 0x3c };
+	private static final byte[] UTF16LE_BOM = new byte[] { (byte) 0xff, (byte) 0xfe, 0x3c, 0x00 };
+	private static final byte[] UTF8_BOM = new byte[] { (byte) 0xef, (byte) 0xbb, (byte) 0xbf, 0x3c };
+	private static final byte[] UTF16BE = new byte[] { 0x00, 0x3c, 0x00, 0x3f };
+	private static final byte[] UTF16LE = new byte[] { 0x3c, 0x00, 0x3f, 0x00 };
+	private static final byte[] ASCII = new byte[] { 0x3c, 0x3f, 0x78, 0x6d };
+
+	private static final Logger LOG = LoggerFactory.getLogger(PmdUtil.class);
+
+	private PmdUtil() {
+	}
+
+	/**
+	 * Helper to convert the maven-pmd-plugin includes/excludes pattern to PMD
+	 * pattern (not eclipse PMD).
+	 *
+	 * @param pattern the maven-pmd-plugin pattern.
+	 * @return the converted PMD pattern.
+	 */
+	public static String convertAntStylePatternToPmdPattern(final String pattern) {
+		if (pattern == null) {
+			throw new NullPointerException("pattern cannot be null");
+		}
+		if (pattern.length() == 0) {
+			throw new IllegalArgumentException("pattern cannot empty");
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < pattern.length(); ++i) {
+			final int nextCharIndex = i + 1;
+			// mark the end so we can append the last char of string
+			char nextChar = '\0';
+			if (nextCharIndex != pattern.length()) {
+				nextChar = pattern.charAt(nextCharIndex);
+			}
+			final char curChar = pattern.charAt(i);
+			if (curChar == '*' && nextChar == '*') {
+				sb.append(".*");
+				++i;
+			} else {
+				sb.append(curChar);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Read a ruleset, detecting its encoding from the first bytes and the XML
+	 * prolog.
+	 *
+	 * @param r the ruleset, not closed.
+	 * @return the decoded ruleset.
+	 * @throws IOException if reading fails.
+	 */
+	public static String loadXmlStreamIntoString(InputStream r) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BufferedInputStream in = new BufferedInputStream(r);
+		in.transferTo(bytes);
+
+		// this is an xml stream, find the encoding in the first bytes. A well-formed xml file
+		// must begin with "<?xml version=" and we can guess the basic encoding (UTF-16 vs. UTF-8)
+		// see https://www.w3.org/TR/xml/#sec-guessing
+		byte[] byteArray = bytes.toByteArray();
+		Charset charset = Charset.defaultCharset();
+		if (Arrays.equals(byteArray, 0, 4, UTF16BE_BOM, 0, 4)) {
+			charset = StandardCharsets.UTF_16BE;
+		} else if (Arrays.equals(byteArray, 0, 4, UTF16LE_BOM, 0, 4)) {
+			charset = StandardCharsets.UTF_16LE;
+		} else if (Arrays.equals(byteArray, 0, 4, UTF8_BOM, 0, 4)) {
+			charset = StandardCharsets.UTF_8;
+		} else if (Arrays.equals(byteArray, 0, 4, UTF16BE, 0, 4)) {
+			charset = StandardCharsets.UTF_16BE;
+		} else if (Arrays.equals(byteArray, 0, 4, UTF16LE, 0, 4)) {
+			charset = StandardCharsets.UTF_16LE;
+		} else if (Arrays.equals(byteArray, 0, 4, ASCII, 0, 4)) {
+			charset = StandardCharsets.ISO_8859_1;
+		}
+		LOG.debug("Detected {} using the first 4 bytes", charset);
+
+		// <?xml version="1.0" encoding="UTF-8"?>
+		CharBuffer decoded = charset.decode(ByteBuffer.wrap(byteArray));
+		String prolog = decoded.subSequence(0, Math.min(100, decoded.length())).toString();
+		Matcher matcher = XML_ENCODING_PATTERN.matcher(prolog);
+		if (matcher.find()) {
+			LOG.debug("Found encoding {} in XML prolog", matcher.group(1));
+			charset = Charset.forName(matcher.group(1));
+			decoded = charset.decode(ByteBuffer.wrap(byteArray));
+		}
+		return decoded.toString();
+	}
+}
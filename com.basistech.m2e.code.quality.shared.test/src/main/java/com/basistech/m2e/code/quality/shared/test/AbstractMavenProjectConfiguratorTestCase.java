@@ -20,6 +20,8 @@ import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.m2e.core.MavenPlugin;
 import org.eclipse.m2e.core.internal.IMavenConstants;
 import org.eclipse.m2e.core.project.IMavenProjectFacade;
@@ -27,6 +29,10 @@ import org.eclipse.m2e.core.project.IProjectConfigurationManager;
 import org.eclipse.m2e.core.project.ResolverConfiguration;
 import org.eclipse.m2e.tests.common.AbstractMavenProjectTestCase;
 
+import com.basistech.m2e.code.quality.shared.CodeQualityPreferences;
+import com.basistech.m2e.code.quality.shared.ConfigurationScheduler;
+import com.basistech.m2e.code.quality.shared.MarkerCleanupJob;
+
 @SuppressWarnings("restriction")
 public abstract class AbstractMavenProjectConfiguratorTestCase extends AbstractMavenProjectTestCase {
 
@@ -39,11 +45,38 @@ public abstract class AbstractMavenProjectConfiguratorTestCase extends AbstractM
 		return false;
 	}
 
+	/**
+	 * Like {@link #waitForJobsToComplete()}, but also waits for the configuration
+	 * and marker cleanup jobs of the shared bundle, and for whatever they
+	 * trigger.
+	 */
+	protected void waitForConfigurationJobsToComplete() throws InterruptedException, CoreException {
+		waitForJobsToComplete();
+		ConfigurationScheduler.join(null);
+		MarkerCleanupJob.join(null);
+		waitForJobsToComplete();
+	}
+
+	/**
+	 * Set a preference of the shared bundle, see {@link CodeQualityPreferences}.
+	 *
+	 * @param key   the preference.
+	 * @param value the value, {@code null} to reset it to the default.
+	 */
+	protected static void setCodeQualityPreference(final String key, final String value) {
+		final IEclipsePreferences preferences = InstanceScope.INSTANCE.getNode(CodeQualityPreferences.PLUGIN_ID);
+		if (value == null) {
+			preferences.remove(key);
+		} else {
+			preferences.put(key, value);
+		}
+	}
+
 	@Override
 	protected IProject importProject(String pomLocation) throws IOException, CoreException {
 		try {
 			IProject result = super.importProject(pomLocation);
-			waitForJobsToComplete();
+			waitForConfigurationJobsToComplete();
 			return result;
 		} catch (InterruptedException ex) {
 			throw new CoreException(
@@ -55,7 +88,7 @@ public abstract class AbstractMavenProjectConfiguratorTestCase extends AbstractM
 		ResolverConfiguration resolver = new ResolverConfiguration();
 		resolver.setSelectedProfiles(profiles);
 		final IProject p = importProject(pomFile, resolver);
-		waitForJobsToComplete();
+		waitForConfigurationJobsToComplete();
 		return p;
 	}
 
@@ -67,7 +100,7 @@ public abstract class AbstractMavenProjectConfiguratorTestCase extends AbstractM
 		IProjectConfigurationManager projectManager = MavenPlugin.getProjectConfigurationManager();
 		projectManager.setResolverConfiguration(project, resolverConfig);
 		refreshMavenProject(project);
-		waitForJobsToComplete();
+		waitForConfigurationJobsToComplete();
 	}
 
 	protected void importProjectRunBuildAndFindMarkers(final String path, final String markerId,
@@ -100,7 +133,7 @@ public abstract class AbstractMavenProjectConfiguratorTestCase extends AbstractM
 
 	protected void runBuild(final IProject project, final ProjectCallable extras) throws Exception {
 		project.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
-		waitForJobsToComplete();
+		waitForConfigurationJobsToComplete();
 
 		if (extras != null) {
 			extras.call(project);
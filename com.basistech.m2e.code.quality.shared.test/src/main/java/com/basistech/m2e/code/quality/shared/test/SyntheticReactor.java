@@ -0,0 +1,350 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Generates a maven reactor of any size, to see how the configurators scale.
+ * <p>
+ * All modules inherit from the root pom, which configures checkstyle with
+ * inline rules, PMD with several rulesets and spotbugs with include and
+ * exclude filter files, the latter two from a {@code config} directory of the
+ * reactor. The modules are spread over {@code depth} levels of aggregator poms
+ * below the root, each leaf module has a few Java classes.
+ * </p>
+ */
+public class SyntheticReactor {
+
+	private static final String GROUP_ID = "com.basistech.synthetic";
+	private static final String VERSION = "0.0.1-SNAPSHOT";
+	/** the rulesets built into PMD used first */
+	private static final String[] PMD_CATEGORIES = { "bestpractices", "errorprone" };
+
+	private final int modules;
+	private int depth = 1;
+	private int classesPerModule = 3;
+	private int pmdRulesets = 3;
+
+	/**
+	 * @param modules the number of leaf modules, aggregators not included.
+	 */
+	public SyntheticReactor(final int modules) {
+		Preconditions.checkArgument(modules > 0, "modules must be positive");
+		this.modules = modules;
+	}
+
+	/**
+	 * @param depth the number of aggregator levels, {@code 1} to have all modules
+	 *              directly below the root.
+	 */
+	public SyntheticReactor depth(final int depth) {
+		Preconditions.checkArgument(depth > 0, "depth must be positive");
+		this.depth = depth;
+		return this;
+	}
+
+	public SyntheticReactor classesPerModule(final int classesPerModule) {
+		Preconditions.checkArgument(classesPerModule >= 0, "classesPerModule must not be negative");
+		this.classesPerModule = classesPerModule;
+		return this;
+	}
+
+	/**
+	 * @param pmdRulesets the number of PMD rulesets, the first ones are built into
+	 *                    PMD, the others are files of the reactor.
+	 */
+	public SyntheticReactor pmdRulesets(final int pmdRulesets) {
+		Preconditions.checkArgument(pmdRulesets > 0, "pmdRulesets must be positive");
+		this.pmdRulesets = pmdRulesets;
+		return this;
+	}
+
+	/**
+	 * Write the reactor.
+	 *
+	 * @param directory the root of the reactor, created if necessary.
+	 * @return the poms of the reactor relative to the directory, parents first.
+	 * @throws IOException if writing fails.
+	 */
+	public List<String> generate(final File directory) throws IOException {
+		final List<String> poms = new ArrayList<>();
+		writeConfig(new File(directory, "config"));
+		final int fanOut = (int) Math.ceil(Math.pow(modules, 1.0 / depth));
+		final List<String> children = generateChildren(directory, "", 1, modules, new int[1], fanOut, poms);
+		write(new File(directory, "pom.xml"), rootPom(children));
+		poms.add(0, "pom.xml");
+		return poms;
+	}
+
+	/**
+	 * @return the names of the child directories.
+	 */
+	private List<String> generateChildren(final File directory, final String path, final int level,
+			final int leaves, final int[] leafCounter, final int fanOut, final List<String> poms) throws IOException {
+		final List<String> children = new ArrayList<>();
+		if (level == depth) {
+			for (int i = 0; i < leaves; i++) {
+				final String name = String.format("module-%04d", ++leafCounter[0]);
+				generateModule(new File(directory, name), name, level, poms, path + name + "/pom.xml");
+				children.add(name);
+			}
+			return children;
+		}
+		final int groups = Math.min(fanOut, leaves);
+		for (int i = 0; i < groups; i++) {
+			// spread the leaves as evenly as possible
+			final int groupLeaves = leaves / groups + (i < leaves % groups ? 1 : 0);
+			final String name = String.format("group-%d-%d", level, leafCounter[0] + 1);
+			final File groupDirectory = new File(directory, name);
+			final int index = poms.size();
+			final List<String> grandChildren = generateChildren(groupDirectory, path + name + "/", level + 1,
+					groupLeaves, leafCounter, fanOut, poms);
+			write(new File(groupDirectory, "pom.xml"), aggregatorPom(name, level, grandChildren));
+			poms.add(index, path + name + "/pom.xml");
+			children.add(name);
+		}
+		return children;
+	}
+
+	private void generateModule(final File directory, final String name, final int level, final List<String> poms,
+			final String pom) throws IOException {
+		write(new File(directory, "pom.xml"), modulePom(name, level));
+		final String packageName = "synthetic." + name.replace('-', '_');
+		final File sources = new File(directory, "src/main/java/" + packageName.replace('.', '/'));
+		for (int i = 0; i < classesPerModule; i++) {
+			write(new File(sources, "Class" + i + ".java"), javaClass(packageName, "Class" + i));
+		}
+		poms.add(pom);
+	}
+
+	private String rootPom(final List<String> children) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(header("synthetic-reactor", "pom"));
+		sb.append("\t<properties>\n");
+		sb.append("\t\t<project.build.sourceEncoding>UTF-8</project.build.sourceEncoding>\n");
+		sb.append("\t\t<reactor.root>${project.basedir}</reactor.root>\n");
+		sb.append("\t</properties>\n\n");
+		sb.append("\t<build>\n\t\t<plugins>\n");
+		sb.append(checkstylePlugin());
+		sb.append(pmdPlugin());
+		sb.append(spotbugsPlugin());
+		sb.append("\t\t</plugins>\n\t</build>\n\n");
+		sb.append(modulesSection(children));
+		sb.append("</project>\n");
+		return sb.toString();
+	}
+
+	private String aggregatorPom(final String name, final int level, final List<String> children) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(header(name, "pom"));
+		sb.append(parent(level));
+		sb.append(modulesSection(children));
+		sb.append("</project>\n");
+		return sb.toString();
+	}
+
+	private String modulePom(final String name, final int level) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(header(name, "jar"));
+		sb.append(parent(level));
+		sb.append("</project>\n");
+		return sb.toString();
+	}
+
+	private static String header(final String artifactId, final String packaging) {
+		return "<?xml version=\"1.0\"?>\n"
+				+ "<project xmlns=\"http://maven.apache.org/POM/4.0.0\" "
+				+ "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n"
+				+ "\txsi:schemaLocation=\"http://maven.apache.org/POM/4.0.0 "
+				+ "http://maven.apache.org/xsd/maven-4.0.0.xsd\">\n"
+				+ "\t<modelVersion>4.0.0</modelVersion>\n\n"
+				+ "\t<groupId>" + GROUP_ID + "</groupId>\n"
+				+ "\t<artifactId>" + artifactId + "</artifactId>\n"
+				+ "\t<version>" + VERSION + "</version>\n"
+				+ "\t<packaging>" + packaging + "</packaging>\n\n";
+	}
+
+	/**
+	 * Every pom inherits from the root, whose directory is {@code level}
+	 * directories up.
+	 */
+	private static String parent(final int level) {
+		final StringBuilder up = new StringBuilder();
+		for (int i = 0; i < level; i++) {
+			up.append("../");
+		}
+		return "\t<parent>\n"
+				+ "\t\t<groupId>" + GROUP_ID + "</groupId>\n"
+				+ "\t\t<artifactId>synthetic-reactor</artifactId>\n"
+				+ "\t\t<version>" + VERSION + "</version>\n"
+				+ "\t\t<relativePath>" + up + "pom.xml</relativePath>\n"
+				+ "\t</parent>\n\n"
+				+ "\t<properties>\n"
+				+ "\t\t<reactor.root>${project.basedir}/" + up.substring(0, up.length() - 1) + "</reactor.root>\n"
+				+ "\t</properties>\n\n";
+	}
+
+	private static String modulesSection(final List<String> children) {
+		final StringBuilder sb = new StringBuilder("\t<modules>\n");
+		for (final String child : children) {
+			sb.append("\t\t<module>").append(child).append("</module>\n");
+		}
+		return sb.append("\t</modules>\n").toString();
+	}
+
+	private static String checkstylePlugin() {
+		return "\t\t\t<plugin>\n"
+				+ "\t\t\t\t<groupId>org.apache.maven.plugins</groupId>\n"
+				+ "\t\t\t\t<artifactId>maven-checkstyle-plugin</artifactId>\n"
+				+ "\t\t\t\t<version>3.2.0</version>\n"
+				+ "\t\t\t\t<configuration>\n"
+				+ "\t\t\t\t\t<checkstyleRules>\n"
+				+ "\t\t\t\t\t\t<module name=\"Checker\">\n"
+				+ "\t\t\t\t\t\t\t<property name=\"charset\" value=\"UTF-8\" />\n"
+				+ "\t\t\t\t\t\t\t<module name=\"FileTabCharacter\" />\n"
+				+ "\t\t\t\t\t\t\t<module name=\"TreeWalker\">\n"
+				+ "\t\t\t\t\t\t\t\t<module name=\"ConstantName\" />\n"
+				+ "\t\t\t\t\t\t\t\t<module name=\"EmptyCatchBlock\" />\n"
+				+ "\t\t\t\t\t\t\t\t<module name=\"EqualsHashCode\" />\n"
+				+ "\t\t\t\t\t\t\t\t<module name=\"MissingOverride\" />\n"
+				+ "\t\t\t\t\t\t\t\t<module name=\"NeedBraces\" />\n"
+				+ "\t\t\t\t\t\t\t\t<module name=\"UnusedImports\" />\n"
+				+ "\t\t\t\t\t\t\t</module>\n"
+				+ "\t\t\t\t\t\t</module>\n"
+				+ "\t\t\t\t\t</checkstyleRules>\n"
+				+ "\t\t\t\t</configuration>\n"
+				+ "\t\t\t\t<executions>\n"
+				+ "\t\t\t\t\t<execution>\n"
+				+ "\t\t\t\t\t\t<goals>\n"
+				+ "\t\t\t\t\t\t\t<goal>check</goal>\n"
+				+ "\t\t\t\t\t\t</goals>\n"
+				+ "\t\t\t\t\t</execution>\n"
+				+ "\t\t\t\t</executions>\n"
+				+ "\t\t\t</plugin>\n";
+	}
+
+	private String pmdPlugin() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("\t\t\t<plugin>\n");
+		sb.append("\t\t\t\t<groupId>org.apache.maven.plugins</groupId>\n");
+		sb.append("\t\t\t\t<artifactId>maven-pmd-plugin</artifactId>\n");
+		sb.append("\t\t\t\t<version>3.20.0</version>\n");
+		sb.append("\t\t\t\t<configuration>\n");
+		sb.append("\t\t\t\t\t<rulesets>\n");
+		for (int i = 0; i < pmdRulesets; i++) {
+			sb.append("\t\t\t\t\t\t<ruleset>").append(pmdRuleset(i)).append("</ruleset>\n");
+		}
+		sb.append("\t\t\t\t\t</rulesets>\n");
+		sb.append("\t\t\t\t</configuration>\n");
+		sb.append("\t\t\t\t<executions>\n");
+		sb.append("\t\t\t\t\t<execution>\n");
+		sb.append("\t\t\t\t\t\t<goals>\n");
+		sb.append("\t\t\t\t\t\t\t<goal>check</goal>\n");
+		sb.append("\t\t\t\t\t\t</goals>\n");
+		sb.append("\t\t\t\t\t</execution>\n");
+		sb.append("\t\t\t\t</executions>\n");
+		sb.append("\t\t\t</plugin>\n");
+		return sb.toString();
+	}
+
+	private static String pmdRuleset(final int index) {
+		if (index < PMD_CATEGORIES.length) {
+			return "/category/java/" + PMD_CATEGORIES[index] + ".xml";
+		}
+		return "${reactor.root}/config/pmd-ruleset-" + index + ".xml";
+	}
+
+	private static String spotbugsPlugin() {
+		return "\t\t\t<plugin>\n"
+				+ "\t\t\t\t<groupId>com.github.spotbugs</groupId>\n"
+				+ "\t\t\t\t<artifactId>spotbugs-maven-plugin</artifactId>\n"
+				+ "\t\t\t\t<version>3.1.6</version>\n"
+				+ "\t\t\t\t<configuration>\n"
+				+ "\t\t\t\t\t<includeFilterFile>${reactor.root}/config/spotbugs-include.xml</includeFilterFile>\n"
+				+ "\t\t\t\t\t<excludeFilterFile>${reactor.root}/config/spotbugs-exclude.xml</excludeFilterFile>\n"
+				+ "\t\t\t\t</configuration>\n"
+				+ "\t\t\t\t<executions>\n"
+				+ "\t\t\t\t\t<execution>\n"
+				+ "\t\t\t\t\t\t<goals>\n"
+				+ "\t\t\t\t\t\t\t<goal>check</goal>\n"
+				+ "\t\t\t\t\t\t</goals>\n"
+				+ "\t\t\t\t\t</execution>\n"
+				+ "\t\t\t\t</executions>\n"
+				+ "\t\t\t</plugin>\n";
+	}
+
+	private void writeConfig(final File directory) throws IOException {
+		for (int i = PMD_CATEGORIES.length; i < pmdRulesets; i++) {
+			write(new File(directory, "pmd-ruleset-" + i + ".xml"),
+					"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+							+ "<ruleset name=\"synthetic-" + i + "\"\n"
+							+ "\txmlns=\"http://pmd.sourceforge.net/ruleset/2.0.0\"\n"
+							+ "\txmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n"
+							+ "\txsi:schemaLocation=\"http://pmd.sourceforge.net/ruleset/2.0.0 "
+							+ "https://pmd.sourceforge.io/ruleset_2_0_0.xsd\">\n"
+							+ "\t<description>Synthetic ruleset " + i + "</description>\n"
+							+ "\t<rule ref=\"category/java/codestyle.xml/UnnecessaryImport\" />\n"
+							+ "\t<rule ref=\"category/java/design.xml/SimplifyBooleanReturns\" />\n"
+							+ "\t<rule ref=\"category/java/performance.xml/AddEmptyString\" />\n"
+							+ "</ruleset>\n");
+		}
+		write(new File(directory, "spotbugs-include.xml"),
+				"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+						+ "<FindBugsFilter>\n"
+						+ "\t<Match>\n"
+						+ "\t\t<Package name=\"~synthetic\\..*\" />\n"
+						+ "\t</Match>\n"
+						+ "</FindBugsFilter>\n");
+		write(new File(directory, "spotbugs-exclude.xml"),
+				"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+						+ "<FindBugsFilter>\n"
+						+ "\t<Match>\n"
+						+ "\t\t<Bug pattern=\"URF_UNREAD_FIELD\" />\n"
+						+ "\t</Match>\n"
+						+ "</FindBugsFilter>\n");
+	}
+
+	private static String javaClass(final String packageName, final String className) {
+		return "package " + packageName + ";\n\n"
+				+ "import java.util.ArrayList;\n"
+				+ "import java.util.List;\n\n"
+				+ "public class " + className + " {\n\n"
+				+ "\tprivate static final int limit = 10;\n\n"
+				+ "\tprivate String unread;\n\n"
+				+ "\tpublic List<String> values(final boolean all) {\n"
+				+ "\t\tfinal List<String> values = new ArrayList<>();\n"
+				+ "\t\tfor (int i = 0; i < limit; i++) {\n"
+				+ "\t\t\tif (all || i % 2 == 0)\n"
+				+ "\t\t\t\tvalues.add(\"\" + i);\n"
+				+ "\t\t}\n"
+				+ "\t\treturn values;\n"
+				+ "\t}\n"
+				+ "}\n";
+	}
+
+	private static void write(final File file, final String content) throws IOException {
+		Files.createDirectories(file.getParentFile().toPath());
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+}
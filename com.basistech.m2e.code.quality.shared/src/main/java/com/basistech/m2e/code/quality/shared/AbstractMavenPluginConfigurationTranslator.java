@@ -1,44 +1,34 @@
 package com.basistech.m2e.code.quality.shared;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.maven.model.ConfigurationContainer;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.model.PluginExecution;
-import org.apache.maven.plugin.BuildPluginManager;
 import org.apache.maven.plugin.MojoExecution;
-import org.apache.maven.plugin.PluginManagerException;
-import org.apache.maven.plugin.PluginResolutionException;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.classworlds.realm.ClassRealm;
-import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.Status;
 import org.eclipse.m2e.core.MavenPlugin;
-import org.eclipse.m2e.core.embedder.ArtifactKey;
 import org.eclipse.m2e.core.embedder.IMaven;
-import org.eclipse.m2e.core.internal.embedder.MavenImpl;
 import org.eclipse.m2e.core.project.IMavenProjectFacade;
 import org.eclipse.m2e.core.project.IMavenProjectRegistry;
-import org.osgi.framework.FrameworkUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +38,12 @@ import com.google.common.base.Preconditions;
 public class AbstractMavenPluginConfigurationTranslator {
 	private static final Logger LOG = LoggerFactory.getLogger(AbstractMavenPluginConfigurationTranslator.class);
 
+	/** marks a memoized parameter that evaluated to {@code null} */
+	private static final Object NULL_VALUE = new Object();
+
+	private static final AtomicLong TOTAL_PARAMETER_CACHE_HITS = new AtomicLong();
+	private static final AtomicLong TOTAL_SAVED_EVALUATION_NANOS = new AtomicLong();
+
 	private final IMaven maven;
 	private final MavenProject mavenProject;
 	private final MojoExecution mojoExecution;
@@ -55,6 +51,13 @@ public class AbstractMavenPluginConfigurationTranslator {
 	private final ConfigurationContainer execution;
 	private final IProject project;
 	private final ResourceResolver resourceResolver;
+	/** evaluated parameters, keyed by parameter name and type */
+	private final Map<String, Object> parameterValues = new HashMap<>();
+	/** how long it took to evaluate each parameter, by the same key */
+	private final Map<String, Long> parameterEvaluationNanos = new HashMap<>();
+	private final AtomicLong parameterCacheHits = new AtomicLong();
+	private final AtomicLong savedEvaluationNanos = new AtomicLong();
+	private ParameterSnapshot parameterSnapshot;
 
 	public AbstractMavenPluginConfigurationTranslator(final IMaven maven, final MavenProject mavenProject,
 			final MojoExecution mojoExecution, final IProject project, final IProgressMonitor monitor)
@@ -73,8 +76,115 @@ public class AbstractMavenPluginConfigurationTranslator {
 		return mavenProject;
 	}
 
+	/**
+	 * Evaluate a parameter of the mojo execution. Each distinct parameter and type
+	 * is only evaluated once per translator, later calls return the same (shared)
+	 * value, which must not be modified.
+	 *
+	 * @param parameter the parameter name.
+	 * @param asType    the type to convert the value to.
+	 * @return the value, or {@code null} if the parameter has no value.
+	 * @throws CoreException if the evaluation fails.
+	 */
 	public <T> T getParameterValue(final String parameter, final Class<T> asType) throws CoreException {
-		return getParameterValue(mojoExecution, execution, parameter, asType);
+		final String key = parameter + ':' + asType.getName();
+		synchronized (parameterValues) {
+			final Object value = parameterValues.get(key);
+			if (value != null) {
+				final long saved = parameterEvaluationNanos.get(key);
+				parameterCacheHits.incrementAndGet();
+				savedEvaluationNanos.addAndGet(saved);
+				TOTAL_PARAMETER_CACHE_HITS.incrementAndGet();
+				TOTAL_SAVED_EVALUATION_NANOS.addAndGet(saved);
+				return value == NULL_VALUE ? null : asType.cast(value);
+			}
+		}
+		final long start = System.nanoTime();
+		final T value = getParameterValue(mojoExecution, execution, parameter, asType);
+		final long elapsed = System.nanoTime() - start;
+		synchronized (parameterValues) {
+			parameterValues.put(key, value == null ? NULL_VALUE : value);
+			parameterEvaluationNanos.put(key, elapsed);
+		}
+		return value;
+	}
+
+	/**
+	 * The parameters this translator works with, with their types, as read by
+	 * {@link #getParameterSnapshot()}.
+	 *
+	 * @return the declared parameters, by default none.
+	 */
+	protected Map<String, Class<?>> getDeclaredParameters() {
+		return Collections.emptyMap();
+	}
+
+	/**
+	 * Evaluate all {@link #getDeclaredParameters() declared parameters} at once.
+	 * <p>
+	 * The configuration of the mojo execution already contains every parameter
+	 * with a value or a default value, so it is walked once and only the declared
+	 * parameters found there are handed to the expression evaluator; all others
+	 * have no value. The snapshot is created on the first call.
+	 * </p>
+	 *
+	 * @return the immutable snapshot of the declared parameters.
+	 * @throws CoreException if the evaluation of a parameter fails.
+	 */
+	public ParameterSnapshot getParameterSnapshot() throws CoreException {
+		synchronized (parameterValues) {
+			if (parameterSnapshot != null) {
+				return parameterSnapshot;
+			}
+		}
+		final Map<String, Class<?>> declaredParameters = getDeclaredParameters();
+		final Map<String, Object> values = new HashMap<>();
+		final Xpp3Dom configuration = mojoExecution.getConfiguration();
+		if (configuration != null) {
+			for (final Xpp3Dom child : configuration.getChildren()) {
+				final Class<?> type = declaredParameters.get(child.getName());
+				if (type != null && !values.containsKey(child.getName())) {
+					values.put(child.getName(), getParameterValue(child.getName(), type));
+				}
+			}
+		}
+		final ParameterSnapshot snapshot = new ParameterSnapshot(declaredParameters, values);
+		synchronized (parameterValues) {
+			parameterSnapshot = snapshot;
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @return how many parameter evaluations have been answered from the memo of
+	 *         this translator.
+	 */
+	public long getParameterCacheHitCount() {
+		return parameterCacheHits.get();
+	}
+
+	/**
+	 * @return the evaluation time in nanoseconds saved by the memo of this
+	 *         translator, estimated from the time of the first evaluation.
+	 */
+	public long getSavedEvaluationNanos() {
+		return savedEvaluationNanos.get();
+	}
+
+	/**
+	 * @return how many parameter evaluations have been answered from the memo of
+	 *         any translator.
+	 */
+	public static long getTotalParameterCacheHitCount() {
+		return TOTAL_PARAMETER_CACHE_HITS.get();
+	}
+
+	/**
+	 * @return the evaluation time in nanoseconds saved by the memo of any
+	 *         translator.
+	 */
+	public static long getTotalSavedEvaluationNanos() {
+		return TOTAL_SAVED_EVALUATION_NANOS.get();
 	}
 
 	protected <T> T getParameterValue(final MojoExecution execution,
@@ -138,8 +248,8 @@ public class AbstractMavenPluginConfigurationTranslator {
 		}
 		// copy the file to new location
 		final File newLocationFile = new File(this.project.getLocationURI().getPath(), newLocation);
-		try (InputStream inputStream = urlResc.openStream()) {
-			copyIfChanged(inputStream, newLocationFile.toPath());
+		try {
+			copyIfChanged(urlResc, newLocationFile.toPath());
 			return true;
 		} catch (final IOException ex) {
 			throw new ConfigurationException(String.format("could not copy resource [%s] to [%s], reason [%s]", resc,
@@ -165,79 +275,77 @@ public class AbstractMavenPluginConfigurationTranslator {
 
 	private ResourceResolver getResourceResolver(final MojoExecution mojoExecution, final MavenProject mavenProject,
 			final IPath projectLocation) throws CoreException {
-		// call for side effect of ensuring that the realm is set in the
-		// descriptor.
 		final List<IPath> additionalProjectLocations = new ArrayList<>();
-		final IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
-		final IMavenProjectRegistry mavenProjectRegistry = MavenPlugin.getMavenProjectRegistry();
-		final List<IMavenProjectFacade> projects = mavenProjectRegistry.getProjects();
+		final IMavenProjectRegistry projectRegistry = MavenPlugin.getMavenProjectRegistry();
 		final List<Dependency> dependencies = mojoExecution.getPlugin().getDependencies();
 		for (final Dependency dependency : dependencies) {
-			for (final IMavenProjectFacade projectFacade : projects) {
-				final IProject project = projectFacade.getProject();
-				if (!project.isAccessible()) {
-					LOG.debug("Project registry contains closed project {}", project);
-					// this is actually a bug somewhere in registry refresh
-					// logic, closed projects should not be there
-					continue;
-				}
-				final ArtifactKey artifactKey = projectFacade.getArtifactKey();
-				if (artifactKey.groupId().equals(dependency.getGroupId())
-						&& artifactKey.artifactId().equals(dependency.getArtifactId())
-						&& artifactKey.version().equals(dependency.getVersion())) {
-					final IResource outputLocation = root.findMember(projectFacade.getOutputLocation());
-					if (outputLocation != null) {
-						additionalProjectLocations.add(outputLocation.getLocation());
-					}
-				}
+			// the registry indexes the workspace projects by their coordinates
+			final IMavenProjectFacade projectFacade = projectRegistry.getMavenProject(dependency.getGroupId(),
+					dependency.getArtifactId(), dependency.getVersion());
+			if (projectFacade == null) {
+				continue;
+			}
+			if (!projectFacade.getProject().isAccessible()) {
+				LOG.debug("Project registry contains closed project {}", projectFacade.getProject());
+				// this is actually a bug somewhere in registry refresh
+				// logic, closed projects should not be there
+				continue;
+			}
+			final IResource outputLocation = ResourcesPlugin.getWorkspace().getRoot()
+					.findMember(projectFacade.getOutputLocation());
+			if (outputLocation != null) {
+				additionalProjectLocations.add(outputLocation.getLocation());
 			}
 		}
-		var executionContext = maven.createExecutionContext();
-		return executionContext.execute(mavenProject, (context, pm) -> {
-			try {
-				// we want just the classpath of the Mojo to load resources from it
-				BuildPluginManager buildPluginManager = ((MavenImpl) maven).lookup(BuildPluginManager.class);
-				ClassRealm pluginRealm = buildPluginManager.getPluginRealm(context.getSession(),
-						mojoExecution.getMojoDescriptor().getPluginDescriptor());
-
-				// Do the same as the maven-checkstyle-plugin: Add the module's base path and
-				// the base path of its parents to the search locations.
-				// See https://issues.apache.org/jira/browse/MCHECKSTYLE-131
-				// See https://github.com/apache/maven-checkstyle-plugin/blob/b07adb2e51d6b016dd564893685f46b33fffe5db/src/main/java/org/apache/maven/plugins/checkstyle/exec/DefaultCheckstyleExecutor.java#L767-L777
-				MavenProject project = mavenProject;
-				while (project != null && project.getFile() != null) {
-					IPath projectPath = org.eclipse.core.runtime.Path.fromOSString(project.getFile().getParentFile().getAbsolutePath());
-					additionalProjectLocations.add(projectPath);
-					project = project.getParent();
-				}
+		// Do the same as the maven-checkstyle-plugin: Add the module's base path and
+		// the base path of its parents to the search locations.
+		// See https://issues.apache.org/jira/browse/MCHECKSTYLE-131
+		// See https://github.com/apache/maven-checkstyle-plugin/blob/b07adb2e51d6b016dd564893685f46b33fffe5db/src/main/java/org/apache/maven/plugins/checkstyle/exec/DefaultCheckstyleExecutor.java#L767-L777
+		MavenProject project = mavenProject;
+		while (project != null && project.getFile() != null) {
+			IPath projectPath = org.eclipse.core.runtime.Path.fromOSString(project.getFile().getParentFile().getAbsolutePath());
+			additionalProjectLocations.add(projectPath);
+			project = project.getParent();
+		}
 
-				return new ResourceResolver(pluginRealm, projectLocation, additionalProjectLocations);
-			} catch (PluginResolutionException | PluginManagerException e) {
-				throw new CoreException(new Status(IStatus.ERROR,
-						FrameworkUtil.getBundle(AbstractMavenPluginProjectConfigurator.class).getSymbolicName(),
-						"Failed to access classpath of mojo " + mojoExecution.getMojoDescriptor().getId(), e));
-			}
-		}, null);
+		final ClassRealm pluginRealm;
+		try (ConfigurationScope scope = ConfigurationScope.phase("realm lookup", mojoExecution.getArtifactId())) {
+			pluginRealm = PluginRealmCache.getPluginRealm(maven, mavenProject, mojoExecution);
+		}
+		// remember what has been resolved, it is part of the configuration fingerprint
+		final String analyzer = mojoExecution.getGroupId() + ":" + mojoExecution.getArtifactId();
+		final IProject eclipseProject = this.project;
+		final ConfigurationFingerprintStore fingerprintStore = ConfigurationFingerprintStore.getInstance();
+		return new ResourceResolver(pluginRealm, projectLocation, additionalProjectLocations,
+				mojoExecution.getExecutionId(), url -> fingerprintStore.recordResource(eclipseProject, analyzer, url));
 	}
 
-	protected void copyIfChanged(InputStream input, Path output) throws IOException {
-		InputStream source = input;
-		if (Files.exists(output)) {
-			byte[] fileContent = IOUtil.toByteArray(input);
-			ByteArrayInputStream bufferedInput = new ByteArrayInputStream(fileContent);
-
-			// compare content first
-			try (InputStream outputContent = Files.newInputStream(output)) {
-				if (IOUtil.contentEquals(bufferedInput, outputContent)) {
-					return;
-				}
-			}
+	/**
+	 * Copy a resource to a file, unless the file already has the same content.
+	 *
+	 * @param source the resource to copy.
+	 * @param output the file to write.
+	 * @throws IOException if reading or writing fails.
+	 * @see IncrementalFileCopy
+	 */
+	protected void copyIfChanged(final URL source, final Path output) throws IOException {
+		try (ConfigurationScope scope = ConfigurationScope.phase("file copy", output.getFileName())) {
+			IncrementalFileCopy.getDefault().copyIfChanged(source, output);
+		}
+	}
 
-			// rewind input and use it
-			bufferedInput.reset();
-			source = bufferedInput;
+	/**
+	 * Copy a stream to a file, unless the file already has the same content.
+	 *
+	 * @param input  the content to copy, consumed but not closed.
+	 * @param output the file to write.
+	 * @throws IOException if reading or writing fails.
+	 * @see IncrementalFileCopy
+	 */
+	protected void copyIfChanged(final InputStream input, final Path output) throws IOException {
+		try (ConfigurationScope scope = ConfigurationScope.phase("file copy", output.getFileName())) {
+			IncrementalFileCopy.getDefault().copyIfChanged(input, output);
 		}
-		Files.copy(source, output, StandardCopyOption.REPLACE_EXISTING);
 	}
 
 	/**
@@ -290,4 +398,10 @@ public class AbstractMavenPluginConfigurationTranslator {
 		Preconditions.checkNotNull(filename);
 		return filename.replaceAll("[^a-zA-Z0-9-_\\.]", "_");
 	}
+
+	@Override
+	public String toString() {
+		return String.format("[%s execution=%s, parameterCacheHits=%d, savedEvaluationNanos=%d]",
+				getClass().getSimpleName(), getExecutionId(), getParameterCacheHitCount(), getSavedEvaluationNanos());
+	}
 }
@@ -18,6 +18,8 @@ package com.basistech.m2e.code.quality.shared;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -33,6 +35,8 @@ import org.eclipse.m2e.core.project.IMavenProjectFacade;
 import org.eclipse.m2e.core.project.MavenProjectChangedEvent;
 import org.eclipse.m2e.core.project.configurator.AbstractProjectConfigurator;
 import org.eclipse.m2e.core.project.configurator.ProjectConfigurationRequest;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,6 +60,9 @@ public abstract class AbstractMavenPluginProjectConfigurator<N extends IProjectN
 
 	private final String[] associatedFileNames;
 
+	/** see {@link CodeQualityPreferences#EVENT_COALESCING_WINDOW_MILLIS} */
+	private final ProjectChangeCoalescer.ChangeHandler changeHandler = this::mavenProjectChanged;
+
 	@SuppressWarnings("hiding")
 	protected AbstractMavenPluginProjectConfigurator(final String natureId, final String markerId,
 			final String... associatedFileNames) {
@@ -100,25 +107,77 @@ public abstract class AbstractMavenPluginProjectConfigurator<N extends IProjectN
 			return;
 		}
 
-		final MavenPluginWrapper pluginWrapper = this.getMavenPlugin(monitor, request.mavenProjectFacade());
 		final IProject project = request.mavenProjectFacade().getProject();
+		try (ConfigurationScope scope = ConfigurationScope.configuration(project, getAnalyzerKey(), "configure")) {
+			final MavenPluginWrapper pluginWrapper = this.getMavenPlugin(monitor, request.mavenProjectFacade());
+			if (!pluginWrapper.isPluginConfigured()) {
+				scope.setOutcome("not configured");
+				return;
+			}
+			final boolean upToDate;
+			try (ConfigurationScope phase = ConfigurationScope.phase("fingerprint check")) {
+				upToDate = isConfigurationUpToDate(request.mavenProjectFacade(), project, pluginWrapper, monitor);
+			}
+			if (upToDate) {
+				// typically the first configuration after a restart of the workspace
+				LOG.debug("configure {}: configuration unchanged, skipping", project);
+				scope.setOutcome("skipped");
+				return;
+			}
 
-		if (!pluginWrapper.isPluginConfigured()) {
-			return;
+			ProjectUpdateBatch.run(project, batchMonitor -> this.reconfigure(request.mavenProjectFacade(), project,
+					pluginWrapper, batchMonitor), monitor);
+			scope.setOutcome(getReconfigureOutcome());
 		}
-
-		this.handleProjectConfigurationChange(request.mavenProjectFacade(), project, pluginWrapper, monitor);
 	}
 
 	@Override
 	public void mavenProjectChanged(final MavenProjectChangedEvent mavenProjectChangedEvent,
 			final IProgressMonitor monitor) throws CoreException {
+		final long window = CodeQualityPreferences.getEventCoalescingWindowMillis();
+		if (window > 0) {
+			ProjectChangeCoalescer.getInstance().add(mavenProjectChangedEvent, window, getAnalyzerKey(), changeHandler);
+			return;
+		}
 		final IMavenProjectFacade mavenProjectFacade = mavenProjectChangedEvent.getMavenProject();
-		final MavenPluginWrapper pluginWrapper = this.getMavenPlugin(monitor, mavenProjectFacade);
+		if (mavenProjectFacade == null) {
+			return;
+		}
+		ProjectUpdateBatch.run(mavenProjectFacade.getProject(),
+				batchMonitor -> this.mavenProjectChanged(mavenProjectChangedEvent.getKind(),
+						mavenProjectChangedEvent.getOldMavenProject(), mavenProjectFacade, batchMonitor),
+				monitor);
+	}
+
+	/**
+	 * Handle a change of a project, either of a single event or of several
+	 * events merged by the {@link ProjectChangeCoalescer}, inside a
+	 * {@link ProjectUpdateBatch}.
+	 */
+	private void mavenProjectChanged(final int kind, final IMavenProjectFacade oldMavenProjectFacade,
+			final IMavenProjectFacade mavenProjectFacade, final IProgressMonitor monitor) throws CoreException {
+		if (mavenProjectFacade == null) {
+			// removed, nothing left to configure
+			return;
+		}
 		final IProject project = mavenProjectFacade.getProject();
+		try (ConfigurationScope scope = ConfigurationScope.configuration(project, getAnalyzerKey(),
+				"mavenProjectChanged")) {
+			scope.setOutcome(handleProjectChange(kind, oldMavenProjectFacade, mavenProjectFacade, project, monitor));
+		}
+	}
+
+	/**
+	 * @return the outcome of the change, see
+	 *         {@link ConfigurationScope#setOutcome(String)}.
+	 */
+	private String handleProjectChange(final int kind, final IMavenProjectFacade oldMavenProjectFacade,
+			final IMavenProjectFacade mavenProjectFacade, final IProject project, final IProgressMonitor monitor)
+			throws CoreException {
+		final MavenPluginWrapper pluginWrapper = this.getMavenPlugin(monitor, mavenProjectFacade);
 
 		if (LOG.isDebugEnabled()) {
-			switch (mavenProjectChangedEvent.getKind()) {
+			switch (kind) {
 			case MavenProjectChangedEvent.KIND_ADDED:
 				LOG.debug("mavenProjectChanged {}: KIND_ADDED", project);
 				break;
@@ -129,16 +188,31 @@ public abstract class AbstractMavenPluginProjectConfigurator<N extends IProjectN
 				LOG.debug("mavenProjectChanged {}: KIND_REMOVED", project);
 				break;
 			default:
-				LOG.debug("mavenProjectChanged {}: {}", project, mavenProjectChangedEvent.getKind());
+				LOG.debug("mavenProjectChanged {}: {}", project, kind);
 			}
 		}
 
-		if (this.checkUnconfigurationRequired(monitor, mavenProjectFacade)) {
-			this.unconfigureEclipsePlugin(project, monitor);
-			return;
+		// look up the executions only once per event
+		if (checkUnconfigurationRequired(pluginWrapper)) {
+			try (ConfigurationScope phase = ConfigurationScope.phase("unconfigure")) {
+				this.unconfigureEclipsePlugin(project, monitor);
+			}
+			return "unconfigured";
 		}
 		if (pluginWrapper.isPluginConfigured()) {
-			this.handleProjectConfigurationChange(mavenProjectFacade, project, pluginWrapper, monitor);
+			if (kind == MavenProjectChangedEvent.KIND_CHANGED && oldMavenProjectFacade != null) {
+				final boolean upToDate;
+				try (ConfigurationScope phase = ConfigurationScope.phase("fingerprint check")) {
+					upToDate = isConfigurationUpToDate(mavenProjectFacade, project, pluginWrapper, monitor);
+				}
+				if (upToDate) {
+					// e.g. a dependency change, nothing relevant to the analyzer
+					LOG.debug("mavenProjectChanged {}: configuration unchanged, skipping", project);
+					return "skipped";
+				}
+			}
+			this.reconfigure(mavenProjectFacade, project, pluginWrapper, monitor);
+			return getReconfigureOutcome();
 		} else {
 			// TODO: redirect to eclipse logger.
 			// this.console.logMessage(String.format(
@@ -147,7 +221,110 @@ public abstract class AbstractMavenPluginProjectConfigurator<N extends IProjectN
 			// "(Could not find maven plugin instance or configuration in pom)",
 			// this.getMavenPluginGroupId(),
 			// this.getMavenPluginArtifactId()));
+			return "not configured";
+		}
+	}
+
+	private static String getReconfigureOutcome() {
+		return CodeQualityPreferences.isParallelConfigurationEnabled() ? "scheduled" : "configured";
+	}
+
+	/**
+	 * Run {@link #handleProjectConfigurationChange} and remember the fingerprint
+	 * of the resulting configuration. In parallel mode this only schedules a job
+	 * for it, see {@link ConfigurationScheduler}, which is a configuration of its
+	 * own for the trace and the JFR events.
+	 */
+	private void reconfigure(final IMavenProjectFacade mavenProjectFacade, final IProject project,
+			final MavenPluginWrapper pluginWrapper, final IProgressMonitor monitor) throws CoreException {
+		if (CodeQualityPreferences.isParallelConfigurationEnabled()) {
+			ConfigurationScheduler.schedule(project, getAnalyzerKey(), jobMonitor -> {
+				try (ConfigurationScope scope = ConfigurationScope.configuration(project, getAnalyzerKey(),
+						"scheduled")) {
+					ProjectUpdateBatch.run(project,
+							batchMonitor -> doReconfigure(mavenProjectFacade, project, pluginWrapper, batchMonitor),
+							jobMonitor);
+					scope.setOutcome("configured");
+				}
+			});
+		} else {
+			doReconfigure(mavenProjectFacade, project, pluginWrapper, monitor);
+		}
+	}
+
+	private void doReconfigure(final IMavenProjectFacade mavenProjectFacade, final IProject project,
+			final MavenPluginWrapper pluginWrapper, final IProgressMonitor monitor) throws CoreException {
+		final ConfigurationFingerprintStore fingerprintStore = ConfigurationFingerprintStore.getInstance();
+		final String analyzer = getAnalyzerKey();
+		// forgets the previous fingerprint, so a failed configuration is retried
+		fingerprintStore.startConfiguration(project, analyzer);
+		try (ConfigurationScope phase = ConfigurationScope.phase("handleProjectConfigurationChange")) {
+			this.handleProjectConfigurationChange(mavenProjectFacade, project, pluginWrapper, monitor);
+		}
+		try (ConfigurationScope phase = ConfigurationScope.phase("fingerprint update")) {
+			fingerprintStore.putFingerprint(project, analyzer,
+					computeFingerprint(mavenProjectFacade, project, pluginWrapper, monitor));
+		}
+	}
+
+	/**
+	 * @return {@code true} if the fingerprint of the configuration is the same as
+	 *         after the last configuration of the project, possibly in an earlier
+	 *         session.
+	 */
+	private boolean isConfigurationUpToDate(final IMavenProjectFacade mavenProjectFacade, final IProject project,
+			final MavenPluginWrapper pluginWrapper, final IProgressMonitor monitor) throws CoreException {
+		if (!CodeQualityPreferences.isConfigurationFingerprintsEnabled()) {
+			return false;
 		}
+		final String previous = ConfigurationFingerprintStore.getInstance().getFingerprint(project,
+				getAnalyzerKey());
+		return previous != null
+				&& previous.equals(computeFingerprint(mavenProjectFacade, project, pluginWrapper, monitor));
+	}
+
+	private String computeFingerprint(final IMavenProjectFacade mavenProjectFacade, final IProject project,
+			final MavenPluginWrapper pluginWrapper, final IProgressMonitor monitor) throws CoreException {
+		final Map<String, String> inputs = new HashMap<>(getFingerprintInputs(project));
+		// a new version of the configurator may configure the project differently
+		final Bundle bundle = FrameworkUtil.getBundle(getClass());
+		if (bundle != null) {
+			inputs.put("configurator", bundle.getSymbolicName() + ":" + bundle.getVersion());
+		}
+		return ConfigurationFingerprint.compute(mavenProjectFacade.getMavenProject(monitor),
+				pluginWrapper.getMojoExecutions(),
+				ConfigurationFingerprintStore.getInstance().getResources(project, getAnalyzerKey()),
+				RemoteResourceCache.fromPreferences(), inputs, project, natureId, getConfigurationFileNames());
+	}
+
+	/**
+	 * Inputs of the configuration that are not part of the maven project, e.g.
+	 * preferences of the Eclipse plugin, or global settings the configuration
+	 * refers to. If one of them changes, the next configuration or change of the
+	 * maven project is not skipped as unchanged.
+	 *
+	 * @param project the project.
+	 * @return the inputs by name, empty by default.
+	 * @throws CoreException if an input cannot be read.
+	 */
+	protected Map<String, String> getFingerprintInputs(final IProject project) throws CoreException {
+		return Collections.emptyMap();
+	}
+
+	/**
+	 * The files written by the configuration, whose state is part of the
+	 * configuration fingerprint. Files that change outside of the configuration,
+	 * like caches of the analyzer, must not be included.
+	 *
+	 * @return the file names relative to the project, by default the associated
+	 *         files.
+	 */
+	protected String[] getConfigurationFileNames() {
+		return associatedFileNames;
+	}
+
+	private String getAnalyzerKey() {
+		return getMavenPluginGroupId() + ":" + getMavenPluginArtifactId();
 	}
 
 	/**
@@ -190,35 +367,34 @@ public abstract class AbstractMavenPluginProjectConfigurator<N extends IProjectN
 	protected void unconfigureEclipsePlugin(final IProject project, final IProgressMonitor monitor)
 			throws CoreException {
 		LOG.debug("entering deconfigure");
+		ConfigurationFingerprintStore.getInstance().remove(project, getAnalyzerKey());
 		// this removes the builder and nature
 		removeNature(project, monitor);
 		// remove all eclipse files.
 		deleteEclipseFiles(project, monitor);
+		// and the digests of copies that are gone, e.g. with the build directory
+		IncrementalFileCopy.getDefault().removeOrphanedDigests();
 	}
 
 	/**
 	 * Helper to check if a Eclipse plugin unconfiguration is needed. This usually
 	 * happens if the maven plugin has been unconfigured.
 	 * 
-	 * @param curMavenProjectFacade the current {@code IMavenProjectFacade}.
+	 * @param curMavenPlugin the plugin of the current
+	 *                       {@code IMavenProjectFacade}.
 	 * @return {@code true} if the Eclipse plugin configuration needs to be deleted.
-	 * @throws CoreException
 	 */
-	private boolean checkUnconfigurationRequired(final IProgressMonitor monitor,
-			final IMavenProjectFacade curMavenProjectFacade) throws CoreException {
-		Preconditions.checkNotNull(curMavenProjectFacade);
-
-		final MavenPluginWrapper newMavenPlugin = this.getMavenPlugin(monitor, curMavenProjectFacade);
-		if (!newMavenPlugin.isPluginConfigured()) {
-			return true;
-		}
-		return false;
+	private static boolean checkUnconfigurationRequired(final MavenPluginWrapper curMavenPlugin) {
+		Preconditions.checkNotNull(curMavenPlugin);
+		return !curMavenPlugin.isPluginConfigured();
 	}
 
 	private MavenPluginWrapper getMavenPlugin(final IProgressMonitor monitor, final IMavenProjectFacade projectFacade)
 			throws CoreException {
-		return MavenPluginWrapper.newInstance(monitor, getMavenPluginGroupId(), getMavenPluginArtifactId(),
-				getMavenPluginGoals(), projectFacade);
+		try (ConfigurationScope scope = ConfigurationScope.phase("execution discovery")) {
+			return MavenPluginWrapper.newInstance(monitor, getMavenPluginGroupId(), getMavenPluginArtifactId(),
+					getMavenPluginGoals(), projectFacade);
+		}
 	}
 
 	protected void configure(final IProject project, final boolean skip, final IProgressMonitor monitor)
@@ -241,9 +417,19 @@ public abstract class AbstractMavenPluginProjectConfigurator<N extends IProjectN
 		return (N) project.getNature(natureId);
 	}
 
+	/**
+	 * Add the nature to the project. Inside a {@link ProjectUpdateBatch} the
+	 * nature is only added when the batch is applied, and {@code null} is
+	 * returned if the project does not have it yet.
+	 */
 	@SuppressWarnings("unchecked")
 	protected N addNature(final IProject project, final IProgressMonitor monitor) throws CoreException {
 		LOG.debug("entering configureNature");
+		final ProjectUpdateBatch batch = ProjectUpdateBatch.getCurrent(project);
+		if (batch != null) {
+			batch.addNature(natureId);
+			return project.hasNature(natureId) ? (N) project.getNature(natureId) : null;
+		}
 		// We have to explicitly add the nature.
 		final IProjectDescription desc = project.getDescription();
 		final String[] natures = desc.getNatureIds();
@@ -256,7 +442,9 @@ public abstract class AbstractMavenPluginProjectConfigurator<N extends IProjectN
 		final String[] newNatures = Arrays.copyOf(natures, natures.length + 1);
 		newNatures[natures.length] = natureId;
 		desc.setNatureIds(newNatures);
-		project.setDescription(desc, monitor);
+		try (ConfigurationScope scope = ConfigurationScope.phase("nature changes", natureId)) {
+			project.setDescription(desc, monitor);
+		}
 
 		// should be available now
 		return (N) project.getNature(natureId);
@@ -265,35 +453,77 @@ public abstract class AbstractMavenPluginProjectConfigurator<N extends IProjectN
 	protected void removeNature(final IProject project, final IProgressMonitor monitor) throws CoreException {
 		LOG.debug("entering deconfigureNature");
 
-		// clean all markers
-		project.deleteMarkers(markerId, true, IResource.DEPTH_INFINITE);
-
-		// remove the nature itself, by resetting the nature list.
-		final IProjectDescription desc = project.getDescription();
-		final String[] natures = desc.getNatureIds();
-		final List<String> newNaturesList = new ArrayList<>();
-		for (int i = 0; i < natures.length; i++) {
-			if (!natureId.equals(natures[i])) {
-				newNaturesList.add(natures[i]);
+		final ProjectUpdateBatch batch = ProjectUpdateBatch.getCurrent(project);
+		if (batch != null) {
+			batch.removeNature(natureId);
+		} else {
+			// remove the nature itself, by resetting the nature list.
+			final IProjectDescription desc = project.getDescription();
+			final String[] natures = desc.getNatureIds();
+			final List<String> newNaturesList = new ArrayList<>();
+			for (int i = 0; i < natures.length; i++) {
+				if (!natureId.equals(natures[i])) {
+					newNaturesList.add(natures[i]);
+				}
+			}
+			if (newNaturesList.size() != natures.length) {
+				final String[] newNatures = newNaturesList.toArray(new String[newNaturesList.size()]);
+				desc.setNatureIds(newNatures);
+				try (ConfigurationScope scope = ConfigurationScope.phase("nature changes", natureId)) {
+					project.setDescription(desc, monitor);
+				}
 			}
-		}
-		if (newNaturesList.size() == natures.length) {
-			// no changes
-			return;
 		}
 
-		final String[] newNatures = newNaturesList.toArray(new String[newNaturesList.size()]);
-		desc.setNatureIds(newNatures);
-		project.setDescription(desc, monitor);
+		// clean all markers
+		deleteMarkers(project, markerId);
+	}
+
+	/**
+	 * Delete markers of the analyzer in the background, once the nature has been
+	 * removed, see {@link MarkerCleanupJob}.
+	 *
+	 * @param project     the project.
+	 * @param markerTypes the marker types to delete, including their subtypes.
+	 */
+	protected void deleteMarkers(final IProject project, final String... markerTypes) {
+		final ProjectUpdateBatch batch = ProjectUpdateBatch.getCurrent(project);
+		if (batch != null) {
+			batch.deleteMarkers(natureId, markerTypes);
+		} else {
+			MarkerCleanupJob.schedule(project, natureId, markerTypes);
+		}
 	}
 
 	protected void deleteEclipseFiles(final IProject project, final IProgressMonitor monitor) throws CoreException {
 		LOG.debug("entering deleteEclipseFiles");
 		for (String associatedFileName : associatedFileNames) {
-			final IResource associatedFile = project.getFile(associatedFileName);
-			if (associatedFile.exists()) {
-				associatedFile.delete(IResource.FORCE, monitor);
-			}
+			deleteFile(project, associatedFileName, monitor);
+		}
+	}
+
+	/**
+	 * Delete a file of the project, with the project update batch of the current
+	 * configuration if there is one.
+	 *
+	 * @param project  the project.
+	 * @param fileName the file name relative to the project.
+	 * @param monitor  the progress monitor.
+	 * @throws CoreException if the file cannot be deleted.
+	 */
+	protected void deleteFile(final IProject project, final String fileName, final IProgressMonitor monitor)
+			throws CoreException {
+		if (project.getLocation() != null) {
+			IncrementalFileCopy.getDefault().forget(project.getLocation().append(fileName).toFile().toPath());
+		}
+		final ProjectUpdateBatch batch = ProjectUpdateBatch.getCurrent(project);
+		if (batch != null) {
+			batch.deleteFile(fileName);
+			return;
+		}
+		final IResource file = project.getFile(fileName);
+		if (file.exists()) {
+			file.delete(IResource.FORCE, monitor);
 		}
 	}
 }
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Platform;
+import org.osgi.framework.FrameworkUtil;
+
+/**
+ * Preferences of the shared bundle. There is no preference page for these, they
+ * can be set in the instance scope or through a
+ * {@code plugin_customization.ini}, using the bundle symbolic name
+ * {@code com.basistech.m2e.code.quality.shared} as qualifier.
+ */
+public final class CodeQualityPreferences {
+
+	public static final String PLUGIN_ID = "com.basistech.m2e.code.quality.shared";
+
+	/** whether http(s) resources are served from a local copy */
+	public static final String REMOTE_CACHE_ENABLED = "remoteResourceCache.enabled";
+	/**
+	 * how long a local copy of a http(s) resource is used without asking the
+	 * server, by default 0: every use revalidates it with a conditional request
+	 */
+	public static final String REMOTE_CACHE_TTL_SECONDS = "remoteResourceCache.ttlSeconds";
+	/** never contact the server, use whatever is in the cache */
+	public static final String REMOTE_CACHE_OFFLINE = "remoteResourceCache.offline";
+	/** skip the configuration of projects whose configuration fingerprint has not changed */
+	public static final String CONFIGURATION_FINGERPRINTS_ENABLED = "configurationFingerprints.enabled";
+	/** configure projects in background jobs, several at a time */
+	public static final String PARALLEL_CONFIGURATION_ENABLED = "parallelConfiguration.enabled";
+	/** how many projects to configure at a time, 0 for the number of processors */
+	public static final String PARALLEL_CONFIGURATION_THREADS = "parallelConfiguration.threads";
+	/** how long to collect project change events before acting on them, 0 to act on each event at once */
+	public static final String EVENT_COALESCING_WINDOW_MILLIS = "eventCoalescing.windowMillis";
+
+	private CodeQualityPreferences() {
+		// no instantiation.
+	}
+
+	public static boolean isRemoteCacheEnabled() {
+		return getBoolean(REMOTE_CACHE_ENABLED, true);
+	}
+
+	public static long getRemoteCacheTtlSeconds() {
+		return getLong(REMOTE_CACHE_TTL_SECONDS, 0L);
+	}
+
+	public static boolean isRemoteCacheOffline() {
+		return getBoolean(REMOTE_CACHE_OFFLINE, false);
+	}
+
+	public static boolean isConfigurationFingerprintsEnabled() {
+		return getBoolean(CONFIGURATION_FINGERPRINTS_ENABLED, true);
+	}
+
+	public static boolean isParallelConfigurationEnabled() {
+		return getBoolean(PARALLEL_CONFIGURATION_ENABLED, false);
+	}
+
+	public static int getParallelConfigurationThreads() {
+		final int threads = getInt(PARALLEL_CONFIGURATION_THREADS, 0);
+		return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	public static long getEventCoalescingWindowMillis() {
+		return Math.max(0L, getLong(EVENT_COALESCING_WINDOW_MILLIS, 0L));
+	}
+
+	/**
+	 * @return the state location of the shared bundle.
+	 */
+	public static IPath getStateLocation() {
+		return Platform.getStateLocation(FrameworkUtil.getBundle(CodeQualityPreferences.class));
+	}
+
+	static boolean getBoolean(final String key, final boolean defaultValue) {
+		return Platform.getPreferencesService().getBoolean(PLUGIN_ID, key, defaultValue, null);
+	}
+
+	static int getInt(final String key, final int defaultValue) {
+		return Platform.getPreferencesService().getInt(PLUGIN_ID, key, defaultValue, null);
+	}
+
+	static long getLong(final String key, final long defaultValue) {
+		return Platform.getPreferencesService().getLong(PLUGIN_ID, key, defaultValue, null);
+	}
+}
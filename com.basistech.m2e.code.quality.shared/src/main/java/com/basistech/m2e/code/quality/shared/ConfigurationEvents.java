@@ -0,0 +1,345 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events of the project configuration, to build flame
+ * graphs and latency histograms of the configurators from a recording.
+ * <p>
+ * All events carry the project name, the analyzer ({@code groupId:artifactId}
+ * of its maven plugin) and, where known, the execution id, as attributed by the
+ * enclosing {@link ConfigurationScope}, which also begins and commits them.
+ * </p>
+ * <p>
+ * The {@code begin*} methods return an opaque event, or {@code null} if JFR is
+ * not available; pass it to the matching {@code commit*} method. Nothing is
+ * computed for an event that is not being recorded.
+ * </p>
+ */
+final class ConfigurationEvents {
+
+	private static final boolean AVAILABLE = isJfrAvailable();
+
+	private ConfigurationEvents() {
+		// no instantiation.
+	}
+
+	private static boolean isJfrAvailable() {
+		try {
+			// the import of jdk.jfr is optional
+			Class.forName("jdk.jfr.Event", false, ConfigurationEvents.class.getClassLoader());
+			return true;
+		} catch (final ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @param trigger what started the configuration, e.g. {@code configure}.
+	 */
+	static Object beginConfiguration(final String trigger) {
+		return AVAILABLE ? Jfr.beginConfiguration(trigger) : null;
+	}
+
+	/**
+	 * @param outcome what the configuration did, e.g. {@code skipped}.
+	 */
+	static void commitConfiguration(final Object event, final String outcome) {
+		if (event != null) {
+			Jfr.commitConfiguration(event, outcome);
+		}
+	}
+
+	static Object beginResolution() {
+		return AVAILABLE ? Jfr.beginResolution() : null;
+	}
+
+	/**
+	 * @param location the location to resolve.
+	 * @param resolved the resolved location, before any remote resource has been
+	 *                 replaced by its local copy.
+	 * @param result   what the location has been resolved to.
+	 * @param cacheHit whether the resolution came from the resolution cache.
+	 */
+	static void commitResolution(final Object event, final String location, final URL resolved, final URL result,
+			final boolean cacheHit) {
+		if (event != null) {
+			Jfr.commitResolution(event, location, resolved, result, cacheHit);
+		}
+	}
+
+	static Object beginRemoteFetch() {
+		return AVAILABLE ? Jfr.beginRemoteFetch() : null;
+	}
+
+	/**
+	 * @param responseCode the HTTP response code, or {@code -1} if there has been
+	 *                     no response.
+	 * @param bytes        the number of bytes downloaded.
+	 */
+	static void commitRemoteFetch(final Object event, final URL url, final int responseCode, final long bytes) {
+		if (event != null) {
+			Jfr.commitRemoteFetch(event, url, responseCode, bytes);
+		}
+	}
+
+	static Object beginRulesetParse() {
+		return AVAILABLE ? Jfr.beginRulesetParse() : null;
+	}
+
+	/**
+	 * @param location the ruleset location.
+	 * @param rules    the number of rules found, {@code -1} if the ruleset could
+	 *                 not be parsed.
+	 */
+	static void commitRulesetParse(final Object event, final String location, final int rules) {
+		if (event != null) {
+			Jfr.commitRulesetParse(event, location, rules);
+		}
+	}
+
+	static Object beginSettingsWrite() {
+		return AVAILABLE ? Jfr.beginSettingsWrite() : null;
+	}
+
+	/**
+	 * @param target what has been written, e.g. a file name.
+	 */
+	static void commitSettingsWrite(final Object event, final String target) {
+		if (event != null) {
+			Jfr.commitSettingsWrite(event, target);
+		}
+	}
+
+	/**
+	 * Everything that refers to {@code jdk.jfr}, only loaded if it is available.
+	 * The outer class must not mention the event types, the verifier would load
+	 * them.
+	 */
+	private static final class Jfr {
+
+		private static final String CATEGORY = "m2e Code Quality";
+
+		@Category(CATEGORY)
+		abstract static class ConfigurationEvent extends Event {
+			@Label("Project")
+			String project;
+			@Label("Analyzer")
+			String analyzer;
+			@Label("Execution Id")
+			String executionId;
+		}
+
+		@Name("com.basistech.m2e.codequality.ProjectConfiguration")
+		@Label("Project Configuration")
+		@Description("Configuration of an analyzer for a project")
+		static final class ProjectConfigurationEvent extends ConfigurationEvent {
+			@Label("Trigger")
+			String trigger;
+			@Label("Outcome")
+			String outcome;
+		}
+
+		@Name("com.basistech.m2e.codequality.ResourceResolution")
+		@Label("Resource Resolution")
+		@Description("Resolution of a resource location of the plugin configuration")
+		static final class ResourceResolutionEvent extends ConfigurationEvent {
+			@Label("Location")
+			String location;
+			@Label("Source Type")
+			String sourceType;
+			@Label("Resolved")
+			String resolved;
+			@Label("Bytes")
+			@DataAmount
+			long bytes;
+			@Label("Cache Hit")
+			boolean cacheHit;
+		}
+
+		@Name("com.basistech.m2e.codequality.RemoteFetch")
+		@Label("Remote Fetch")
+		@Description("Download or revalidation of a remote resource")
+		static final class RemoteFetchEvent extends ConfigurationEvent {
+			@Label("URL")
+			String url;
+			@Label("Response Code")
+			int responseCode;
+			@Label("Bytes")
+			@DataAmount
+			long bytes;
+		}
+
+		@Name("com.basistech.m2e.codequality.RulesetParse")
+		@Label("Ruleset Parse")
+		@Description("Parsing of an analyzer ruleset")
+		static final class RulesetParseEvent extends ConfigurationEvent {
+			@Label("Location")
+			String location;
+			@Label("Rules")
+			int rules;
+		}
+
+		@Name("com.basistech.m2e.codequality.SettingsWrite")
+		@Label("Settings Write")
+		@Description("Persistence of the settings of an Eclipse analyzer plugin")
+		static final class SettingsWriteEvent extends ConfigurationEvent {
+			@Label("Target")
+			String target;
+		}
+
+		static Object beginConfiguration(final String trigger) {
+			final ProjectConfigurationEvent event = new ProjectConfigurationEvent();
+			event.trigger = trigger;
+			return begin(event);
+		}
+
+		static Object beginResolution() {
+			return begin(new ResourceResolutionEvent());
+		}
+
+		static Object beginRemoteFetch() {
+			return begin(new RemoteFetchEvent());
+		}
+
+		static Object beginRulesetParse() {
+			return begin(new RulesetParseEvent());
+		}
+
+		static Object beginSettingsWrite() {
+			return begin(new SettingsWriteEvent());
+		}
+
+		private static Object begin(final Event event) {
+			if (!event.isEnabled()) {
+				return null;
+			}
+			event.begin();
+			return event;
+		}
+
+		static void commitConfiguration(final Object object, final String outcome) {
+			final ProjectConfigurationEvent event = (ProjectConfigurationEvent) object;
+			if (end(event)) {
+				event.outcome = outcome;
+				event.commit();
+			}
+		}
+
+		static void commitResolution(final Object object, final String location, final URL resolved,
+				final URL result, final boolean cacheHit) {
+			final ResourceResolutionEvent event = (ResourceResolutionEvent) object;
+			if (end(event)) {
+				event.location = location;
+				event.sourceType = getSourceType(resolved);
+				event.resolved = result != null ? result.toExternalForm() : null;
+				event.bytes = getSize(result);
+				event.cacheHit = cacheHit;
+				event.commit();
+			}
+		}
+
+		static void commitRemoteFetch(final Object object, final URL url, final int responseCode,
+				final long bytes) {
+			final RemoteFetchEvent event = (RemoteFetchEvent) object;
+			if (end(event)) {
+				event.url = url.toExternalForm();
+				event.responseCode = responseCode;
+				event.bytes = bytes;
+				event.commit();
+			}
+		}
+
+		static void commitRulesetParse(final Object object, final String location, final int rules) {
+			final RulesetParseEvent event = (RulesetParseEvent) object;
+			if (end(event)) {
+				event.location = location;
+				event.rules = rules;
+				event.commit();
+			}
+		}
+
+		static void commitSettingsWrite(final Object object, final String target) {
+			final SettingsWriteEvent event = (SettingsWriteEvent) object;
+			if (end(event)) {
+				event.target = target;
+				event.commit();
+			}
+		}
+
+		/**
+		 * End an event and fill in the context.
+		 *
+		 * @return whether the event should be committed.
+		 */
+		private static boolean end(final ConfigurationEvent event) {
+			event.end();
+			if (!event.shouldCommit()) {
+				return false;
+			}
+			final ConfigurationScope.Context context = ConfigurationScope.getContext();
+			if (context != null) {
+				event.project = context.project;
+				event.analyzer = context.analyzer;
+				event.executionId = context.executionId;
+			}
+			return true;
+		}
+
+		private static String getSourceType(final URL url) {
+			if (url == null) {
+				return "unresolved";
+			}
+			switch (url.getProtocol()) {
+			case "file":
+				return "file";
+			case "http":
+			case "https":
+				return "remote";
+			case "jar":
+			case "bundleresource":
+			case "bundleentry":
+				return "classpath";
+			default:
+				return url.getProtocol();
+			}
+		}
+
+		private static long getSize(final URL url) {
+			if (url == null || !"file".equals(url.getProtocol())) {
+				return -1L;
+			}
+			try {
+				return Files.size(Paths.get(url.toURI()));
+			} catch (final IOException | URISyntaxException | IllegalArgumentException e) {
+				return -1L;
+			}
+		}
+	}
+}
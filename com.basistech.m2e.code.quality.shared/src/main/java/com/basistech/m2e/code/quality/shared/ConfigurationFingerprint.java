@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.model.Resource;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fingerprint of everything that goes into, and comes out of, the
+ * configuration of an analyzer for a project:
+ * <ul>
+ * <li>the configuration of the relevant mojo executions, the values of the
+ * properties they refer to, and the plugin versions and dependencies;</li>
+ * <li>the content of the resources resolved for the configuration (rulesets,
+ * filter files, ...), for a remote resource the content of its cached copy;</li>
+ * <li>the source and resource roots of the project;</li>
+ * <li>inputs outside of the maven project that the configurator declares, e.g.
+ * preferences of the Eclipse plugin;</li>
+ * <li>whether the nature is present, and the state of the generated files.</li>
+ * </ul>
+ * If the fingerprint has not changed, configuring the project again would not
+ * change anything.
+ */
+public final class ConfigurationFingerprint {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ConfigurationFingerprint.class);
+
+	private static final Pattern PROPERTY_REFERENCE = Pattern.compile("\\$\\{([^}]+)\\}");
+
+	private final MessageDigest digest;
+
+	private ConfigurationFingerprint() {
+		digest = Digests.newSha256();
+	}
+
+	/**
+	 * Compute the fingerprint of the configuration of a project.
+	 *
+	 * @param mavenProject    the maven project.
+	 * @param mojoExecutions  the executions of the analyzer plugin.
+	 * @param resources       the URLs of the resources resolved during the
+	 *                        configuration.
+	 * @param remoteCache     the cache of the remote resources, which are
+	 *                        fingerprinted by their cached copy.
+	 * @param inputs          further inputs of the configuration, by name.
+	 * @param project         the Eclipse project.
+	 * @param natureId        the nature of the analyzer.
+	 * @param outputFileNames the files written by the configuration, relative
+	 *                        to the project.
+	 * @return the fingerprint, a hex string.
+	 * @throws CoreException if the project state cannot be read.
+	 */
+	public static String compute(final MavenProject mavenProject, final List<MojoExecution> mojoExecutions,
+			final Collection<String> resources, final RemoteResourceCache remoteCache, final Map<String, String> inputs,
+			final IProject project, final String natureId, final String... outputFileNames) throws CoreException {
+		final ConfigurationFingerprint fingerprint = new ConfigurationFingerprint();
+		fingerprint.addExecutions(mavenProject, mojoExecutions);
+		fingerprint.addResources(resources, remoteCache);
+		fingerprint.addSourceRoots(mavenProject);
+		for (final Map.Entry<String, String> input : new TreeMap<>(inputs).entrySet()) {
+			fingerprint.add("input", input.getKey(), input.getValue());
+		}
+		fingerprint.add("nature", Boolean.toString(ProjectUpdateBatch.hasNature(project, natureId)));
+		for (final String outputFileName : outputFileNames) {
+			final IFile file = project.getFile(outputFileName);
+			fingerprint.add("output", outputFileName,
+					file.exists() ? Long.toString(file.getLocalTimeStamp()) : "missing");
+		}
+		return Digests.toHex(fingerprint.digest.digest());
+	}
+
+	private void addExecutions(final MavenProject mavenProject, final List<MojoExecution> mojoExecutions) {
+		if (mojoExecutions == null) {
+			return;
+		}
+		final Properties properties = mavenProject.getProperties();
+		for (final MojoExecution mojoExecution : mojoExecutions) {
+			add("execution", mojoExecution.getGroupId(), mojoExecution.getArtifactId(), mojoExecution.getVersion(),
+					mojoExecution.getGoal(), mojoExecution.getExecutionId());
+			final String configuration = String.valueOf(mojoExecution.getConfiguration());
+			add("configuration", configuration);
+			// the configuration is not evaluated yet, track the properties it uses
+			final Matcher matcher = PROPERTY_REFERENCE.matcher(configuration);
+			final TreeSet<String> referencedProperties = new TreeSet<>();
+			while (matcher.find()) {
+				referencedProperties.add(matcher.group(1));
+			}
+			for (final String property : referencedProperties) {
+				add("property", property, properties != null ? properties.getProperty(property) : null);
+			}
+			if (mojoExecution.getPlugin() != null) {
+				for (final Dependency dependency : mojoExecution.getPlugin().getDependencies()) {
+					add("dependency", dependency.getManagementKey(), dependency.getVersion());
+					for (final Exclusion exclusion : dependency.getExclusions()) {
+						add("exclusion", exclusion.getGroupId(), exclusion.getArtifactId());
+					}
+				}
+			}
+		}
+	}
+
+	private void addResources(final Collection<String> resources, final RemoteResourceCache remoteCache) {
+		for (final String resource : new TreeSet<>(resources)) {
+			add("resource", resource);
+			try {
+				final URL url = new URL(resource);
+				if (!RemoteResourceCache.isCacheable(url)) {
+					try (InputStream inputStream = url.openStream()) {
+						addContent(inputStream);
+					}
+					continue;
+				}
+				// never contact the server, a remote resource is as current as its cached copy
+				final Path cachedCopy = remoteCache.getCachedCopy(url);
+				if (cachedCopy == null) {
+					add("uncached");
+					continue;
+				}
+				try (InputStream inputStream = Files.newInputStream(cachedCopy)) {
+					addContent(inputStream);
+				}
+			} catch (final IOException e) {
+				// the configuration will report the problem, and the fingerprint
+				// changes once the resource can be read again
+				LOG.debug("Could not read {}", resource, e);
+				add("unreadable");
+			}
+		}
+	}
+
+	private void addContent(final InputStream inputStream) throws IOException {
+		final byte[] buffer = new byte[8192];
+		int read;
+		while ((read = inputStream.read(buffer)) >= 0) {
+			digest.update(buffer, 0, read);
+		}
+	}
+
+	private void addSourceRoots(final MavenProject mavenProject) {
+		add("sources", sorted(mavenProject.getCompileSourceRoots()));
+		add("testSources", sorted(mavenProject.getTestCompileSourceRoots()));
+		addResourceRoots("resource", mavenProject.getResources());
+		addResourceRoots("testResource", mavenProject.getTestResources());
+		if (mavenProject.getBuild() != null) {
+			add("output", mavenProject.getBuild().getOutputDirectory(),
+					mavenProject.getBuild().getTestOutputDirectory(), mavenProject.getBuild().getDirectory());
+		}
+	}
+
+	private void addResourceRoots(final String kind, final List<Resource> resources) {
+		if (resources == null) {
+			return;
+		}
+		for (final Resource resource : resources) {
+			add(kind, resource.getDirectory(), String.valueOf(resource.getIncludes()),
+					String.valueOf(resource.getExcludes()));
+		}
+	}
+
+	private static String sorted(final List<String> values) {
+		if (values == null) {
+			return "";
+		}
+		final List<String> sorted = new ArrayList<>(values);
+		Collections.sort(sorted);
+		return sorted.toString();
+	}
+
+	private void add(final String... values) {
+		for (final String value : values) {
+			if (value == null) {
+				digest.update((byte) 1);
+			} else {
+				digest.update((byte) 2);
+				digest.update(value.getBytes(StandardCharsets.UTF_8));
+			}
+			digest.update((byte) 0);
+		}
+		digest.update((byte) 0xff);
+	}
+}
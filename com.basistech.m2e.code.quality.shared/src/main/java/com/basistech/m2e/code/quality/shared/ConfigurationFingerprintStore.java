@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.IProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Remembers, per project and analyzer, the {@link ConfigurationFingerprint} of
+ * the last configuration, and the resources that were resolved while doing it.
+ * <p>
+ * The analyzer is identified by the {@code groupId:artifactId} of its maven
+ * plugin. Fingerprints are also written to the state location of the shared
+ * bundle, one small file per project and analyzer, so they survive a restart
+ * of the workspace.
+ * </p>
+ *
+ * @see CodeQualityPreferences#CONFIGURATION_FINGERPRINTS_ENABLED
+ */
+public final class ConfigurationFingerprintStore {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ConfigurationFingerprintStore.class);
+
+	private static final String FINGERPRINT_KEY = "fingerprint";
+	private static final String RESOURCE_KEY_PREFIX = "resource.";
+
+	private static ConfigurationFingerprintStore instance;
+
+	/** where to persist the fingerprints, {@code null} to keep them in memory only */
+	private final Path directory;
+	private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+	/** external forms of the resolved resources, URL#equals would resolve host names */
+	private final Map<String, Set<String>> resources = new ConcurrentHashMap<>();
+
+	/**
+	 * @param directory the directory to persist the fingerprints in, or
+	 *                  {@code null} to keep them in memory only.
+	 */
+	public ConfigurationFingerprintStore(final Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @return the store persisting to the state location of the shared bundle.
+	 */
+	public static synchronized ConfigurationFingerprintStore getInstance() {
+		if (instance == null) {
+			instance = new ConfigurationFingerprintStore(
+					CodeQualityPreferences.getStateLocation().append("fingerprints").toFile().toPath());
+		}
+		return instance;
+	}
+
+	/**
+	 * @return the fingerprint of the last configuration, or {@code null} if there
+	 *         is none.
+	 */
+	public String getFingerprint(final IProject project, final String analyzer) {
+		final String key = toKey(project, analyzer);
+		final String fingerprint = fingerprints.get(key);
+		if (fingerprint != null || directory == null) {
+			return fingerprint;
+		}
+		return load(key);
+	}
+
+	public void putFingerprint(final IProject project, final String analyzer, final String fingerprint) {
+		Preconditions.checkNotNull(fingerprint);
+		final String key = toKey(project, analyzer);
+		fingerprints.put(key, fingerprint);
+		if (directory != null) {
+			save(key, fingerprint, resources.getOrDefault(key, Collections.<String>emptySet()));
+		}
+	}
+
+	/**
+	 * Forget everything about a project and analyzer, e.g. after it has been
+	 * unconfigured.
+	 */
+	public void remove(final IProject project, final String analyzer) {
+		final String key = toKey(project, analyzer);
+		fingerprints.remove(key);
+		resources.remove(key);
+		delete(key);
+	}
+
+	/**
+	 * Start a new configuration: forget the fingerprint and the resources of the
+	 * previous one.
+	 */
+	public void startConfiguration(final IProject project, final String analyzer) {
+		final String key = toKey(project, analyzer);
+		fingerprints.remove(key);
+		resources.put(key, ConcurrentHashMap.newKeySet());
+		delete(key);
+	}
+
+	/**
+	 * Record a resource that has been resolved for the configuration of a
+	 * project.
+	 */
+	public void recordResource(final IProject project, final String analyzer, final URL resource) {
+		resources.computeIfAbsent(toKey(project, analyzer), k -> ConcurrentHashMap.newKeySet())
+				.add(resource.toExternalForm());
+	}
+
+	/**
+	 * @return the URLs of the resources resolved during the last configuration.
+	 */
+	public Set<String> getResources(final IProject project, final String analyzer) {
+		final String key = toKey(project, analyzer);
+		if (!resources.containsKey(key) && directory != null) {
+			load(key);
+		}
+		final Set<String> recorded = resources.get(key);
+		return recorded == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(recorded);
+	}
+
+	private String load(final String key) {
+		final Path file = getFile(key);
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		final Properties properties = new Properties();
+		try (InputStream inputStream = Files.newInputStream(file)) {
+			properties.load(inputStream);
+		} catch (final IOException e) {
+			LOG.debug("Could not read {}", file, e);
+			return null;
+		}
+		final String fingerprint = properties.getProperty(FINGERPRINT_KEY);
+		if (fingerprint == null) {
+			return null;
+		}
+		final Set<String> loadedResources = ConcurrentHashMap.newKeySet();
+		for (final String name : properties.stringPropertyNames()) {
+			if (name.startsWith(RESOURCE_KEY_PREFIX)) {
+				loadedResources.add(properties.getProperty(name));
+			}
+		}
+		// don't overwrite what a running configuration has recorded
+		resources.putIfAbsent(key, loadedResources);
+		fingerprints.putIfAbsent(key, fingerprint);
+		return fingerprints.get(key);
+	}
+
+	private void save(final String key, final String fingerprint, final Set<String> resolvedResources) {
+		final Properties properties = new Properties();
+		properties.setProperty("key", key);
+		properties.setProperty(FINGERPRINT_KEY, fingerprint);
+		int index = 0;
+		for (final String resource : resolvedResources) {
+			properties.setProperty(RESOURCE_KEY_PREFIX + index++, resource);
+		}
+		final Path file = getFile(key);
+		try {
+			Files.createDirectories(directory);
+			final Path tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+			try {
+				try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+					properties.store(outputStream, null);
+				}
+				try {
+					Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} catch (final AtomicMoveNotSupportedException e) {
+					Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				Files.deleteIfExists(tempFile);
+			}
+		} catch (final IOException e) {
+			LOG.debug("Could not write {}", file, e);
+		}
+	}
+
+	private void delete(final String key) {
+		if (directory == null) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(getFile(key));
+		} catch (final IOException e) {
+			LOG.debug("Could not delete fingerprint of {}", key, e);
+		}
+	}
+
+	private Path getFile(final String key) {
+		return directory.resolve(Digests.sha256(key) + ".properties");
+	}
+
+	private static String toKey(final IProject project, final String analyzer) {
+		Preconditions.checkNotNull(project);
+		Preconditions.checkNotNull(analyzer);
+		return project.getName() + '|' + analyzer;
+	}
+}
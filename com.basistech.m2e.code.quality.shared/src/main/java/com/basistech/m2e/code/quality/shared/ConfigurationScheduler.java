@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.ICoreRunnable;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobGroup;
+import org.eclipse.core.runtime.jobs.MultiRule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Runs project configurations in background jobs, on a bounded number of
+ * threads.
+ * <p>
+ * Each job holds a scheduling rule for its project only, so different projects
+ * are configured in parallel, while the configurations of one project (by
+ * several analyzers, or after several changes) are serialized. A job that has
+ * not started yet is replaced when the same project and analyzer is scheduled
+ * again.
+ * </p>
+ * <p>
+ * Changing natures needs the rule of the workspace root, so the nature changes
+ * of a job are applied after it by the {@link ProjectUpdateJob}.
+ * </p>
+ *
+ * @see CodeQualityPreferences#PARALLEL_CONFIGURATION_ENABLED
+ * @see CodeQualityPreferences#PARALLEL_CONFIGURATION_THREADS
+ */
+public final class ConfigurationScheduler {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ConfigurationScheduler.class);
+
+	/** the family of all configuration jobs, see {@link Job#belongsTo(Object)} */
+	public static final Object FAMILY = ConfigurationScheduler.class;
+
+	private static final Map<String, Job> PENDING_JOBS = new ConcurrentHashMap<>();
+
+	private static JobGroup jobGroup;
+	private static int jobGroupThreads;
+
+	private ConfigurationScheduler() {
+		// no instantiation.
+	}
+
+	/**
+	 * Schedule the configuration of a project.
+	 *
+	 * @param project  the project to configure.
+	 * @param analyzer the analyzer to configure, together with the project it
+	 *                 identifies the job.
+	 * @param runnable the configuration.
+	 */
+	public static void schedule(final IProject project, final String analyzer, final ICoreRunnable runnable) {
+		Preconditions.checkNotNull(project);
+		Preconditions.checkNotNull(analyzer);
+		Preconditions.checkNotNull(runnable);
+		final String key = project.getName() + '|' + analyzer;
+		final Job job = new Job("Configuring " + analyzer + " for " + project.getName()) {
+
+			@Override
+			protected IStatus run(final IProgressMonitor monitor) {
+				PENDING_JOBS.remove(key, this);
+				try {
+					runnable.run(monitor);
+					return Status.OK_STATUS;
+				} catch (final OperationCanceledException e) {
+					return Status.CANCEL_STATUS;
+				} catch (final CoreException e) {
+					LOG.error("Could not configure {} for {}", analyzer, project.getName(), e);
+					return e.getStatus();
+				}
+			}
+
+			@Override
+			public boolean belongsTo(final Object family) {
+				return FAMILY == family;
+			}
+		};
+		job.setRule(getRule(project));
+		job.setJobGroup(getJobGroup());
+		final Job previous = PENDING_JOBS.put(key, job);
+		if (previous != null && previous.cancel()) {
+			LOG.debug("Replaced pending configuration of {} for {}", analyzer, project.getName());
+		}
+		job.schedule();
+	}
+
+	/**
+	 * Wait for all scheduled configurations to finish.
+	 *
+	 * @param monitor the progress monitor, may be {@code null}.
+	 * @throws InterruptedException if the wait is interrupted.
+	 */
+	public static void join(final IProgressMonitor monitor) throws InterruptedException {
+		Job.getJobManager().join(FAMILY, monitor);
+	}
+
+	static ISchedulingRule getRule(final IProject project) {
+		final IWorkspace workspace = ResourcesPlugin.getWorkspace();
+		return MultiRule.combine(project, workspace.getRuleFactory().modifyRule(project));
+	}
+
+	private static synchronized JobGroup getJobGroup() {
+		final int threads = CodeQualityPreferences.getParallelConfigurationThreads();
+		if (jobGroup == null || threads != jobGroupThreads) {
+			jobGroup = new JobGroup("Code quality configuration", threads, 0);
+			jobGroupThreads = threads;
+		}
+		return jobGroup;
+	}
+}
@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared;
+
+import java.net.URL;
+
+import org.eclipse.core.resources.IProject;
+
+/**
+ * A phase of a project configuration, timed in the configurator trace and, for
+ * the phases that have one, recorded as a JFR event. Opened in a
+ * try-with-resources statement, one scope per phase:
+ *
+ * <pre>
+ * try (ConfigurationScope scope = ConfigurationScope.settingsWrite(executionId, target)) {
+ * 	// ... the phase ...
+ * }
+ * </pre>
+ * <p>
+ * Trace records and events are attributed to the project, analyzer and
+ * execution of the innermost enclosing scope that sets them, on the current
+ * thread. Closing a scope restores the attribution that was current when it
+ * was opened. Scopes must be closed in the reverse order of opening.
+ * </p>
+ *
+ * @see ConfigurationTrace
+ * @see ConfigurationEvents
+ */
+public final class ConfigurationScope implements AutoCloseable {
+
+	/** the outcome of a configuration that has not set one, e.g. on an exception */
+	private static final String FAILED = "failed";
+
+	private static final ThreadLocal<Context> CONTEXT = new ThreadLocal<>();
+
+	private enum Kind {
+		ATTRIBUTION, PHASE, CONFIGURATION, RESOLUTION, REMOTE_FETCH, RULESET_PARSE, SETTINGS_WRITE
+	}
+
+	private final Kind kind;
+	private final String phase;
+	private final Object detail;
+	private final Context previous;
+	private final boolean attributing;
+	private final Object event;
+	private final long start;
+
+	private String outcome = FAILED;
+	private URL resolved;
+	private URL result;
+	private boolean cacheHit;
+	private int responseCode = -1;
+	private long bytes;
+	private int rules = -1;
+
+	private ConfigurationScope(final Kind kind, final String phase, final Object detail, final Context context,
+			final Object event) {
+		this.kind = kind;
+		this.phase = phase;
+		this.detail = detail;
+		this.previous = CONTEXT.get();
+		this.attributing = context != null;
+		if (attributing) {
+			CONTEXT.set(context);
+		}
+		this.event = event;
+		this.start = phase != null ? ConfigurationTrace.start() : 0L;
+	}
+
+	/**
+	 * Attribute the records of the current thread to a project and analyzer,
+	 * without timing anything, e.g. in a job continuing a configuration.
+	 *
+	 * @param project  the project.
+	 * @param analyzer the analyzer, {@code groupId:artifactId} of its maven
+	 *                 plugin.
+	 */
+	public static ConfigurationScope attribute(final IProject project, final String analyzer) {
+		return new ConfigurationScope(Kind.ATTRIBUTION, null, null, new Context(project.getName(), analyzer, null),
+				null);
+	}
+
+	/**
+	 * Attribute the records of the current thread to an execution of the current
+	 * analyzer, without timing anything.
+	 *
+	 * @param executionId the execution id, may be {@code null} to keep the
+	 *                    current attribution.
+	 */
+	public static ConfigurationScope attributeExecution(final String executionId) {
+		return new ConfigurationScope(Kind.ATTRIBUTION, null, null, withExecution(executionId), null);
+	}
+
+	/**
+	 * A phase that is only traced.
+	 *
+	 * @param phase the phase, e.g. {@code fingerprint check}.
+	 */
+	public static ConfigurationScope phase(final String phase) {
+		return phase(phase, null);
+	}
+
+	/**
+	 * A phase that is only traced.
+	 *
+	 * @param phase  the phase, e.g. {@code file copy}.
+	 * @param detail what the phase is working on, e.g. a file name, may be
+	 *               {@code null}.
+	 */
+	public static ConfigurationScope phase(final String phase, final Object detail) {
+		return new ConfigurationScope(Kind.PHASE, phase, detail, null, null);
+	}
+
+	/**
+	 * The configuration of an analyzer for a project, attributing everything in
+	 * it to them. The outcome is {@code failed} unless set with
+	 * {@link #setOutcome(String)}.
+	 *
+	 * @param project  the project.
+	 * @param analyzer the analyzer, {@code groupId:artifactId} of its maven
+	 *                 plugin.
+	 * @param trigger  what started the configuration, e.g. {@code configure}.
+	 */
+	public static ConfigurationScope configuration(final IProject project, final String analyzer,
+			final String trigger) {
+		return new ConfigurationScope(Kind.CONFIGURATION, trigger, null,
+				new Context(project.getName(), analyzer, null), ConfigurationEvents.beginConfiguration(trigger));
+	}
+
+	/**
+	 * The resolution of a resource location, complete it with
+	 * {@link #setResolution(URL, URL, boolean)}.
+	 */
+	static ConfigurationScope resolution(final String location) {
+		return new ConfigurationScope(Kind.RESOLUTION, "resource resolution", location, null,
+				ConfigurationEvents.beginResolution());
+	}
+
+	/**
+	 * The download or revalidation of a remote resource, complete it with
+	 * {@link #setResponse(int, long)}.
+	 */
+	static ConfigurationScope remoteFetch(final URL url) {
+		return new ConfigurationScope(Kind.REMOTE_FETCH, "remote fetch", url, null,
+				ConfigurationEvents.beginRemoteFetch());
+	}
+
+	/**
+	 * The parsing of a ruleset, complete it with {@link #setRules(int)}.
+	 *
+	 * @param executionId the execution the ruleset belongs to, may be
+	 *                    {@code null}.
+	 * @param location    the ruleset location.
+	 */
+	public static ConfigurationScope rulesetParse(final String executionId, final String location) {
+		return new ConfigurationScope(Kind.RULESET_PARSE, "ruleset parse", location, withExecution(executionId),
+				ConfigurationEvents.beginRulesetParse());
+	}
+
+	/**
+	 * The persistence of the settings of an Eclipse analyzer plugin.
+	 *
+	 * @param executionId the execution the settings belong to, may be
+	 *                    {@code null}.
+	 * @param target      what is written, e.g. a file name.
+	 */
+	public static ConfigurationScope settingsWrite(final String executionId, final String target) {
+		return new ConfigurationScope(Kind.SETTINGS_WRITE, "settings persistence", target,
+				withExecution(executionId), ConfigurationEvents.beginSettingsWrite());
+	}
+
+	private static Context withExecution(final String executionId) {
+		if (executionId == null) {
+			return null;
+		}
+		final Context context = CONTEXT.get();
+		return context != null ? new Context(context.project, context.analyzer, executionId)
+				: new Context(null, null, executionId);
+	}
+
+	/**
+	 * @return the attribution of the current thread, or {@code null}.
+	 */
+	static Context getContext() {
+		return CONTEXT.get();
+	}
+
+	/**
+	 * @param outcome what the configuration did, e.g. {@code skipped}.
+	 */
+	public void setOutcome(final String outcome) {
+		this.outcome = outcome;
+	}
+
+	/**
+	 * @param resolved the resolved location, before any remote resource has been
+	 *                 replaced by its local copy.
+	 * @param result   what the location has been resolved to.
+	 * @param cacheHit whether the resolution came from the resolution cache.
+	 */
+	void setResolution(final URL resolved, final URL result, final boolean cacheHit) {
+		this.resolved = resolved;
+		this.result = result;
+		this.cacheHit = cacheHit;
+	}
+
+	/**
+	 * @param responseCode the HTTP response code, or {@code -1} if there has been
+	 *                     no response.
+	 * @param bytes        the number of bytes downloaded.
+	 */
+	void setResponse(final int responseCode, final long bytes) {
+		this.responseCode = responseCode;
+		this.bytes = bytes;
+	}
+
+	/**
+	 * @param rules the number of rules found, {@code -1} if the ruleset could not
+	 *              be parsed.
+	 */
+	public void setRules(final int rules) {
+		this.rules = rules;
+	}
+
+	@Override
+	public void close() {
+		try {
+			if (phase != null) {
+				ConfigurationTrace.end(phase, detail, start);
+			}
+			if (event != null) {
+				commit();
+			}
+		} finally {
+			if (attributing) {
+				if (previous == null) {
+					CONTEXT.remove();
+				} else {
+					CONTEXT.set(previous);
+				}
+			}
+		}
+	}
+
+	private void commit() {
+		switch (kind) {
+		case CONFIGURATION:
+			ConfigurationEvents.commitConfiguration(event, outcome);
+			break;
+		case RESOLUTION:
+			ConfigurationEvents.commitResolution(event, (String) detail, resolved, result, cacheHit);
+			break;
+		case REMOTE_FETCH:
+			ConfigurationEvents.commitRemoteFetch(event, (URL) detail, responseCode, bytes);
+			break;
+		case RULESET_PARSE:
+			ConfigurationEvents.commitRulesetParse(event, (String) detail, rules);
+			break;
+		case SETTINGS_WRITE:
+			ConfigurationEvents.commitSettingsWrite(event, (String) detail);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * The project, analyzer and execution id records are attributed to, each may
+	 * be {@code null}.
+	 */
+	static final class Context {
+
+		final String project;
+		final String analyzer;
+		final String executionId;
+
+		Context(final String project, final String analyzer, final String executionId) {
+			this.project = project;
+			this.analyzer = analyzer;
+			this.executionId = executionId;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared;
+
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.osgi.service.debug.DebugOptions;
+import org.eclipse.osgi.service.debug.DebugOptionsListener;
+import org.eclipse.osgi.service.debug.DebugTrace;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkUtil;
+
+/**
+ * Timing of the phases of a project configuration, written to the Eclipse
+ * trace when the debug options
+ * {@code com.basistech.m2e.code.quality.shared/debug} and
+ * {@code com.basistech.m2e.code.quality.shared/debug/configurator} are set, see
+ * the {@code .options} file of the shared bundle.
+ * <p>
+ * Phases are timed by opening a {@link ConfigurationScope}, and records are
+ * tagged with the project and analyzer it attributes them to. When tracing is
+ * disabled, every method returns after reading a single volatile flag, without
+ * taking the time or building any message.
+ * </p>
+ */
+final class ConfigurationTrace {
+
+	/** the option enabling the configurator trace */
+	static final String OPTION_CONFIGURATOR = CodeQualityPreferences.PLUGIN_ID + "/debug/configurator";
+
+	private static final String OPTION_DEBUG = CodeQualityPreferences.PLUGIN_ID + "/debug";
+
+	private static volatile boolean enabled;
+	private static volatile DebugTrace trace;
+
+	static {
+		final Bundle bundle = FrameworkUtil.getBundle(ConfigurationTrace.class);
+		final BundleContext context = bundle != null ? bundle.getBundleContext() : null;
+		if (context != null) {
+			final Hashtable<String, String> properties = new Hashtable<>();
+			properties.put(DebugOptions.LISTENER_SYMBOLICNAME, CodeQualityPreferences.PLUGIN_ID);
+			// called right away with the current options, and on every change
+			context.registerService(DebugOptionsListener.class, ConfigurationTrace::optionsChanged, properties);
+		}
+	}
+
+	private ConfigurationTrace() {
+		// no instantiation.
+	}
+
+	private static void optionsChanged(final DebugOptions options) {
+		trace = options.newDebugTrace(CodeQualityPreferences.PLUGIN_ID, ConfigurationTrace.class);
+		enabled = options.isDebugEnabled() && options.getBooleanOption(OPTION_DEBUG, false)
+				&& options.getBooleanOption(OPTION_CONFIGURATOR, false);
+	}
+
+	/**
+	 * @return the start time of a phase, or {@code 0} if tracing is disabled.
+	 */
+	static long start() {
+		return enabled ? System.nanoTime() : 0L;
+	}
+
+	/**
+	 * Record the end of a phase.
+	 *
+	 * @param phase  the phase.
+	 * @param detail what the phase has been working on, e.g. a file name, may be
+	 *               {@code null}.
+	 * @param start  the value returned by {@link #start()}.
+	 */
+	static void end(final String phase, final Object detail, final long start) {
+		if (!enabled || start == 0L) {
+			// disabled, or enabled in the middle of the phase
+			return;
+		}
+		final long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+		final StringBuilder message = new StringBuilder();
+		final ConfigurationScope.Context context = ConfigurationScope.getContext();
+		if (context != null && context.project != null) {
+			message.append('[').append(context.project).append(' ').append(context.analyzer).append("] ");
+		}
+		message.append(phase);
+		if (detail != null) {
+			message.append(" (").append(detail).append(')');
+		}
+		message.append(": ").append(micros / 1000).append('.').append(String.format("%03d", micros % 1000))
+				.append(" ms");
+		trace.trace(OPTION_CONFIGURATOR, message.toString());
+	}
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 digests as hex strings, for file names and fingerprints derived from
+ * content.
+ */
+public final class Digests {
+
+	private Digests() {
+		// no instantiation.
+	}
+
+	/**
+	 * @return a new SHA-256 digest.
+	 */
+	public static MessageDigest newSha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param content the content to digest.
+	 * @return the SHA-256 digest of the content, as a lower case hex string.
+	 */
+	public static String sha256(final byte[] content) {
+		return toHex(newSha256().digest(content));
+	}
+
+	/**
+	 * @param value the value to digest, encoded as UTF-8.
+	 * @return the SHA-256 digest of the value, as a lower case hex string.
+	 */
+	public static String sha256(final String value) {
+		return sha256(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param bytes the bytes, e.g. a digest.
+	 * @return the bytes as a lower case hex string.
+	 */
+	public static String toHex(final byte[] bytes) {
+		final StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (final byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,308 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Copies resources to files only if their content has changed, with constant
+ * memory use.
+ * <p>
+ * The source is compared with the existing file chunk by chunk. At the first
+ * difference, the matching part of the file, the rest of the source and all
+ * further chunks are written to a temporary file next to it, which then
+ * replaces the file atomically, so a failed copy leaves the file as it was.
+ * For every written file a sidecar digest (together with the path, size and
+ * modification time of the file) is kept in a separate directory; as long as
+ * the file has not been touched, a source that can be opened twice
+ * ({@link #copyIfChanged(URL, Path)}) is only compared against that digest,
+ * without reading the file at all.
+ * </p>
+ */
+public final class IncrementalFileCopy {
+
+	private static final Logger LOG = LoggerFactory.getLogger(IncrementalFileCopy.class);
+
+	private static final int CHUNK_SIZE = 8192;
+
+	private static IncrementalFileCopy instance;
+
+	/** where to keep the sidecar digests, {@code null} to not keep any */
+	private final Path digestDirectory;
+
+	/**
+	 * @param digestDirectory the directory to keep the sidecar digests in, or
+	 *                        {@code null} to always compare with the file.
+	 */
+	public IncrementalFileCopy(final Path digestDirectory) {
+		this.digestDirectory = digestDirectory;
+	}
+
+	/**
+	 * @return an instance keeping its digests in the state location of the
+	 *         shared bundle.
+	 */
+	public static synchronized IncrementalFileCopy getDefault() {
+		if (instance == null) {
+			instance = new IncrementalFileCopy(
+					CodeQualityPreferences.getStateLocation().append("copy-digests").toFile().toPath());
+		}
+		return instance;
+	}
+
+	/**
+	 * Copy a resource to a file unless the file already has the same content.
+	 *
+	 * @param source the resource to copy, opened at most twice.
+	 * @param output the file to write.
+	 * @throws IOException if reading or writing fails.
+	 */
+	public void copyIfChanged(final URL source, final Path output) throws IOException {
+		Preconditions.checkNotNull(source);
+		Preconditions.checkNotNull(output);
+		final String recordedDigest = getRecordedDigest(output);
+		if (recordedDigest != null) {
+			try (DigestInputStream inputStream = new DigestInputStream(source.openStream(), Digests.newSha256())) {
+				inputStream.transferTo(OutputStream.nullOutputStream());
+				if (recordedDigest.equals(Digests.toHex(inputStream.getMessageDigest().digest()))) {
+					return;
+				}
+			}
+		}
+		try (InputStream inputStream = source.openStream()) {
+			copyIfChanged(inputStream, output);
+		}
+	}
+
+	/**
+	 * Copy a stream to a file unless the file already has the same content. The
+	 * stream is consumed, but not closed.
+	 *
+	 * @param input  the content to copy.
+	 * @param output the file to write.
+	 * @throws IOException if reading or writing fails.
+	 */
+	public void copyIfChanged(final InputStream input, final Path output) throws IOException {
+		Preconditions.checkNotNull(input);
+		Preconditions.checkNotNull(output);
+		final DigestInputStream source = new DigestInputStream(input, Digests.newSha256());
+		if (!Files.exists(output)) {
+			write(output, null, 0, null, 0, source);
+		} else {
+			final byte[] sourceChunk = new byte[CHUNK_SIZE];
+			final byte[] targetChunk = new byte[CHUNK_SIZE];
+			long matched = 0;
+			int sourceLength;
+			try (InputStream target = Files.newInputStream(output)) {
+				while (true) {
+					sourceLength = readChunk(source, sourceChunk);
+					final int targetLength = readChunk(target, targetChunk);
+					if (sourceLength != targetLength
+							|| !Arrays.equals(sourceChunk, 0, sourceLength, targetChunk, 0, targetLength)) {
+						break;
+					}
+					if (sourceLength == 0) {
+						// same content
+						recordDigest(output, source.getMessageDigest());
+						return;
+					}
+					matched += sourceLength;
+				}
+			}
+			LOG.debug("{} differs after {} bytes, rewriting", output, matched);
+			write(output, output, matched, sourceChunk, sourceLength, source);
+		}
+		recordDigest(output, source.getMessageDigest());
+	}
+
+	/**
+	 * Write a file through a temporary file in the same directory, which replaces
+	 * it when complete.
+	 *
+	 * @param output       the file to write.
+	 * @param prefix       the file to take the first bytes from, may be
+	 *                     {@code null}.
+	 * @param prefixLength how many bytes to take from the prefix file.
+	 * @param chunk        the bytes to write after the prefix, may be
+	 *                     {@code null}.
+	 * @param chunkLength  how many bytes of the chunk to write.
+	 * @param rest         the content to write last.
+	 */
+	private static void write(final Path output, final Path prefix, final long prefixLength, final byte[] chunk,
+			final int chunkLength, final InputStream rest) throws IOException {
+		final Path directory = output.toAbsolutePath().getParent();
+		final Path tempFile = Files.createTempFile(directory, output.getFileName().toString(), ".tmp");
+		try {
+			try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+				if (prefix != null && prefixLength > 0) {
+					try (InputStream prefixStream = Files.newInputStream(prefix)) {
+						copy(prefixStream, outputStream, prefixLength);
+					}
+				}
+				if (chunk != null) {
+					outputStream.write(chunk, 0, chunkLength);
+				}
+				rest.transferTo(outputStream);
+			}
+			move(tempFile, output);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	private static void copy(final InputStream input, final OutputStream output, final long length)
+			throws IOException {
+		final byte[] buffer = new byte[CHUNK_SIZE];
+		long remaining = length;
+		while (remaining > 0) {
+			final int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+			if (read < 0) {
+				throw new IOException("File changed while copying");
+			}
+			output.write(buffer, 0, read);
+			remaining -= read;
+		}
+	}
+
+	private static void move(final Path source, final Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Forget the sidecar digest of a file, e.g. because the file is deleted.
+	 *
+	 * @param output the file.
+	 */
+	public void forget(final Path output) {
+		if (digestDirectory == null) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(getSidecar(output));
+		} catch (final IOException e) {
+			LOG.debug("Could not delete digest of {}", output, e);
+		}
+	}
+
+	/**
+	 * Delete the sidecar digests of files that no longer exist, e.g. copies in a
+	 * build directory that has been cleaned.
+	 *
+	 * @return the number of digests deleted.
+	 */
+	public int removeOrphanedDigests() {
+		if (digestDirectory == null || !Files.isDirectory(digestDirectory)) {
+			return 0;
+		}
+		int removed = 0;
+		try (DirectoryStream<Path> sidecars = Files.newDirectoryStream(digestDirectory)) {
+			for (final Path sidecar : sidecars) {
+				final List<String> lines = Files.readAllLines(sidecar, StandardCharsets.UTF_8);
+				// digests without a path are from an earlier version, and never used
+				if (lines.size() != 4 || !Files.exists(Paths.get(lines.get(0)))) {
+					Files.deleteIfExists(sidecar);
+					++removed;
+				}
+			}
+		} catch (final IOException | InvalidPathException e) {
+			LOG.debug("Could not remove orphaned digests in {}", digestDirectory, e);
+		}
+		return removed;
+	}
+
+	private static int readChunk(final InputStream inputStream, final byte[] chunk) throws IOException {
+		int length = 0;
+		while (length < chunk.length) {
+			final int read = inputStream.read(chunk, length, chunk.length - length);
+			if (read < 0) {
+				break;
+			}
+			length += read;
+		}
+		return length;
+	}
+
+	private String getRecordedDigest(final Path output) {
+		if (digestDirectory == null || !Files.isRegularFile(output)) {
+			return null;
+		}
+		final Path sidecar = getSidecar(output);
+		try {
+			if (!Files.isRegularFile(sidecar)) {
+				return null;
+			}
+			final List<String> lines = Files.readAllLines(sidecar, StandardCharsets.UTF_8);
+			if (lines.size() != 4 || !lines.get(1).equals(Long.toString(Files.size(output)))
+					|| !lines.get(2).equals(Long.toString(Files.getLastModifiedTime(output).toMillis()))) {
+				// the file has been modified since we wrote it
+				return null;
+			}
+			return lines.get(3);
+		} catch (final IOException e) {
+			LOG.debug("Could not read digest of {}", output, e);
+			return null;
+		}
+	}
+
+	private void recordDigest(final Path output, final MessageDigest digest) {
+		if (digestDirectory == null) {
+			return;
+		}
+		final Path sidecar = getSidecar(output);
+		try {
+			Files.createDirectories(digestDirectory);
+			Files.write(sidecar,
+					Arrays.asList(toKey(output), Long.toString(Files.size(output)),
+							Long.toString(Files.getLastModifiedTime(output).toMillis()), Digests.toHex(digest.digest())),
+					StandardCharsets.UTF_8);
+		} catch (final IOException e) {
+			LOG.debug("Could not record digest of {}", output, e);
+		}
+	}
+
+	private Path getSidecar(final Path output) {
+		return digestDirectory.resolve(Digests.sha256(toKey(output)));
+	}
+
+	private static String toKey(final Path output) {
+		return output.toAbsolutePath().normalize().toString();
+	}
+
+}
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Deletes the markers of a disabled analyzer in the background.
+ * <p>
+ * Projects can have tens of thousands of analyzer markers, deleting them on
+ * the configuration thread blocks the import. The markers are deleted in
+ * batches, each in its own workspace operation holding only the marker rule of
+ * the project, so the job can be cancelled in between and does not block other
+ * work for long. A project that has the nature of the analyzer again by the time
+ * the job gets to it is left alone, its builder owns the markers again.
+ * </p>
+ * <p>
+ * Schedule the cleanup only after the nature has been removed, see
+ * {@link AbstractMavenPluginProjectConfigurator#deleteMarkers(IProject, String...)}.
+ * </p>
+ */
+public final class MarkerCleanupJob extends Job {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MarkerCleanupJob.class);
+
+	/** the family of the cleanup job, see {@link Job#belongsTo(Object)} */
+	public static final Object FAMILY = MarkerCleanupJob.class;
+
+	private static final int BATCH_SIZE = 1000;
+
+	private static final MarkerCleanupJob INSTANCE = new MarkerCleanupJob();
+
+	private static final class Cleanup {
+
+		private final IProject project;
+		private final String natureId;
+		private final Set<String> markerTypes = new LinkedHashSet<>();
+
+		Cleanup(final IProject project, final String natureId) {
+			this.project = project;
+			this.natureId = natureId;
+		}
+	}
+
+	/** guarded by itself, keyed by project and nature */
+	private final Map<String, Cleanup> pendingCleanups = new LinkedHashMap<>();
+
+	private MarkerCleanupJob() {
+		super("Deleting code quality markers");
+	}
+
+	/**
+	 * Schedule the deletion of the markers of an analyzer, including their
+	 * subtypes.
+	 *
+	 * @param project     the project.
+	 * @param natureId    the nature of the analyzer; if the project has it again
+	 *                    when the job runs, nothing is deleted.
+	 * @param markerTypes the marker types to delete.
+	 */
+	public static void schedule(final IProject project, final String natureId, final String... markerTypes) {
+		Preconditions.checkNotNull(project);
+		Preconditions.checkNotNull(natureId);
+		INSTANCE.add(project, natureId, markerTypes);
+		INSTANCE.schedule();
+	}
+
+	/**
+	 * Wait for all scheduled deletions to finish.
+	 *
+	 * @param monitor the progress monitor, may be {@code null}.
+	 * @throws InterruptedException if the wait is interrupted.
+	 */
+	public static void join(final IProgressMonitor monitor) throws InterruptedException {
+		Job.getJobManager().join(FAMILY, monitor);
+	}
+
+	private void add(final IProject project, final String natureId, final String... markerTypes) {
+		final String key = project.getName() + '|' + natureId;
+		synchronized (pendingCleanups) {
+			pendingCleanups.computeIfAbsent(key, k -> new Cleanup(project, natureId)).markerTypes
+					.addAll(Arrays.asList(markerTypes));
+		}
+	}
+
+	@Override
+	public boolean belongsTo(final Object family) {
+		return FAMILY == family;
+	}
+
+	@Override
+	protected IStatus run(final IProgressMonitor monitor) {
+		final Map<String, Cleanup> cleanups;
+		synchronized (pendingCleanups) {
+			cleanups = new LinkedHashMap<>(pendingCleanups);
+			pendingCleanups.clear();
+		}
+		final SubMonitor subMonitor = SubMonitor.convert(monitor, cleanups.size());
+		final long start = System.nanoTime();
+		int deleted = 0;
+		final Set<String> handled = new HashSet<>();
+		try {
+			for (final Map.Entry<String, Cleanup> entry : cleanups.entrySet()) {
+				deleted += cleanup(entry.getValue(), start, deleted, subMonitor.split(1));
+				handled.add(entry.getKey());
+			}
+		} catch (final OperationCanceledException e) {
+			LOG.debug("Marker cleanup cancelled after {} markers", deleted);
+			requeue(cleanups, handled);
+			return Status.CANCEL_STATUS;
+		} catch (final CoreException e) {
+			LOG.error("Could not delete markers", e);
+			requeue(cleanups, handled);
+			return e.getStatus();
+		}
+		LOG.debug("Deleted {} markers in {} ms", deleted,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Keep what has not been cleaned up, before anything added in the meantime.
+	 * It is deleted the next time the job is scheduled.
+	 */
+	private void requeue(final Map<String, Cleanup> cleanups, final Set<String> handled) {
+		synchronized (pendingCleanups) {
+			final Map<String, Cleanup> newer = new LinkedHashMap<>(pendingCleanups);
+			pendingCleanups.clear();
+			for (final Map.Entry<String, Cleanup> entry : cleanups.entrySet()) {
+				if (!handled.contains(entry.getKey())) {
+					pendingCleanups.put(entry.getKey(), entry.getValue());
+				}
+			}
+			for (final Cleanup cleanup : newer.values()) {
+				add(cleanup.project, cleanup.natureId, cleanup.markerTypes.toArray(new String[0]));
+			}
+		}
+	}
+
+	private static int cleanup(final Cleanup cleanup, final long start, final int deletedBefore,
+			final IProgressMonitor monitor) throws CoreException {
+		final IProject project = cleanup.project;
+		if (!project.isAccessible() || project.hasNature(cleanup.natureId)) {
+			return 0;
+		}
+		final IWorkspace workspace = ResourcesPlugin.getWorkspace();
+		final SubMonitor subMonitor = SubMonitor.convert(monitor, cleanup.markerTypes.size());
+		int deleted = 0;
+		for (final String markerType : cleanup.markerTypes) {
+			final IMarker[] markers = project.findMarkers(markerType, true, IResource.DEPTH_INFINITE);
+			final SubMonitor typeMonitor = subMonitor.split(1).setWorkRemaining(markers.length);
+			for (int from = 0; from < markers.length; from += BATCH_SIZE) {
+				final IMarker[] batch = Arrays.copyOfRange(markers, from,
+						Math.min(from + BATCH_SIZE, markers.length));
+				workspace.run(runMonitor -> workspace.deleteMarkers(batch),
+						workspace.getRuleFactory().markerRule(project), IWorkspace.AVOID_UPDATE,
+						typeMonitor.split(batch.length));
+				deleted += batch.length;
+				typeMonitor.subTask(String.format("%s: %d of %d markers deleted, %d in total (%d ms)",
+						project.getName(), from + batch.length, markers.length, deletedBefore + deleted,
+						TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+			}
+		}
+		return deleted;
+	}
+}
@@ -17,7 +17,11 @@
 package com.basistech.m2e.code.quality.shared;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.apache.maven.plugin.MojoExecution;
 import org.eclipse.core.runtime.CoreException;
@@ -32,6 +36,14 @@ public class MavenPluginWrapper {
 
 	private static final Logger LOG = LoggerFactory.getLogger(MavenPluginWrapper.class);
 
+	/**
+	 * Executions found per facade and plugin/goals. m2e creates a new facade
+	 * whenever a project is refreshed, so a facade identifies a generation of the
+	 * project and its executions never change.
+	 */
+	private static final Map<IMavenProjectFacade, Map<String, List<MojoExecution>>> EXECUTIONS_CACHE =
+			new WeakHashMap<>();
+
 	private final String key; // for toString
 	private final List<MojoExecution> executions;
 
@@ -89,12 +101,32 @@ public class MavenPluginWrapper {
 			final String pluginArtifactId, final String[] pluginGoal, final IMavenProjectFacade mavenProjectFacade)
 			throws CoreException {
 		Preconditions.checkNotNull(mavenProjectFacade);
-		final List<MojoExecution> executions = findMojoExecutions(monitor, mavenProjectFacade, pluginGroupId,
+		final List<MojoExecution> executions = getCachedMojoExecutions(monitor, mavenProjectFacade, pluginGroupId,
 				pluginArtifactId, pluginGoal);
 		final String key = pluginGroupId + ":" + pluginArtifactId;
 		return new MavenPluginWrapper(key, executions);
 	}
 
+	private static List<MojoExecution> getCachedMojoExecutions(final IProgressMonitor monitor,
+			final IMavenProjectFacade mavenProjectFacade, final String pluginGroupId, final String pluginArtifactId,
+			final String[] pluginGoal) throws CoreException {
+		final String cacheKey = pluginGroupId + ":" + pluginArtifactId + ":"
+				+ (pluginGoal == null ? "*" : String.join(",", pluginGoal));
+		synchronized (EXECUTIONS_CACHE) {
+			final Map<String, List<MojoExecution>> facadeExecutions = EXECUTIONS_CACHE.get(mavenProjectFacade);
+			if (facadeExecutions != null && facadeExecutions.containsKey(cacheKey)) {
+				return facadeExecutions.get(cacheKey);
+			}
+		}
+		// outside the lock, this may calculate the lifecycle mapping
+		final List<MojoExecution> executions = Collections.unmodifiableList(
+				findMojoExecutions(monitor, mavenProjectFacade, pluginGroupId, pluginArtifactId, pluginGoal));
+		synchronized (EXECUTIONS_CACHE) {
+			EXECUTIONS_CACHE.computeIfAbsent(mavenProjectFacade, f -> new HashMap<>()).put(cacheKey, executions);
+		}
+		return executions;
+	}
+
 	@Override
 	public String toString() {
 		String s = "[MavenPluginWrapper " + key;
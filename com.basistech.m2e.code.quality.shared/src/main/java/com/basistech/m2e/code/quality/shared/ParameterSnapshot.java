@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.codehaus.plexus.configuration.PlexusConfiguration;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Immutable snapshot of the evaluated parameters of a mojo execution.
+ * <p>
+ * A snapshot holds a value for each parameter declared by a translator (see
+ * {@link AbstractMavenPluginConfigurationTranslator#getDeclaredParameters()}),
+ * parameters without a value are simply absent. Array values are copied on the
+ * way in and out, so a snapshot can be handed to other threads. Two snapshots
+ * are equal if they hold equal values for the same parameters, which makes them
+ * usable for change detection.
+ * </p>
+ */
+public final class ParameterSnapshot {
+
+	private final Map<String, Class<?>> declaredParameters;
+	private final Map<String, Object> values;
+	private final int hashCode;
+
+	ParameterSnapshot(final Map<String, Class<?>> declaredParameters, final Map<String, Object> values) {
+		this.declaredParameters = ImmutableMap.copyOf(declaredParameters);
+		final ImmutableMap.Builder<String, Object> builder = ImmutableMap.builder();
+		int hash = 0;
+		for (final Map.Entry<String, Object> entry : values.entrySet()) {
+			if (entry.getValue() != null) {
+				final Object value = copy(entry.getValue());
+				builder.put(entry.getKey(), value);
+				hash += entry.getKey().hashCode() ^ Arrays.deepHashCode(new Object[] { comparable(value) });
+			}
+		}
+		this.values = builder.build();
+		this.hashCode = hash;
+	}
+
+	/**
+	 * @param parameter the parameter name.
+	 * @param asType    the declared type of the parameter.
+	 * @return the value, or {@code null} if the parameter has no value.
+	 * @throws IllegalArgumentException if the parameter has not been declared with
+	 *                                  that type.
+	 */
+	public <T> T get(final String parameter, final Class<T> asType) {
+		Preconditions.checkArgument(asType.equals(declaredParameters.get(parameter)),
+				"parameter %s has not been declared as %s", parameter, asType.getName());
+		return asType.cast(copy(values.get(parameter)));
+	}
+
+	/**
+	 * @param parameter    the parameter name.
+	 * @param asType       the declared type of the parameter.
+	 * @param defaultValue the value to use if the parameter has no value.
+	 * @return the value, or the default value if the parameter has no value.
+	 */
+	public <T> T get(final String parameter, final Class<T> asType, final T defaultValue) {
+		final T value = get(parameter, asType);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * @param parameter the parameter name.
+	 * @return whether the parameter has a value.
+	 */
+	public boolean contains(final String parameter) {
+		return values.containsKey(parameter);
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ParameterSnapshot)) {
+			return false;
+		}
+		final ParameterSnapshot other = (ParameterSnapshot) obj;
+		if (hashCode != other.hashCode || !values.keySet().equals(other.values.keySet())) {
+			return false;
+		}
+		for (final Map.Entry<String, Object> entry : values.entrySet()) {
+			if (!Arrays.deepEquals(new Object[] { comparable(entry.getValue()) },
+					new Object[] { comparable(other.values.get(entry.getKey())) })) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("ParameterSnapshot{");
+		String separator = "";
+		for (final Map.Entry<String, Object> entry : values.entrySet()) {
+			sb.append(separator).append(entry.getKey()).append('=');
+			if (entry.getValue() instanceof Object[]) {
+				sb.append(Arrays.deepToString((Object[]) entry.getValue()));
+			} else {
+				sb.append(entry.getValue());
+			}
+			separator = ", ";
+		}
+		return sb.append('}').toString();
+	}
+
+	private static Object copy(final Object value) {
+		if (value instanceof Object[]) {
+			return ((Object[]) value).clone();
+		}
+		return value;
+	}
+
+	/**
+	 * Plexus configurations have no value based equality, use their XML form.
+	 */
+	private static Object comparable(final Object value) {
+		if (value instanceof PlexusConfiguration) {
+			return value.toString();
+		}
+		return value;
+	}
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A bounded, thread-safe cache of the translations of maven includes/excludes
+ * patterns into the pattern dialect of an analyzer, and of compiled regular
+ * expressions, shared by all projects and analyzers.
+ * <p>
+ * Translations are keyed by dialect and pattern, as each analyzer has its own
+ * translation. Both caches evict the least recently used entry once they are
+ * full. The translation or compilation itself happens outside the lock, two
+ * threads missing the same entry may both compute it.
+ * </p>
+ */
+public final class PatternCache {
+
+	private static final int DEFAULT_MAX_ENTRIES = 1024;
+
+	private static final PatternCache INSTANCE = new PatternCache();
+
+	private final Map<Key, String> translations;
+	private final Map<String, Pattern> compiled;
+	private final AtomicLong translationHits = new AtomicLong();
+	private final AtomicLong translationMisses = new AtomicLong();
+	private final AtomicLong compileHits = new AtomicLong();
+	private final AtomicLong compileMisses = new AtomicLong();
+
+	PatternCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * A cache of its own, most code should share the {@link #getInstance()
+	 * instance}.
+	 *
+	 * @param maxEntries the maximum number of translations, and of compiled
+	 *                   patterns.
+	 */
+	public PatternCache(final int maxEntries) {
+		Preconditions.checkArgument(maxEntries > 0, "maxEntries must be positive");
+		this.translations = createLruMap(maxEntries);
+		this.compiled = createLruMap(maxEntries);
+	}
+
+	private static <K, V> Map<K, V> createLruMap(final int maxEntries) {
+		return new LinkedHashMap<K, V>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	public static PatternCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Translate a pattern, or return the cached translation.
+	 *
+	 * @param dialect     identifies the translation, e.g. {@code checkstyle}.
+	 * @param pattern     the maven includes/excludes pattern.
+	 * @param translation translates the pattern, must not have side effects.
+	 * @return the translated pattern.
+	 */
+	public String translate(final String dialect, final String pattern,
+			final Function<String, String> translation) {
+		Preconditions.checkNotNull(dialect);
+		Preconditions.checkNotNull(pattern);
+		final Key key = new Key(dialect, pattern);
+		synchronized (translations) {
+			final String cached = translations.get(key);
+			if (cached != null) {
+				translationHits.incrementAndGet();
+				return cached;
+			}
+		}
+		translationMisses.incrementAndGet();
+		final String translated = translation.apply(pattern);
+		synchronized (translations) {
+			translations.put(key, translated);
+		}
+		return translated;
+	}
+
+	/**
+	 * Compile a regular expression, or return the cached {@link Pattern}.
+	 *
+	 * @param regex the regular expression.
+	 * @return the compiled pattern, safe to share between threads.
+	 */
+	public Pattern compile(final String regex) {
+		Preconditions.checkNotNull(regex);
+		synchronized (compiled) {
+			final Pattern cached = compiled.get(regex);
+			if (cached != null) {
+				compileHits.incrementAndGet();
+				return cached;
+			}
+		}
+		compileMisses.incrementAndGet();
+		final Pattern pattern = Pattern.compile(regex);
+		synchronized (compiled) {
+			compiled.put(regex, pattern);
+		}
+		return pattern;
+	}
+
+	/**
+	 * Drop all cached translations and patterns, the statistics are kept.
+	 */
+	public void clear() {
+		synchronized (translations) {
+			translations.clear();
+		}
+		synchronized (compiled) {
+			compiled.clear();
+		}
+	}
+
+	public int getTranslationCount() {
+		synchronized (translations) {
+			return translations.size();
+		}
+	}
+
+	public int getCompiledCount() {
+		synchronized (compiled) {
+			return compiled.size();
+		}
+	}
+
+	public long getHitCount() {
+		return translationHits.get() + compileHits.get();
+	}
+
+	public long getMissCount() {
+		return translationMisses.get() + compileMisses.get();
+	}
+
+	/**
+	 * @return the share of the lookups that were served from the cache, between
+	 *         {@code 0} and {@code 1}, or {@code NaN} if there have been none.
+	 */
+	public double getHitRate() {
+		final long hits = getHitCount();
+		return (double) hits / (hits + getMissCount());
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"[PatternCache translations=%d (hits=%d, misses=%d), compiled=%d (hits=%d, misses=%d), hitRate=%.2f]",
+				getTranslationCount(), translationHits.get(), translationMisses.get(), getCompiledCount(),
+				compileHits.get(), compileMisses.get(), getHitRate());
+	}
+
+	private static final class Key {
+
+		private final String dialect;
+		private final String pattern;
+
+		Key(final String dialect, final String pattern) {
+			this.dialect = dialect;
+			this.pattern = pattern;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * dialect.hashCode() + pattern.hashCode();
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return dialect.equals(other.dialect) && pattern.equals(other.pattern);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.plugin.BuildPluginManager;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.PluginManagerException;
+import org.apache.maven.plugin.PluginResolutionException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.classworlds.realm.ClassRealm;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.m2e.core.embedder.IMaven;
+import org.eclipse.m2e.core.internal.embedder.MavenImpl;
+import org.osgi.framework.FrameworkUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the {@link ClassRealm} of a maven plugin, so that the execution
+ * context and the realm lookup are only needed once per distinct plugin
+ * configuration instead of once per module and analyzer.
+ * <p>
+ * Realms are keyed by the plugin descriptor id and the plugin dependencies. A
+ * cached realm is dropped once maven has disposed it, which is what happens
+ * when m2e flushes its plugin realm cache, e.g. because a workspace project
+ * contributing to the plugin classpath has changed.
+ * </p>
+ */
+@SuppressWarnings("restriction")
+public final class PluginRealmCache {
+
+	private static final Logger LOG = LoggerFactory.getLogger(PluginRealmCache.class);
+
+	private static final Map<String, ClassRealm> REALMS = new ConcurrentHashMap<>();
+
+	private PluginRealmCache() {
+		// no instantiation.
+	}
+
+	/**
+	 * Get the class realm of the plugin of the given execution, creating it if
+	 * necessary.
+	 *
+	 * @param maven         the {@link IMaven} instance.
+	 * @param mavenProject  the project the execution belongs to.
+	 * @param mojoExecution the mojo execution.
+	 * @return the plugin realm.
+	 * @throws CoreException if the plugin realm could not be set up.
+	 */
+	public static ClassRealm getPluginRealm(final IMaven maven, final MavenProject mavenProject,
+			final MojoExecution mojoExecution) throws CoreException {
+		final String key = toKey(mojoExecution);
+		final ClassRealm cachedRealm = REALMS.get(key);
+		if (cachedRealm != null) {
+			if (isAlive(cachedRealm)) {
+				return cachedRealm;
+			}
+			LOG.debug("Plugin realm {} has been disposed, looking it up again", cachedRealm.getId());
+			REALMS.remove(key, cachedRealm);
+			ResourceResolver.getResolutionCache().invalidate(cachedRealm);
+			PluginRealmResourceIndex.invalidate(cachedRealm);
+		}
+
+		final ClassRealm pluginRealm = maven.createExecutionContext().execute(mavenProject, (context, pm) -> {
+			try {
+				// we want just the classpath of the Mojo to load resources from it
+				final BuildPluginManager buildPluginManager = ((MavenImpl) maven).lookup(BuildPluginManager.class);
+				return buildPluginManager.getPluginRealm(context.getSession(),
+						mojoExecution.getMojoDescriptor().getPluginDescriptor());
+			} catch (PluginResolutionException | PluginManagerException e) {
+				throw new CoreException(new Status(IStatus.ERROR,
+						FrameworkUtil.getBundle(PluginRealmCache.class).getSymbolicName(),
+						"Failed to access classpath of mojo " + mojoExecution.getMojoDescriptor().getId(), e));
+			}
+		}, null);
+		if (pluginRealm != null) {
+			REALMS.put(key, pluginRealm);
+		}
+		return pluginRealm;
+	}
+
+	/**
+	 * Forget all cached realms.
+	 */
+	public static void clear() {
+		REALMS.clear();
+		ResourceResolver.getResolutionCache().clear();
+		PluginRealmResourceIndex.clear();
+	}
+
+	/**
+	 * @param realm the realm.
+	 * @return whether the realm is still registered in its class world, i.e. it
+	 *         has not been disposed or replaced by a realm with the same id.
+	 */
+	public static boolean isAlive(final ClassRealm realm) {
+		return realm.getWorld().getClassRealm(realm.getId()) == realm;
+	}
+
+	private static String toKey(final MojoExecution mojoExecution) {
+		final PluginDescriptor pluginDescriptor = mojoExecution.getMojoDescriptor().getPluginDescriptor();
+		final StringBuilder key = new StringBuilder(pluginDescriptor.getId());
+		for (final Dependency dependency : mojoExecution.getPlugin().getDependencies()) {
+			key.append('|').append(dependency.getManagementKey()).append(':').append(dependency.getVersion());
+			for (final Exclusion exclusion : dependency.getExclusions()) {
+				key.append('!').append(exclusion.getGroupId()).append(':').append(exclusion.getArtifactId());
+			}
+		}
+		return key.toString();
+	}
+}
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.codehaus.plexus.classworlds.realm.ClassRealm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the resources contained in the jars of a plugin realm, mapping each
+ * resource name to the jars containing it.
+ * <p>
+ * The index is built on the first lookup against a realm by reading the jar
+ * directories once. Afterwards a lookup is a map probe plus the (cheap)
+ * package-based import and parent delegation, in the same order as the
+ * self-first strategy of {@link ClassRealm}. Class files are not indexed, lookups
+ * for them go straight to {@link ClassRealm#getResources(String)}.
+ * </p>
+ * <p>
+ * An index does not reference its realm, so it goes away with the realm. It is
+ * also dropped when the {@link PluginRealmCache} finds the realm disposed.
+ * </p>
+ */
+public final class PluginRealmResourceIndex {
+
+	private static final Logger LOG = LoggerFactory.getLogger(PluginRealmResourceIndex.class);
+
+	/** guarded by itself, the values must not reference their key */
+	private static final Map<ClassRealm, PluginRealmResourceIndex> INDEXES = new WeakHashMap<>();
+
+	private final String realmId;
+	/** jar and folder URLs of the realm in class path order */
+	private final URL[] roots;
+	/** folder roots, these are probed on each lookup since their content may change */
+	private final File[] folders;
+	/** resource name to the positions in {@link #roots} of the jars containing it */
+	private final Map<String, int[]> jarEntries = new HashMap<>();
+	private final Set<String> reportedDuplicates = ConcurrentHashMap.newKeySet();
+	/** whether all jars could be indexed, if not every lookup goes to the realm */
+	private boolean complete = true;
+
+	private PluginRealmResourceIndex(final ClassRealm pluginRealm) {
+		this.realmId = pluginRealm.getId();
+		this.roots = pluginRealm.getURLs();
+		this.folders = new File[roots.length];
+		for (int i = 0; i < roots.length; i++) {
+			final File file = toFile(roots[i]);
+			if (file == null) {
+				// can't index this, let the realm do the work
+				complete = false;
+			} else if (file.isDirectory()) {
+				folders[i] = file;
+			} else if (file.isFile()) {
+				indexJar(i, file);
+			}
+		}
+	}
+
+	/**
+	 * @return the index of the realm, built on the first call.
+	 */
+	public static PluginRealmResourceIndex forRealm(final ClassRealm pluginRealm) {
+		synchronized (INDEXES) {
+			final PluginRealmResourceIndex index = INDEXES.get(pluginRealm);
+			if (index != null) {
+				return index;
+			}
+		}
+		// reading the jars takes a while, don't block the lookups for other realms
+		final PluginRealmResourceIndex index = new PluginRealmResourceIndex(pluginRealm);
+		synchronized (INDEXES) {
+			final PluginRealmResourceIndex concurrentIndex = INDEXES.putIfAbsent(pluginRealm, index);
+			return concurrentIndex != null ? concurrentIndex : index;
+		}
+	}
+
+	/**
+	 * Drop the index of a realm, e.g. because it has been disposed.
+	 */
+	public static void invalidate(final ClassRealm pluginRealm) {
+		synchronized (INDEXES) {
+			INDEXES.remove(pluginRealm);
+		}
+	}
+
+	/**
+	 * Drop all indexes.
+	 */
+	public static void clear() {
+		synchronized (INDEXES) {
+			INDEXES.clear();
+		}
+	}
+
+	/**
+	 * Find all occurrences of a resource, in class path order.
+	 *
+	 * @param pluginRealm the realm this index has been built for.
+	 * @param name        the resource name, without leading slash.
+	 * @return the URLs of the resource, an empty list if none has been found.
+	 * @throws IOException if the fallback to the realm fails.
+	 */
+	public List<URL> getResources(final ClassRealm pluginRealm, final String name) throws IOException {
+		if (!complete || name.endsWith(".class")) {
+			return Collections.list(pluginRealm.getResources(name));
+		}
+		final List<URL> urls = new ArrayList<>(1);
+		addAll(urls, pluginRealm.loadResourcesFromImport(name));
+		final int[] jars = jarEntries.get(name);
+		int nextJar = 0;
+		for (int i = 0; i < roots.length; i++) {
+			if (folders[i] != null) {
+				final File file = new File(folders[i], name);
+				if (file.exists()) {
+					urls.add(file.toURI().toURL());
+				}
+			} else if (jars != null && nextJar < jars.length && jars[nextJar] == i) {
+				urls.add(new URL("jar:" + roots[i].toExternalForm() + "!/" + name));
+				nextJar++;
+			}
+		}
+		addAll(urls, pluginRealm.loadResourcesFromParent(name));
+		if (urls.size() > 1 && reportedDuplicates.add(name)) {
+			LOG.warn("Resource appears more than once on classpath, this is "
+					+ "dangerous because it makes resolving this resource "
+					+ "dependant on classpath ordering; location {} found in {}", name, urls);
+		}
+		return urls;
+	}
+
+	private static void addAll(final List<URL> urls, final Enumeration<URL> resources) {
+		if (resources != null) {
+			urls.addAll(Collections.list(resources));
+		}
+	}
+
+	private void indexJar(final int position, final File file) {
+		try (JarFile jarFile = new JarFile(file)) {
+			final Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements()) {
+				final String entryName = entries.nextElement().getName();
+				if (entryName.endsWith(".class")) {
+					continue;
+				}
+				final int[] positions = jarEntries.get(entryName);
+				if (positions == null) {
+					jarEntries.put(entryName, new int[] { position });
+				} else if (positions[positions.length - 1] != position) {
+					final int[] newPositions = new int[positions.length + 1];
+					System.arraycopy(positions, 0, newPositions, 0, positions.length);
+					newPositions[positions.length] = position;
+					jarEntries.put(entryName, newPositions);
+				}
+			}
+		} catch (final IOException e) {
+			LOG.warn("Could not index {} of plugin realm {}", file, realmId, e);
+			complete = false;
+		}
+	}
+
+	private static File toFile(final URL url) {
+		if (!"file".equals(url.getProtocol())) {
+			return null;
+		}
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return new File(url.getPath());
+		}
+	}
+}
@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.m2e.core.project.IMavenProjectFacade;
+import org.eclipse.m2e.core.project.MavenProjectChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Collects the {@link MavenProjectChangedEvent}s of all analyzers for a short
+ * window, and then handles each changed project once.
+ * <p>
+ * Saving a parent pom changes every child, often several times during one
+ * refresh. The events of a project are merged, per analyzer, into its final
+ * state: the kind as seen from before the first event, the facade before the
+ * first event and the facade after the last one. Every new event restarts the
+ * window. The merged changes are handled by one job; all analyzers of a
+ * project run in one {@link ProjectUpdateBatch}, under the rule of the
+ * project. Their nature changes need the rule of the workspace root, the
+ * {@link ProjectUpdateJob} applies them afterwards.
+ * </p>
+ *
+ * @see CodeQualityPreferences#EVENT_COALESCING_WINDOW_MILLIS
+ */
+public final class ProjectChangeCoalescer {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ProjectChangeCoalescer.class);
+
+	private static final ProjectChangeCoalescer INSTANCE = new ProjectChangeCoalescer();
+
+	/**
+	 * Handles the merged change of one project, for one analyzer.
+	 */
+	interface ChangeHandler {
+
+		/**
+		 * @param kind      the merged kind, one of the
+		 *                  {@code MavenProjectChangedEvent.KIND_*} constants.
+		 * @param oldFacade the facade before the first event, may be
+		 *                  {@code null}.
+		 * @param facade    the facade after the last event, may be {@code null}
+		 *                  if the project has been removed.
+		 * @param monitor   the progress monitor.
+		 * @throws CoreException if handling the change fails.
+		 */
+		void projectChanged(int kind, IMavenProjectFacade oldFacade, IMavenProjectFacade facade,
+				IProgressMonitor monitor) throws CoreException;
+	}
+
+	private static final class PendingChange {
+
+		private final String analyzer;
+		private final ChangeHandler handler;
+		private final int kind;
+		private final IMavenProjectFacade oldFacade;
+		private final IMavenProjectFacade facade;
+		private final int events;
+
+		PendingChange(final String analyzer, final ChangeHandler handler, final int kind,
+				final IMavenProjectFacade oldFacade, final IMavenProjectFacade facade, final int events) {
+			this.analyzer = analyzer;
+			this.handler = handler;
+			this.kind = kind;
+			this.oldFacade = oldFacade;
+			this.facade = facade;
+			this.events = events;
+		}
+
+		/**
+		 * m2e creates new configurator instances for a new facade, so the handler of
+		 * the later change is the current one.
+		 */
+		PendingChange followedBy(final PendingChange later) {
+			return new PendingChange(analyzer, later.handler, merge(kind, later.kind), oldFacade, later.facade,
+					events + later.events);
+		}
+	}
+
+	/**
+	 * guarded by itself, in the order the projects changed first, then by
+	 * analyzer
+	 */
+	private final Map<IProject, Map<String, PendingChange>> pendingChanges = new LinkedHashMap<>();
+	private final Job job;
+
+	private ProjectChangeCoalescer() {
+		this.job = new Job("Updating code quality configuration") {
+
+			@Override
+			protected IStatus run(final IProgressMonitor monitor) {
+				return handlePendingChanges(monitor);
+			}
+
+			@Override
+			public boolean belongsTo(final Object family) {
+				return ConfigurationScheduler.FAMILY == family;
+			}
+		};
+	}
+
+	static ProjectChangeCoalescer getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Add an event, and (re)start the window.
+	 *
+	 * @param event    the event.
+	 * @param window   how long to wait for further events, in milliseconds.
+	 * @param analyzer the analyzer the event is for, the events of a project are
+	 *                 merged per analyzer.
+	 * @param handler  handles the merged change of the analyzer, the handler of
+	 *                 the last event is used.
+	 */
+	void add(final MavenProjectChangedEvent event, final long window, final String analyzer,
+			final ChangeHandler handler) {
+		Preconditions.checkNotNull(analyzer);
+		Preconditions.checkNotNull(handler);
+		final IMavenProjectFacade facade = event.getMavenProject();
+		final IMavenProjectFacade oldFacade = event.getOldMavenProject();
+		final IProject project = facade != null ? facade.getProject()
+				: oldFacade != null ? oldFacade.getProject() : null;
+		if (project == null) {
+			return;
+		}
+		synchronized (pendingChanges) {
+			put(project, new PendingChange(analyzer, handler, event.getKind(), oldFacade, facade, 1));
+		}
+		// rescheduling a waiting job only moves its start
+		job.schedule(window);
+	}
+
+	/**
+	 * Merge the kind of a new event into the kind of the previous ones.
+	 *
+	 * @param previousKind the merged kind of the previous events.
+	 * @param kind         the kind of the new event.
+	 * @return the merged kind.
+	 */
+	public static int merge(final int previousKind, final int kind) {
+		if (kind == MavenProjectChangedEvent.KIND_REMOVED) {
+			return MavenProjectChangedEvent.KIND_REMOVED;
+		}
+		if (previousKind == MavenProjectChangedEvent.KIND_REMOVED
+				|| previousKind == MavenProjectChangedEvent.KIND_ADDED) {
+			// removed and back again, or added and then changed: a new project
+			return MavenProjectChangedEvent.KIND_ADDED;
+		}
+		return kind;
+	}
+
+	/**
+	 * Add a change after the pending ones, the caller holds the lock.
+	 */
+	private void put(final IProject project, final PendingChange change) {
+		final Map<String, PendingChange> changes = pendingChanges.computeIfAbsent(project,
+				p -> new LinkedHashMap<>());
+		final PendingChange previous = changes.get(change.analyzer);
+		changes.put(change.analyzer, previous == null ? change : previous.followedBy(change));
+	}
+
+	private IStatus handlePendingChanges(final IProgressMonitor monitor) {
+		final Map<IProject, Map<String, PendingChange>> changes;
+		synchronized (pendingChanges) {
+			changes = new LinkedHashMap<>(pendingChanges);
+			pendingChanges.clear();
+		}
+		final SubMonitor subMonitor = SubMonitor.convert(monitor, changes.size());
+		final List<IProject> handled = new ArrayList<>();
+		try {
+			for (final Map.Entry<IProject, Map<String, PendingChange>> entry : changes.entrySet()) {
+				if (subMonitor.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+				final IProject project = entry.getKey();
+				subMonitor.subTask(project.getName());
+				ResourcesPlugin.getWorkspace().run(
+						runMonitor -> ProjectUpdateBatch.run(project,
+								batchMonitor -> handleProjectChanges(project, entry.getValue(), batchMonitor),
+								runMonitor),
+						ConfigurationScheduler.getRule(project), IWorkspace.AVOID_UPDATE, subMonitor.split(1));
+				handled.add(project);
+			}
+		} catch (final OperationCanceledException e) {
+			requeue(changes, handled);
+			return Status.CANCEL_STATUS;
+		} catch (final CoreException e) {
+			// applying the batch failed, the handlers have logged their own problems
+			LOG.error("Could not update the code quality configuration", e);
+			requeue(changes, handled);
+			return e.getStatus();
+		}
+		return Status.OK_STATUS;
+	}
+
+	private static void handleProjectChanges(final IProject project, final Map<String, PendingChange> changes,
+			final IProgressMonitor monitor) {
+		final SubMonitor subMonitor = SubMonitor.convert(monitor, changes.size());
+		for (final PendingChange change : changes.values()) {
+			LOG.debug("{}: handling {} event(s) of {} as kind {}", change.analyzer, change.events, project,
+					change.kind);
+			try {
+				change.handler.projectChanged(change.kind, change.oldFacade, change.facade, subMonitor.split(1));
+			} catch (final CoreException e) {
+				LOG.error("Could not update {} configuration of {}", change.analyzer, project.getName(), e);
+			}
+		}
+	}
+
+	/**
+	 * Keep what has not been handled, before anything added in the meantime.
+	 */
+	private void requeue(final Map<IProject, Map<String, PendingChange>> changes,
+			final List<IProject> handled) {
+		synchronized (pendingChanges) {
+			final Map<IProject, Map<String, PendingChange>> newer = new LinkedHashMap<>(pendingChanges);
+			pendingChanges.clear();
+			for (final Map.Entry<IProject, Map<String, PendingChange>> entry : changes.entrySet()) {
+				if (!handled.contains(entry.getKey())) {
+					pendingChanges.put(entry.getKey(), new LinkedHashMap<>(entry.getValue()));
+				}
+			}
+			for (final Map.Entry<IProject, Map<String, PendingChange>> entry : newer.entrySet()) {
+				for (final PendingChange change : entry.getValue().values()) {
+					put(entry.getKey(), change);
+				}
+			}
+		}
+	}
+}
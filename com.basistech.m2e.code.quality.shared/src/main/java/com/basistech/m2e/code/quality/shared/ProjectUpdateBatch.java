@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.ICoreRunnable;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Collects the nature changes, file deletions and marker cleanups of the
+ * configurators for a project, and applies them at once.
+ * <p>
+ * Everything inside {@link #run(IProject, ICoreRunnable, IProgressMonitor)}
+ * is one workspace operation with {@link IWorkspace#AVOID_UPDATE}, the settings
+ * written by the analyzers included. The natures are changed with a single
+ * {@link IProject#setDescription(IProjectDescription, IProgressMonitor)} at
+ * the end, so however many analyzers change a project, it gets one resource
+ * delta and one build trigger.
+ * </p>
+ * <p>
+ * Changing natures needs the rule of the workspace root. If the thread holds a
+ * narrower rule, e.g. the rule of the project in a parallel configuration, the
+ * batch is applied later by the {@link ProjectUpdateJob}.
+ * </p>
+ * <p>
+ * Batches are bound to the thread that opened them. Nested calls for the same
+ * project join the batch that is already open.
+ * </p>
+ */
+final class ProjectUpdateBatch {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ProjectUpdateBatch.class);
+
+	private static final ThreadLocal<Map<IProject, ProjectUpdateBatch>> CURRENT = ThreadLocal.withInitial(HashMap::new);
+
+	private final IProject project;
+	/** nature id to whether it should be present, in the order of the changes */
+	private final Map<String, Boolean> natures = new LinkedHashMap<>();
+	private final Set<String> deletedFiles = new LinkedHashSet<>();
+	/** nature id to the marker types to delete once the nature has been removed */
+	private final Map<String, Set<String>> markerCleanups = new LinkedHashMap<>();
+
+	private ProjectUpdateBatch(final IProject project) {
+		this.project = project;
+	}
+
+	IProject getProject() {
+		return project;
+	}
+
+	/**
+	 * @return a batch with the changes of this batch followed by those of a
+	 *         later one for the same project.
+	 */
+	ProjectUpdateBatch followedBy(final ProjectUpdateBatch later) {
+		Preconditions.checkArgument(project.equals(later.project));
+		final ProjectUpdateBatch merged = new ProjectUpdateBatch(project);
+		merged.natures.putAll(natures);
+		for (final Map.Entry<String, Boolean> nature : later.natures.entrySet()) {
+			merged.natures.remove(nature.getKey());
+			merged.natures.put(nature.getKey(), nature.getValue());
+		}
+		merged.deletedFiles.addAll(deletedFiles);
+		merged.deletedFiles.addAll(later.deletedFiles);
+		for (final Map<String, Set<String>> cleanups : Arrays.asList(markerCleanups, later.markerCleanups)) {
+			for (final Map.Entry<String, Set<String>> cleanup : cleanups.entrySet()) {
+				merged.deleteMarkers(cleanup.getKey(),
+						cleanup.getValue().toArray(new String[cleanup.getValue().size()]));
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Run a runnable in a batch for a project, joining the batch of the current
+	 * thread if there is one.
+	 *
+	 * @param project  the project.
+	 * @param runnable changes the project.
+	 * @param monitor  the progress monitor.
+	 * @throws CoreException if the runnable or applying the changes fails.
+	 */
+	static void run(final IProject project, final ICoreRunnable runnable, final IProgressMonitor monitor)
+			throws CoreException {
+		Preconditions.checkNotNull(project);
+		Preconditions.checkNotNull(runnable);
+		if (getCurrent(project) != null) {
+			runnable.run(monitor);
+			return;
+		}
+		// no rule of its own, the caller holds whatever m2e or the job needs
+		ResourcesPlugin.getWorkspace().run(runMonitor -> {
+			final ProjectUpdateBatch batch = new ProjectUpdateBatch(project);
+			CURRENT.get().put(project, batch);
+			try {
+				runnable.run(runMonitor);
+			} finally {
+				CURRENT.get().remove(project);
+			}
+			batch.apply(runMonitor);
+		}, null, IWorkspace.AVOID_UPDATE, monitor);
+	}
+
+	/**
+	 * @return the batch of the current thread for the project, or {@code null}.
+	 */
+	static ProjectUpdateBatch getCurrent(final IProject project) {
+		return CURRENT.get().get(project);
+	}
+
+	/**
+	 * @return whether the project has the nature, or will have it once the batch
+	 *         of the current thread and any batch waiting for the
+	 *         {@link ProjectUpdateJob} have been applied.
+	 * @throws CoreException if the project is not accessible.
+	 */
+	static boolean hasNature(final IProject project, final String natureId) throws CoreException {
+		final ProjectUpdateBatch pending = ProjectUpdateJob.getPending(project);
+		for (final ProjectUpdateBatch batch : Arrays.asList(getCurrent(project), pending)) {
+			if (batch != null && batch.natures.containsKey(natureId)) {
+				return batch.natures.get(natureId);
+			}
+		}
+		return project.hasNature(natureId);
+	}
+
+	void addNature(final String natureId) {
+		natures.remove(natureId);
+		natures.put(natureId, Boolean.TRUE);
+	}
+
+	void removeNature(final String natureId) {
+		natures.remove(natureId);
+		natures.put(natureId, Boolean.FALSE);
+	}
+
+	/**
+	 * @param fileName the file to delete, relative to the project.
+	 */
+	void deleteFile(final String fileName) {
+		deletedFiles.add(fileName);
+	}
+
+	/**
+	 * Schedule a {@link MarkerCleanupJob} once the batch has been applied.
+	 *
+	 * @param natureId    the nature of the analyzer.
+	 * @param markerTypes the marker types to delete.
+	 */
+	void deleteMarkers(final String natureId, final String... markerTypes) {
+		markerCleanups.computeIfAbsent(natureId, n -> new LinkedHashSet<>()).addAll(Arrays.asList(markerTypes));
+	}
+
+	private void apply(final IProgressMonitor monitor) throws CoreException {
+		if ((!natures.isEmpty() && !canChangeNatures()) || ProjectUpdateJob.getPending(project) != null) {
+			// after any batch deferred before, to keep the order of the changes
+			LOG.debug("{}: deferring natures {}", project, natures);
+			ProjectUpdateJob.schedule(this);
+			return;
+		}
+		applyChanges(monitor);
+	}
+
+	/**
+	 * @return whether the thread holds no rule, or one that covers the workspace
+	 *         root, which
+	 *         {@link IProject#setDescription(IProjectDescription, IProgressMonitor)}
+	 *         needs to configure natures.
+	 */
+	private static boolean canChangeNatures() {
+		final ISchedulingRule rule = Job.getJobManager().currentRule();
+		return rule == null || rule.contains(ResourcesPlugin.getWorkspace().getRoot());
+	}
+
+	/**
+	 * Apply the changes, the caller holds the rule of the workspace root if
+	 * natures change.
+	 */
+	void applyChanges(final IProgressMonitor monitor) throws CoreException {
+		try (ConfigurationScope scope = ConfigurationScope.attribute(project, "batch")) {
+			applyChangesInScope(monitor);
+		}
+	}
+
+	private void applyChangesInScope(final IProgressMonitor monitor) throws CoreException {
+		if (!natures.isEmpty() && project.isAccessible()) {
+			final IProjectDescription desc = project.getDescription();
+			final List<String> natureIds = new ArrayList<>(Arrays.asList(desc.getNatureIds()));
+			boolean changed = false;
+			for (final Map.Entry<String, Boolean> nature : natures.entrySet()) {
+				if (nature.getValue()) {
+					if (!natureIds.contains(nature.getKey())) {
+						changed |= natureIds.add(nature.getKey());
+					}
+				} else {
+					changed |= natureIds.remove(nature.getKey());
+				}
+			}
+			if (changed) {
+				LOG.debug("{}: setting natures {}", project, natureIds);
+				desc.setNatureIds(natureIds.toArray(new String[natureIds.size()]));
+				try (ConfigurationScope scope = ConfigurationScope.phase("nature changes", natureIds)) {
+					project.setDescription(desc, monitor);
+				}
+			}
+		}
+		for (final String fileName : deletedFiles) {
+			final IResource file = project.getFile(fileName);
+			if (file.exists()) {
+				try (ConfigurationScope scope = ConfigurationScope.phase("file deletion", fileName)) {
+					file.delete(IResource.FORCE, monitor);
+				}
+			}
+		}
+		for (final Map.Entry<String, Set<String>> cleanup : markerCleanups.entrySet()) {
+			MarkerCleanupJob.schedule(project, cleanup.getKey(),
+					cleanup.getValue().toArray(new String[cleanup.getValue().size()]));
+		}
+	}
+}
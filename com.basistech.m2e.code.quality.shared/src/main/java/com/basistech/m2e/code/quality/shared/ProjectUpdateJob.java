@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the {@link ProjectUpdateBatch}es that change natures, but were run
+ * under a scheduling rule that does not cover the workspace root.
+ * <p>
+ * Changing the natures of a project configures them, which needs the rule of
+ * the workspace root, while a configuration running in parallel only holds the
+ * rule of its project. Its batch is handed to this job instead, with the file
+ * deletions and marker cleanups, so they still happen after the nature
+ * changes. The batches of a project are merged until the job gets to them, so
+ * the project still gets one resource delta.
+ * </p>
+ *
+ * @see ConfigurationScheduler
+ */
+final class ProjectUpdateJob extends Job {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ProjectUpdateJob.class);
+
+	private static final ProjectUpdateJob INSTANCE = new ProjectUpdateJob();
+
+	/** guarded by itself, in the order the batches were deferred */
+	private final Map<IProject, ProjectUpdateBatch> pendingBatches = new LinkedHashMap<>();
+
+	private ProjectUpdateJob() {
+		super("Updating code quality natures");
+		setRule(ResourcesPlugin.getWorkspace().getRoot());
+	}
+
+	/**
+	 * Apply a batch once the rule of the workspace root is available.
+	 */
+	static void schedule(final ProjectUpdateBatch batch) {
+		synchronized (INSTANCE.pendingBatches) {
+			INSTANCE.pendingBatches.merge(batch.getProject(), batch, ProjectUpdateBatch::followedBy);
+		}
+		INSTANCE.schedule();
+	}
+
+	/**
+	 * @return the batch waiting to be applied to the project, or {@code null}.
+	 */
+	static ProjectUpdateBatch getPending(final IProject project) {
+		synchronized (INSTANCE.pendingBatches) {
+			return INSTANCE.pendingBatches.get(project);
+		}
+	}
+
+	@Override
+	public boolean belongsTo(final Object family) {
+		return ConfigurationScheduler.FAMILY == family;
+	}
+
+	@Override
+	protected IStatus run(final IProgressMonitor monitor) {
+		final Map<IProject, ProjectUpdateBatch> batches;
+		synchronized (pendingBatches) {
+			batches = new LinkedHashMap<>(pendingBatches);
+		}
+		final SubMonitor subMonitor = SubMonitor.convert(monitor, batches.size());
+		final IWorkspace workspace = ResourcesPlugin.getWorkspace();
+		for (final ProjectUpdateBatch batch : batches.values()) {
+			if (subMonitor.isCanceled()) {
+				// the rest stays pending until the job is scheduled again
+				return Status.CANCEL_STATUS;
+			}
+			try (ConfigurationScope scope = ConfigurationScope.configuration(batch.getProject(), "batch",
+					"deferred update")) {
+				workspace.run(batch::applyChanges, null, IWorkspace.AVOID_UPDATE, subMonitor.split(1));
+				scope.setOutcome("configured");
+			} catch (final OperationCanceledException e) {
+				return Status.CANCEL_STATUS;
+			} catch (final CoreException e) {
+				LOG.error("Could not update {}", batch.getProject().getName(), e);
+			}
+			synchronized (pendingBatches) {
+				// a batch merged in the meantime is applied by the next run
+				pendingBatches.remove(batch.getProject(), batch);
+			}
+		}
+		return Status.OK_STATUS;
+	}
+}
@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Persistent cache of the content of http(s) resources, like a shared checkstyle
+ * configuration or PMD ruleset on an internal server.
+ * <p>
+ * A cached copy is used without contacting the server as long as it is younger
+ * than the configured time to live. Afterwards it is revalidated with a
+ * conditional request ({@code If-None-Match} / {@code If-Modified-Since}). If
+ * the server cannot be reached, a stale copy is used. In offline mode the
+ * server is never contacted.
+ * </p>
+ *
+ * @see CodeQualityPreferences#REMOTE_CACHE_TTL_SECONDS
+ * @see CodeQualityPreferences#REMOTE_CACHE_OFFLINE
+ */
+public final class RemoteResourceCache {
+
+	private static final Logger LOG = LoggerFactory.getLogger(RemoteResourceCache.class);
+
+	private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+	private static final String URL_KEY = "url";
+	private static final String ETAG_KEY = "etag";
+	private static final String LAST_MODIFIED_KEY = "lastModified";
+	private static final String FETCHED_KEY = "fetched";
+
+	private static final int TIMEOUT_MILLIS = 30_000;
+
+	private final Path directory;
+	private final long ttlMillis;
+	private final boolean offline;
+
+	/**
+	 * @param directory the directory to keep the cached copies in.
+	 * @param ttlMillis how long a cached copy is used without revalidation.
+	 * @param offline   whether to never contact the server.
+	 */
+	public RemoteResourceCache(final Path directory, final long ttlMillis, final boolean offline) {
+		Preconditions.checkNotNull(directory);
+		this.directory = directory;
+		this.ttlMillis = ttlMillis;
+		this.offline = offline;
+	}
+
+	/**
+	 * @return a cache in the state location of the shared bundle, configured by
+	 *         the current preferences.
+	 */
+	public static RemoteResourceCache fromPreferences() {
+		return new RemoteResourceCache(CodeQualityPreferences.getStateLocation().append("remote-resources").toFile()
+				.toPath(), CodeQualityPreferences.getRemoteCacheTtlSeconds() * 1000L,
+				CodeQualityPreferences.isRemoteCacheOffline());
+	}
+
+	public static boolean isCacheable(final URL url) {
+		return "http".equalsIgnoreCase(url.getProtocol()) || "https".equalsIgnoreCase(url.getProtocol());
+	}
+
+	/**
+	 * Get a local copy of a http(s) resource.
+	 *
+	 * @param url the remote resource.
+	 * @return a {@code file:} URL of the local copy, the URL itself if it can't be
+	 *         cached, or {@code null} if the resource is neither cached nor
+	 *         available.
+	 */
+	public URL getLocalCopy(final URL url) {
+		if (!isCacheable(url)) {
+			return url;
+		}
+		final String key = Digests.sha256(url.toExternalForm());
+		synchronized (LOCKS.computeIfAbsent(key, k -> new Object())) {
+			final Path content = directory.resolve(key);
+			final Path metadataFile = directory.resolve(key + ".properties");
+			final Properties metadata = readMetadata(metadataFile);
+			final boolean cached = Files.isRegularFile(content) && metadata != null;
+			if (cached && (offline || isFresh(metadata))) {
+				return toUrl(content);
+			}
+			if (offline) {
+				LOG.warn("Resource {} is not available in offline mode, it has never been downloaded", url);
+				return null;
+			}
+			try {
+				download(url, content, metadataFile, cached ? metadata : null);
+				return toUrl(content);
+			} catch (final IOException e) {
+				if (cached) {
+					LOG.warn("Could not revalidate {}, using cached copy from {}", url, content, e);
+					return toUrl(content);
+				}
+				LOG.warn("Could not download {}, using it directly", url, e);
+				return url;
+			}
+		}
+	}
+
+	/**
+	 * Get the cached copy of a http(s) resource, without contacting the server.
+	 *
+	 * @param url the remote resource.
+	 * @return the cached copy, or {@code null} if the resource has never been
+	 *         downloaded.
+	 */
+	public Path getCachedCopy(final URL url) {
+		final String key = Digests.sha256(url.toExternalForm());
+		synchronized (LOCKS.computeIfAbsent(key, k -> new Object())) {
+			final Path content = directory.resolve(key);
+			return Files.isRegularFile(content) ? content : null;
+		}
+	}
+
+	private void download(final URL url, final Path content, final Path metadataFile, final Properties cachedMetadata)
+			throws IOException {
+		final URLConnection connection = url.openConnection();
+		connection.setConnectTimeout(TIMEOUT_MILLIS);
+		connection.setReadTimeout(TIMEOUT_MILLIS);
+		connection.setUseCaches(false);
+		if (cachedMetadata != null) {
+			final String etag = cachedMetadata.getProperty(ETAG_KEY);
+			if (etag != null) {
+				connection.setRequestProperty("If-None-Match", etag);
+			}
+			final String lastModified = cachedMetadata.getProperty(LAST_MODIFIED_KEY);
+			if (lastModified != null) {
+				connection.setRequestProperty("If-Modified-Since", lastModified);
+			}
+		}
+		try (ConfigurationScope scope = ConfigurationScope.remoteFetch(url)) {
+			final int responseCode = connection instanceof HttpURLConnection
+					? ((HttpURLConnection) connection).getResponseCode()
+					: HttpURLConnection.HTTP_OK;
+			scope.setResponse(responseCode, 0L);
+			final Properties metadata = new Properties();
+			metadata.setProperty(URL_KEY, url.toExternalForm());
+			metadata.setProperty(FETCHED_KEY, Long.toString(System.currentTimeMillis()));
+			if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cachedMetadata != null) {
+				LOG.debug("{} has not been modified", url);
+				copyValidators(cachedMetadata, metadata);
+			} else if (responseCode == HttpURLConnection.HTTP_OK) {
+				LOG.debug("Downloading {} to {}", url, content);
+				Files.createDirectories(directory);
+				final Path tempFile = Files.createTempFile(directory, content.getFileName().toString(), ".tmp");
+				try (InputStream inputStream = connection.getInputStream()) {
+					scope.setResponse(responseCode,
+							Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING));
+					move(tempFile, content);
+				} finally {
+					Files.deleteIfExists(tempFile);
+				}
+				setIfPresent(metadata, ETAG_KEY, connection.getHeaderField("ETag"));
+				setIfPresent(metadata, LAST_MODIFIED_KEY, connection.getHeaderField("Last-Modified"));
+			} else {
+				throw new IOException(String.format("Unexpected response %d for %s", responseCode, url));
+			}
+			writeMetadata(metadataFile, metadata);
+		} finally {
+			if (connection instanceof HttpURLConnection) {
+				((HttpURLConnection) connection).disconnect();
+			}
+		}
+	}
+
+	private boolean isFresh(final Properties metadata) {
+		try {
+			final long fetched = Long.parseLong(metadata.getProperty(FETCHED_KEY, "0"));
+			return System.currentTimeMillis() - fetched < ttlMillis;
+		} catch (final NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private static void copyValidators(final Properties from, final Properties to) {
+		setIfPresent(to, ETAG_KEY, from.getProperty(ETAG_KEY));
+		setIfPresent(to, LAST_MODIFIED_KEY, from.getProperty(LAST_MODIFIED_KEY));
+	}
+
+	private static void setIfPresent(final Properties properties, final String key, final String value) {
+		if (value != null) {
+			properties.setProperty(key, value);
+		}
+	}
+
+	private static Properties readMetadata(final Path metadataFile) {
+		if (!Files.isRegularFile(metadataFile)) {
+			return null;
+		}
+		final Properties metadata = new Properties();
+		try (InputStream inputStream = Files.newInputStream(metadataFile)) {
+			metadata.load(inputStream);
+			return metadata;
+		} catch (final IOException e) {
+			LOG.debug("Could not read {}", metadataFile, e);
+			return null;
+		}
+	}
+
+	private void writeMetadata(final Path metadataFile, final Properties metadata) throws IOException {
+		final Path tempFile = Files.createTempFile(directory, metadataFile.getFileName().toString(), ".tmp");
+		try {
+			try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+				metadata.store(outputStream, null);
+			}
+			move(tempFile, metadataFile);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	private static void move(final Path source, final Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static URL toUrl(final Path path) {
+		try {
+			return path.toUri().toURL();
+		} catch (final MalformedURLException e) {
+			throw new ConfigurationException(e);
+		}
+	}
+}
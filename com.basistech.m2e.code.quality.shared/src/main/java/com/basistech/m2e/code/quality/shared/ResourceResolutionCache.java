@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright 2010 Basis Technology Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.basistech.m2e.code.quality.shared;
+
+import java.io.File;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.plexus.classworlds.realm.ClassRealm;
+import org.eclipse.core.runtime.IPath;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A bounded, thread-safe cache of the results of
+ * {@link ResourceResolver#resolveLocation(String)}.
+ * <p>
+ * Entries are keyed by plugin realm, search path and location. Negative
+ * results are cached as well. Each entry remembers the modification time of
+ * the files (or, for files that were not found, their parent directories) that
+ * were consulted during the resolution, and is dropped as soon as one of these
+ * timestamps changes.
+ * </p>
+ */
+public final class ResourceResolutionCache {
+
+	private static final int DEFAULT_MAX_ENTRIES = 1024;
+
+	private final int maxEntries;
+	private final Map<Key, Entry> entries;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	ResourceResolutionCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	ResourceResolutionCache(final int maxEntries) {
+		Preconditions.checkArgument(maxEntries > 0, "maxEntries must be positive");
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Key, Entry> eldest) {
+				return size() > ResourceResolutionCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Look up a previously resolved location.
+	 *
+	 * @return the cached entry, or {@code null} if there is no valid entry.
+	 */
+	synchronized Entry get(final Key key) {
+		final Entry entry = entries.get(key);
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		if (!entry.isUpToDate()) {
+			entries.remove(key);
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry;
+	}
+
+	synchronized void put(final Key key, final Entry entry) {
+		entries.put(key, entry);
+	}
+
+	/**
+	 * Drop all cached resolutions done against the given plugin realm.
+	 */
+	public synchronized void invalidate(final ClassRealm pluginRealm) {
+		entries.keySet().removeIf(key -> key.pluginRealm == pluginRealm);
+	}
+
+	/**
+	 * Drop all cached resolutions.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("[ResourceResolutionCache size=%d, hits=%d, misses=%d]", size(), getHitCount(),
+				getMissCount());
+	}
+
+	static final class Key {
+
+		private final ClassRealm pluginRealm;
+		private final IPath projectLocation;
+		private final List<IPath> projectLocations;
+		private final String location;
+
+		Key(final ClassRealm pluginRealm, final IPath projectLocation, final List<IPath> projectLocations,
+				final String location) {
+			this.pluginRealm = pluginRealm;
+			this.projectLocation = projectLocation;
+			this.projectLocations = projectLocations;
+			this.location = location;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(System.identityHashCode(pluginRealm), projectLocation, projectLocations, location);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return pluginRealm == other.pluginRealm && projectLocation.equals(other.projectLocation)
+					&& projectLocations.equals(other.projectLocations) && location.equals(other.location);
+		}
+	}
+
+	static final class Entry {
+
+		private final URL url;
+		private final File[] watchedFiles;
+		private final long[] timestamps;
+
+		Entry(final URL url, final List<File> watchedFiles) {
+			this.url = url;
+			this.watchedFiles = watchedFiles.toArray(new File[watchedFiles.size()]);
+			this.timestamps = new long[this.watchedFiles.length];
+			for (int i = 0; i < this.watchedFiles.length; i++) {
+				this.timestamps[i] = this.watchedFiles[i].lastModified();
+			}
+		}
+
+		/**
+		 * @return the resolved location, {@code null} for a negative result.
+		 */
+		URL getUrl() {
+			return url;
+		}
+
+		boolean isUpToDate() {
+			for (int i = 0; i < watchedFiles.length; i++) {
+				if (watchedFiles[i].lastModified() != timestamps[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
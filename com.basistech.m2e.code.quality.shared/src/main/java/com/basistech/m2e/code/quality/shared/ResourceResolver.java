@@ -23,8 +23,9 @@ import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.codehaus.plexus.classworlds.realm.ClassRealm;
 import org.eclipse.core.runtime.IPath;
@@ -32,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 
 /**
  * A utility class to resolve resources, which includes searching in resources
@@ -44,17 +46,51 @@ public final class ResourceResolver {
 
 	private static final Logger LOG = LoggerFactory.getLogger(ResourceResolver.class);
 
+	private static final ResourceResolutionCache RESOLUTION_CACHE = new ResourceResolutionCache();
+
 	private final ClassRealm pluginRealm;
 	private final IPath projectLocation;
 	private final List<IPath> projectLocations;
+	private final Consumer<URL> resolutionListener;
+	private final String executionId;
 
 	public ResourceResolver(final ClassRealm pluginRealm, final IPath projectLocation,
 			final List<IPath> projectLocations) {
+		this(pluginRealm, projectLocation, projectLocations, null);
+	}
+
+	/**
+	 * @param resolutionListener called with every successfully resolved location,
+	 *                           may be {@code null}.
+	 */
+	public ResourceResolver(final ClassRealm pluginRealm, final IPath projectLocation,
+			final List<IPath> projectLocations, final Consumer<URL> resolutionListener) {
+		this(pluginRealm, projectLocation, projectLocations, null, resolutionListener);
+	}
+
+	/**
+	 * @param executionId        the execution the locations belong to, for
+	 *                           {@link ConfigurationScope}, may be {@code null}.
+	 * @param resolutionListener called with every successfully resolved location,
+	 *                           may be {@code null}.
+	 */
+	public ResourceResolver(final ClassRealm pluginRealm, final IPath projectLocation,
+			final List<IPath> projectLocations, final String executionId, final Consumer<URL> resolutionListener) {
 		Preconditions.checkNotNull(projectLocation);
 		Preconditions.checkNotNull(projectLocations);
 		this.pluginRealm = pluginRealm;
 		this.projectLocation = projectLocation;
-		this.projectLocations = projectLocations;
+		this.projectLocations = ImmutableList.copyOf(projectLocations);
+		this.resolutionListener = resolutionListener;
+		this.executionId = executionId;
+	}
+
+	/**
+	 * @return the cache shared by all resolvers for
+	 *         {@link #resolveLocation(String)}.
+	 */
+	public static ResourceResolutionCache getResolutionCache() {
+		return RESOLUTION_CACHE;
 	}
 
 	/**
@@ -64,6 +100,7 @@ public final class ResourceResolver {
 	 * <li>As a URL.</li>
 	 * <li>As a filesystem resource.</li>
 	 * </ol>
+	 * http(s) URLs are replaced by a local copy, see {@link RemoteResourceCache}.
 	 * 
 	 * @param location the resource location as a string.
 	 * @return the {@code URL} of the resolved location or {@code null}.
@@ -72,9 +109,44 @@ public final class ResourceResolver {
 		if (location == null || location.isEmpty()) {
 			return null;
 		}
+		try (ConfigurationScope execution = ConfigurationScope.attributeExecution(executionId);
+				ConfigurationScope scope = ConfigurationScope.resolution(location)) {
+			return resolveLocationCached(location, scope);
+		}
+	}
+
+	private URL resolveLocationCached(final String location, final ConfigurationScope scope) {
+		final ResourceResolutionCache.Key key = new ResourceResolutionCache.Key(pluginRealm, projectLocation,
+				projectLocations, location);
+		final ResourceResolutionCache.Entry cached = RESOLUTION_CACHE.get(key);
+		final URL url;
+		if (cached != null) {
+			url = cached.getUrl();
+		} else {
+			final List<File> watchedFiles = new ArrayList<>();
+			url = resolveLocation(location, watchedFiles);
+			RESOLUTION_CACHE.put(key, new ResourceResolutionCache.Entry(url, watchedFiles));
+		}
+		URL result = url;
+		if (url != null && RemoteResourceCache.isCacheable(url) && CodeQualityPreferences.isRemoteCacheEnabled()) {
+			// serve http(s) resources from a local copy
+			result = RemoteResourceCache.fromPreferences().getLocalCopy(url);
+		}
+		if (result != null && resolutionListener != null) {
+			resolutionListener.accept(result);
+		}
+		scope.setResolution(url, result, cached != null);
+		return result;
+	}
+
+	/**
+	 * Does the actual resolution, collecting all the files consulted on the way
+	 * so the result can be invalidated once one of them changes.
+	 */
+	private URL resolveLocation(final String location, final List<File> watchedFiles) {
 		URL url = null;
 		for (final IPath path : projectLocations) {
-			url = getResourceRelativeFromIPath(path, location);
+			url = getResourceRelativeFromIPath(path, location, watchedFiles);
 			if (url != null) {
 				return url;
 			}
@@ -84,10 +156,10 @@ public final class ResourceResolver {
 			url = getResourceFromRemote(location);
 		}
 		if (url == null) {
-			url = getResourceFromFileSystem(location);
+			url = getResourceFromFileSystem(location, watchedFiles);
 		}
 		if (url == null) {
-			url = getResourceRelativeFromProjectLocation(location);
+			url = getResourceRelativeFromIPath(projectLocation, location, watchedFiles);
 		}
 		return url;
 	}
@@ -98,15 +170,11 @@ public final class ResourceResolver {
 		}
 		String fixedResource = resource.startsWith("/") ? resource.substring(1) : resource;
 		try {
-			List<URL> urls = Collections.list(pluginRealm.getResources(fixedResource));
+			final List<URL> urls = PluginRealmResourceIndex.forRealm(pluginRealm).getResources(pluginRealm,
+					fixedResource);
 			if (urls.isEmpty()) {
 				return null;
 			}
-			if (urls.size() > 1) {
-				LOG.warn("Resource appears more than once on classpath, this is "
-						+ "dangerous because it makes resolving this resource "
-						+ "dependant on classpath ordering; location {} found in {}", fixedResource, urls);
-			}
 			return urls.get(0);
 		} catch (IOException e) {
 			LOG.warn("getResources() failed: " + fixedResource, e);
@@ -124,8 +192,13 @@ public final class ResourceResolver {
 	}
 
 	public URL getResourceFromFileSystem(final String resource) {
+		return getResourceFromFileSystem(resource, new ArrayList<File>());
+	}
+
+	private URL getResourceFromFileSystem(final String resource, final List<File> watchedFiles) {
 		try {
 			final Path path = Paths.get(resource);
+			watch(path.toFile(), watchedFiles);
 			if (Files.exists(path)) {
 				return path.toUri().toURL();
 			}
@@ -140,8 +213,14 @@ public final class ResourceResolver {
 	}
 
 	public URL getResourceRelativeFromIPath(final IPath path, final String resource) {
+		return getResourceRelativeFromIPath(path, resource, new ArrayList<File>());
+	}
+
+	private URL getResourceRelativeFromIPath(final IPath path, final String resource,
+			final List<File> watchedFiles) {
 		try {
 			final File file = path.append(resource).toFile();
+			watch(file, watchedFiles);
 			if (file.exists()) {
 				return file.toURI().toURL();
 			}
@@ -151,4 +230,19 @@ public final class ResourceResolver {
 		return null;
 	}
 
+	/**
+	 * Remember the file if it exists, otherwise its parent directory: creating
+	 * the file later on changes the timestamp of the directory.
+	 */
+	private static void watch(final File file, final List<File> watchedFiles) {
+		if (file.exists()) {
+			watchedFiles.add(file);
+		} else {
+			final File parent = file.getAbsoluteFile().getParentFile();
+			if (parent != null) {
+				watchedFiles.add(parent);
+			}
+		}
+	}
+
 }